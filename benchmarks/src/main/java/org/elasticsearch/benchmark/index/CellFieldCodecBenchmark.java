@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.benchmark.index;
+
+import org.apache.cassandra.db.marshal.AbstractType;
+import org.apache.cassandra.db.marshal.DoubleType;
+import org.apache.cassandra.db.marshal.Int32Type;
+import org.apache.cassandra.db.marshal.LongType;
+import org.apache.cassandra.db.marshal.TimestampType;
+import org.apache.lucene.document.Field;
+import org.elassandra.cluster.Serializer;
+import org.elassandra.index.mapper.CellFieldCodec;
+import org.elasticsearch.Version;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.mapper.ContentPath;
+import org.elasticsearch.index.mapper.DateFieldMapper;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.mapper.Mapper;
+import org.elasticsearch.index.mapper.NumberFieldMapper;
+import org.elasticsearch.index.mapper.ParseContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the generic cell indexing path of the ElasticSecondaryIndex (deserialize the cell value into a boxed java object,
+ * then build lucene fields from it) with the type-specialized {@link CellFieldCodec} path, for a row of 4 numeric cells.
+ * Run with <code>-prof gc</code> to compare allocations per row.
+ */
+@Fork(3)
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class CellFieldCodecBenchmark {
+
+    private AbstractType<?>[] cqlTypes;
+    private MappedFieldType[] fieldTypes;
+    private NumberFieldMapper.NumberType[] numberTypes;
+    private CellFieldCodec[] codecs;
+    private ByteBuffer[] cells;
+
+    @Setup
+    public void setUp() throws Exception {
+        cqlTypes = new AbstractType<?>[] { Int32Type.instance, LongType.instance, DoubleType.instance, TimestampType.instance };
+        Settings settings = Settings.builder().put(IndexMetaData.SETTING_VERSION_CREATED, Version.CURRENT).build();
+        Mapper.BuilderContext context = new Mapper.BuilderContext(settings, new ContentPath());
+        fieldTypes = new MappedFieldType[] {
+            new NumberFieldMapper.Builder("field0", NumberFieldMapper.NumberType.INTEGER).build(context).fieldType(),
+            new NumberFieldMapper.Builder("field1", NumberFieldMapper.NumberType.LONG).build(context).fieldType(),
+            new NumberFieldMapper.Builder("field2", NumberFieldMapper.NumberType.DOUBLE).build(context).fieldType(),
+            new DateFieldMapper.Builder("field3").build(context).fieldType()
+        };
+        cells = new ByteBuffer[] {
+            Int32Type.instance.decompose(42),
+            LongType.instance.decompose(1234567890123L),
+            DoubleType.instance.decompose(3.14159d),
+            TimestampType.instance.decompose(new Date(1469968740000L))
+        };
+        // lucene fields built by the NumberFieldMapper and DateFieldMapper
+        numberTypes = new NumberFieldMapper.NumberType[] {
+            NumberFieldMapper.NumberType.INTEGER,
+            NumberFieldMapper.NumberType.LONG,
+            NumberFieldMapper.NumberType.DOUBLE,
+            NumberFieldMapper.NumberType.LONG
+        };
+        codecs = new CellFieldCodec[fieldTypes.length];
+        for (int i = 0; i < fieldTypes.length; i++)
+            codecs[i] = CellFieldCodec.of(cqlTypes[i], fieldTypes[i]);
+    }
+
+    @Benchmark
+    public ParseContext.Document deserializeAndCreateFields() throws Exception {
+        ParseContext.Document doc = new ParseContext.Document();
+        for (int i = 0; i < cells.length; i++) {
+            Object value = Serializer.deserialize(cqlTypes[i], cells[i]);
+            Number number = (value instanceof Date) ? ((Date) value).getTime() : (Number) value;
+            for (Field field : numberTypes[i].createFields(fieldTypes[i].name(), number, true, true, false))
+                doc.add(field);
+        }
+        return doc;
+    }
+
+    @Benchmark
+    public ParseContext.Document cellFieldCodec() {
+        ParseContext.Document doc = new ParseContext.Document();
+        for (int i = 0; i < cells.length; i++)
+            codecs[i].createFields(doc, cells[i]);
+        return doc;
+    }
+}
@@ -19,13 +19,17 @@
 
 package org.elassandra.cluster;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.ColumnDefinition;
+import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.cql3.CQL3Type;
 import org.apache.cassandra.cql3.ColumnSpecification;
 import org.apache.cassandra.cql3.QueryProcessor;
 import org.apache.cassandra.cql3.UntypedResultSet;
+import org.apache.cassandra.cql3.statements.ParsedStatement;
 import org.apache.cassandra.db.CBuilder;
 import org.apache.cassandra.db.ConsistencyLevel;
 import org.apache.cassandra.db.marshal.*;
@@ -36,13 +40,16 @@ import org.apache.cassandra.exceptions.RequestExecutionException;
 import org.apache.cassandra.exceptions.RequestValidationException;
 import org.apache.cassandra.serializers.CollectionSerializer;
 import org.apache.cassandra.serializers.SimpleDateSerializer;
+import org.apache.cassandra.service.ClientState;
 import org.apache.cassandra.transport.ProtocolVersion;
 import org.apache.cassandra.utils.ByteBufferUtil;
 import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.UUIDGen;
+import org.apache.lucene.index.IndexableField;
 import org.codehaus.jackson.JsonParseException;
 import org.codehaus.jackson.map.JsonMappingException;
 import org.elassandra.index.ElasticSecondaryIndex;
+import org.elassandra.index.ParsedDocumentHandoff;
 import org.elassandra.index.mapper.internal.NodeFieldMapper;
 import org.elassandra.index.mapper.internal.TokenFieldMapper;
 import org.elasticsearch.action.DocWriteRequest;
@@ -56,9 +63,14 @@ import org.elasticsearch.common.component.AbstractComponent;
 import org.elasticsearch.common.document.DocumentField;
 import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.lucene.uid.VersionsAndSeqNoResolver.DocIdAndVersion;
+import org.elasticsearch.common.metrics.CounterMetric;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
+import org.elasticsearch.common.xcontent.NamedXContentRegistry;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.index.IndexService;
 import org.elasticsearch.index.engine.Engine;
@@ -78,12 +90,52 @@ import java.util.function.LongConsumer;
 
 public class QueryManager extends AbstractComponent {
     private final ClusterService clusterService;
+    private final CounterMetric sourceFetches = new CounterMetric();
+    private final CounterMetric cachedSourceHits = new CounterMetric();
+    private final CounterMetric fetchStatementHits = new CounterMetric();
+    private final CounterMetric fetchStatementMisses = new CounterMetric();
 
     public QueryManager(Settings settings, ClusterService clusterService) {
         super(settings);
         this.clusterService = clusterService;
     }
 
+    public void onSourceFetch() {
+        sourceFetches.inc();
+    }
+
+    public void onCachedSourceHit() {
+        cachedSourceHits.inc();
+    }
+
+    /**
+     * @return the number of documents read from cassandra by the fetch phases.
+     */
+    public long getSourceFetches() {
+        return sourceFetches.count();
+    }
+
+    /**
+     * @return the number of _source reused from the search context by the fetch phases, without reading cassandra.
+     */
+    public long getCachedSourceHits() {
+        return cachedSourceHits.count();
+    }
+
+    /**
+     * @return the number of fetch statements reused from the node-wide cache.
+     */
+    public long getFetchStatementHits() {
+        return fetchStatementHits.count();
+    }
+
+    /**
+     * @return the number of fetch statements prepared because not cached or prepared for another mapping or CQL schema.
+     */
+    public long getFetchStatementMisses() {
+        return fetchStatementMisses.count();
+    }
+
     public static XContentBuilder buildDocument(DocumentMapper documentMapper, Map<String, Object> docMap, boolean humanReadable) throws IOException {
         return buildDocument(documentMapper, docMap, humanReadable, false);
     }
@@ -230,6 +282,122 @@ public class QueryManager extends AbstractComponent {
         return source( indexService, docMapper, sourceAsMap, new Uid(docMapper.type(), id));
     }
 
+    /**
+     * Render the _source of a row straight from the column buffers, without building a map of the row.
+     * Includes and excludes are applied by the generator while rendering.
+     */
+    public BytesReference source(IndexService indexService, DocumentMapper docMapper, UntypedResultSet.Row row, Uid uid, String[] includes, String[] excludes) throws JsonParseException, JsonMappingException, IOException {
+        final Set<String> includeSet = (includes == null || includes.length == 0) ? Collections.emptySet() : new HashSet<>(Arrays.asList(includes));
+        final Set<String> excludeSet = (excludes == null || excludes.length == 0) ? Collections.emptySet() : new HashSet<>(Arrays.asList(excludes));
+        if ((docMapper.sourceMapper().enabled() || indexService.getMetaData().isOpaqueStorage())
+                && row.has(SourceFieldMapper.NAME) && row.getBytes(SourceFieldMapper.NAME).hasRemaining()) {
+            // retreive from _source columns stored as blob in cassandra.
+            ByteBuffer bb = row.getBytes(SourceFieldMapper.NAME);
+            BytesReference source = new BytesArray(bb.array(), bb.arrayOffset() + bb.position(), bb.remaining());
+            if (includeSet.isEmpty() && excludeSet.isEmpty())
+                return source;
+            try (XContentParser parser = XContentHelper.createParser(NamedXContentRegistry.EMPTY, source)) {
+                XContentBuilder builder = XContentBuilder.builder(parser.contentType().xContent(), includeSet, excludeSet);
+                builder.copyCurrentStructure(parser);
+                return builder.bytes();
+            }
+        }
+
+        // render _source from all cassandra columns.
+        final boolean forStaticDocument = isStaticDocument(indexService, uid);
+        final DocumentFieldMappers docFieldMappers = docMapper.mappers();
+        XContentBuilder builder = XContentBuilder.builder(XContentType.JSON.xContent(), includeSet, excludeSet).humanReadable(true);
+        builder.startObject();
+        for (ColumnSpecification colSpec : row.getColumns()) {
+            final String columnName = colSpec.name.toString();
+            if (IdFieldMapper.NAME.equals(columnName) || ParentFieldMapper.NAME.equals(columnName)
+                    || !row.has(columnName) || !row.getBytes(columnName).hasRemaining())
+                continue;
+            if (colSpec.type.isCounter() || colSpec.type.asCQL3Type() instanceof CQL3Type.Custom)
+                continue; // not rendered, see rowAsArray
+
+            final FieldMapper fieldMapper = docFieldMappers.smartNameFieldMapper(columnName);
+            final Mapper mapper = (fieldMapper != null) ? fieldMapper : docMapper.objectMappers().get(columnName);
+            if (mapper == null) {
+                Loggers.getLogger(ClusterService.class).error("No mapper found for field "+columnName);
+                throw new IOException("No mapper found for field "+columnName);
+            }
+            if (mapper instanceof MetadataFieldMapper || (forStaticDocument && !isStaticOrPartitionKey(mapper)))
+                continue;
+            columnToXContent(builder, docMapper, fieldMapper, mapper, row, colSpec);
+        }
+        builder.endObject();
+        return builder.bytes();
+    }
+
+    /**
+     * Write a non-empty column as produced by {@link #rowAsArray} and {@link #buildDocument}, reading collection elements from the
+     * serialized value.
+     */
+    private void columnToXContent(XContentBuilder builder, DocumentMapper documentMapper, FieldMapper fieldMapper, Mapper mapper,
+            UntypedResultSet.Row row, ColumnSpecification colSpec) throws IOException {
+        final String columnName = colSpec.name.toString();
+        final CQL3Type cql3Type = colSpec.type.asCQL3Type();
+        final ObjectMapper objectMapper = documentMapper.objectMappers().get(columnName);
+
+        if (cql3Type instanceof CQL3Type.Native) {
+            if (fieldMapper == null && objectMapper != null && !objectMapper.isEnabled()
+                    && (cql3Type == CQL3Type.Native.TEXT || cql3Type == CQL3Type.Native.VARCHAR || cql3Type == CQL3Type.Native.ASCII)) {
+                // not enabled object stored as JSON text
+                builder.rawField(columnName, new BytesArray(row.getString(columnName)), XContentType.JSON);
+            } else {
+                Object value = nativeValue(documentMapper, fieldMapper, row, columnName, (CQL3Type.Native) cql3Type, false);
+                if (value != null)
+                    Serializer.toXContent(builder, mapper, columnName, value);
+            }
+        } else if (cql3Type.isCollection()) {
+            final CollectionType<?> collectionType = (CollectionType<?>) colSpec.type;
+            final ByteBuffer input = row.getBytes(columnName).duplicate();
+            final int size = CollectionSerializer.readCollectionSize(input, ProtocolVersion.CURRENT);
+            switch (collectionType.kind) {
+            case LIST:
+            case SET:
+                final AbstractType<?> elementType = (collectionType.kind == CollectionType.Kind.LIST) ?
+                        ((ListType<?>) collectionType).getElementsType() : ((SetType<?>) collectionType).getElementsType();
+                if (size == 1) {
+                    Serializer.toXContent(builder, mapper, columnName,
+                            elementValue(elementType, CollectionSerializer.readValue(input, ProtocolVersion.CURRENT), fieldMapper, objectMapper));
+                } else {
+                    builder.startArray(columnName);
+                    for (int i = 0; i < size; i++)
+                        Serializer.toXContent(builder, mapper, null,
+                                elementValue(elementType, CollectionSerializer.readValue(input, ProtocolVersion.CURRENT), fieldMapper, objectMapper));
+                    builder.endArray();
+                }
+                break;
+            case MAP:
+                final MapType<?,?> mapType = (MapType<?,?>) collectionType;
+                if (mapType.getKeysType().asCQL3Type() != CQL3Type.Native.TEXT) {
+                    throw new IOException("Only support map<text,?>, bad type for column "+columnName);
+                }
+                builder.startObject(columnName);
+                for (int i = 0; i < size; i++) {
+                    final String key = UTF8Type.instance.compose(CollectionSerializer.readValue(input, ProtocolVersion.CURRENT));
+                    final Mapper subMapper = objectMapper.getMapper(key);
+                    final Object value = elementValue(mapType.getValuesType(), CollectionSerializer.readValue(input, ProtocolVersion.CURRENT),
+                            (subMapper instanceof FieldMapper) ? (FieldMapper) subMapper : null, subMapper);
+                    if (value != null)
+                        Serializer.toXContent(builder, subMapper, key, value);
+                }
+                builder.endObject();
+                break;
+            }
+        } else if (colSpec.type instanceof UserType) {
+            Serializer.toXContent(builder, mapper, columnName, Serializer.deserialize(colSpec.type, row.getBytes(columnName), objectMapper));
+        }
+    }
+
+    private Object elementValue(AbstractType<?> elementType, ByteBuffer bb, FieldMapper fieldMapper, Mapper objectMapper) throws IOException {
+        if (elementType instanceof UserType)
+            return Serializer.deserialize(elementType, bb, objectMapper);
+        return value(fieldMapper, elementType.compose(bb), false);
+    }
+
     public Token getToken(final IndexService indexService, final String type, final String routing) throws JsonParseException, JsonMappingException, IOException {
         DocPrimaryKey pk = parseElasticRouting(indexService, type, routing);
         CFMetaData cfm = SchemaManager.getCFMetaData(indexService.keyspace(), type);
@@ -443,6 +611,83 @@ public class QueryManager extends AbstractComponent {
         return query.toString();
     }
 
+    /**
+     * Node-wide cache of the prepared fetch statements, keyed by index, type, static flag and the sorted set of required columns.
+     * An entry is only valid for the document mapper and the CQL schema version it was prepared with.
+     */
+    private final Cache<FetchStatementKey, FetchStatement> fetchStatementCache = CacheBuilder.newBuilder()
+            .concurrencyLevel(EsExecutors.numberOfProcessors(settings))
+            .maximumSize(Integer.getInteger(ClusterService.SETTING_SYSTEM_FETCH_STATEMENT_CACHE_SIZE, 1000))
+            .build();
+
+    static final class FetchStatementKey {
+        final String indexUUID;
+        final String type;
+        final boolean forStaticDocument;
+        final List<String> requiredColumns;
+
+        FetchStatementKey(String indexUUID, String type, boolean forStaticDocument, NavigableSet<String> requiredColumns) {
+            this.indexUUID = indexUUID;
+            this.type = type;
+            this.forStaticDocument = forStaticDocument;
+            this.requiredColumns = new ArrayList<>(requiredColumns);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (o == null || getClass() != o.getClass())
+                return false;
+            FetchStatementKey other = (FetchStatementKey) o;
+            return forStaticDocument == other.forStaticDocument
+                    && indexUUID.equals(other.indexUUID)
+                    && type.equals(other.type)
+                    && requiredColumns.equals(other.requiredColumns);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(indexUUID, type, forStaticDocument, requiredColumns);
+        }
+    }
+
+    static final class FetchStatement {
+        final DocumentMapper docMapper;
+        final UUID schemaVersion;
+        final ParsedStatement.Prepared prepared;
+
+        FetchStatement(DocumentMapper docMapper, UUID schemaVersion, ParsedStatement.Prepared prepared) {
+            this.docMapper = docMapper;
+            this.schemaVersion = schemaVersion;
+            this.prepared = prepared;
+        }
+    }
+
+    /**
+     * Return the prepared fetch statement for the sorted required columns, from the node-wide cache when the mapping
+     * and the CQL schema did not change since the statement was prepared.
+     */
+    public ParsedStatement.Prepared getFetchStatement(final IndexService indexService, final String type, final NavigableSet<String> requiredColumns, boolean forStaticDocument)
+            throws IOException
+    {
+        final DocumentMapper docMapper = indexService.mapperService().documentMapper(type);
+        final UUID schemaVersion = Schema.instance.getVersion();
+        final FetchStatementKey key = new FetchStatementKey(indexService.indexUUID(), type, forStaticDocument, requiredColumns);
+        FetchStatement fetchStatement = fetchStatementCache.getIfPresent(key);
+        if (fetchStatement == null || fetchStatement.docMapper != docMapper || !Objects.equals(fetchStatement.schemaVersion, schemaVersion)) {
+            String query = buildFetchQuery(indexService, type, requiredColumns.toArray(new String[requiredColumns.size()]), forStaticDocument, docMapper.getColumnDefinitions());
+            if (logger.isTraceEnabled())
+                logger.trace("new statement={}", query);
+            fetchStatement = new FetchStatement(docMapper, schemaVersion, QueryProcessor.prepareInternal(query));
+            fetchStatementCache.put(key, fetchStatement);
+            fetchStatementMisses.inc();
+        } else {
+            fetchStatementHits.inc();
+        }
+        return fetchStatement.prepared;
+    }
+
     public static String buildDeleteQuery(final DocumentMapper docMapper, final String ksName, final String cfName) {
         return "DELETE FROM \""+ksName+"\".\""+cfName+"\" WHERE "+ docMapper.getCqlFragments().pkWhere;
     }
@@ -495,6 +740,81 @@ public class QueryManager extends AbstractComponent {
         }
     }
 
+    private Object nativeValue(final DocumentMapper documentMapper, final FieldMapper fieldMapper, UntypedResultSet.Row row, String columnName, CQL3Type.Native cql3Type, boolean valueForSearch) {
+        Object value = null;
+        switch (cql3Type) {
+        case ASCII:
+        case TEXT:
+        case VARCHAR:
+            value = row.getString(columnName);
+            if (value != null && fieldMapper == null) {
+                ObjectMapper objectMapper = documentMapper.objectMappers().get(columnName);
+                if (objectMapper != null && !objectMapper.isEnabled()) {
+                    // parse text as JSON Map (not enabled object)
+                    value = FBUtilities.fromJsonMap(row.getString(columnName));
+                }
+            }
+            break;
+        case TIMEUUID:
+            if (fieldMapper instanceof DateFieldMapper && fieldMapper.CQL3Type().equals(CQL3Type.Native.TIMESTAMP)) {
+                value = value(fieldMapper, UUIDGen.unixTimestamp(row.getUUID(columnName)), valueForSearch);
+                break;
+            }
+            value = row.getUUID(columnName).toString();
+            break;
+        case UUID:
+            value = row.getUUID(columnName).toString();
+            break;
+        case TIMESTAMP:
+            value = value(fieldMapper, row.getTimestamp(columnName).getTime(), valueForSearch);
+            break;
+        case DATE:
+            value = value(fieldMapper, SimpleDateSerializer.dayToTimeInMillis(row.getInt(columnName)), valueForSearch);
+            break;
+        case TIME:
+            value = value(fieldMapper, row.getLong(columnName), valueForSearch);
+            break;
+        case INT:
+            value = value(fieldMapper, row.getInt(columnName), valueForSearch);
+            break;
+        case SMALLINT:
+            value = value(fieldMapper, row.getShort(columnName), valueForSearch);
+            break;
+        case TINYINT:
+            value = value(fieldMapper, row.getByte(columnName), valueForSearch);
+            break;
+        case BIGINT:
+            value = value(fieldMapper, row.getLong(columnName), valueForSearch);
+            break;
+        case DOUBLE:
+            value = value(fieldMapper, row.getDouble(columnName), valueForSearch);
+            break;
+        case FLOAT:
+            value = value(fieldMapper, row.getFloat(columnName), valueForSearch);
+            break;
+        case DECIMAL:
+            value = value(fieldMapper, row.getDecimal(columnName), valueForSearch);
+            break;
+        case BLOB:
+            value = value(fieldMapper,
+                    row.getBlob(columnName),
+                    valueForSearch);
+            break;
+        case BOOLEAN:
+            value = value(fieldMapper, row.getBoolean(columnName), valueForSearch);
+            break;
+        case COUNTER:
+            logger.warn("Ignoring unsupported counter {} for column {}", cql3Type, columnName);
+            break;
+        case INET:
+            value = value(fieldMapper, row.getInetAddress(columnName), valueForSearch);
+            break;
+        default:
+            logger.error("Ignoring unsupported type {} for column {}", cql3Type, columnName);
+        }
+        return value;
+    }
+
     // TODO: return raw values if no mapper found.
     public Object[] rowAsArray(final IndexService indexService, final String type, UntypedResultSet.Row row, boolean valueForSearch) throws IOException {
         final Object values[] = new Object[row.getColumns().size()];
@@ -512,77 +832,7 @@ public class QueryManager extends AbstractComponent {
             }
 
             if (cql3Type instanceof CQL3Type.Native) {
-                final FieldMapper fieldMapper = docFieldMappers.smartNameFieldMapper(columnName);
-                switch ((CQL3Type.Native) cql3Type) {
-                case ASCII:
-                case TEXT:
-                case VARCHAR:
-                    values[i] = row.getString(columnName);
-                    if (values[i] != null && fieldMapper == null) {
-                        ObjectMapper objectMapper = documentMapper.objectMappers().get(columnName);
-                        if (objectMapper != null && !objectMapper.isEnabled()) {
-                            // parse text as JSON Map (not enabled object)
-                            values[i] = FBUtilities.fromJsonMap(row.getString(columnName));
-                        }
-                    }
-                    break;
-                case TIMEUUID:
-                    if (fieldMapper instanceof DateFieldMapper && fieldMapper.CQL3Type().equals(CQL3Type.Native.TIMESTAMP)) {
-                        values[i] = value(fieldMapper, UUIDGen.unixTimestamp(row.getUUID(columnName)), valueForSearch);
-                        break;
-                    }
-                    values[i] = row.getUUID(columnName).toString();
-                    break;
-                case UUID:
-                    values[i] = row.getUUID(columnName).toString();
-                    break;
-                case TIMESTAMP:
-                    values[i] = value(fieldMapper, row.getTimestamp(columnName).getTime(), valueForSearch);
-                    break;
-                case DATE:
-                    values[i] = value(fieldMapper, SimpleDateSerializer.dayToTimeInMillis(row.getInt(columnName)), valueForSearch);
-                    break;
-                case TIME:
-                    values[i] = value(fieldMapper, row.getLong(columnName), valueForSearch);
-                    break;
-                case INT:
-                    values[i] = value(fieldMapper, row.getInt(columnName), valueForSearch);
-                    break;
-                case SMALLINT:
-                    values[i] = value(fieldMapper, row.getShort(columnName), valueForSearch);
-                    break;
-                case TINYINT:
-                    values[i] = value(fieldMapper, row.getByte(columnName), valueForSearch);
-                    break;
-                case BIGINT:
-                    values[i] = value(fieldMapper, row.getLong(columnName), valueForSearch);
-                    break;
-                case DOUBLE:
-                    values[i] = value(fieldMapper, row.getDouble(columnName), valueForSearch);
-                    break;
-                case FLOAT:
-                    values[i] = value(fieldMapper, row.getFloat(columnName), valueForSearch);
-                    break;
-                case DECIMAL:
-                    values[i] = value(fieldMapper, row.getDecimal(columnName), valueForSearch);
-                    break;
-                case BLOB:
-                    values[i] = value(fieldMapper,
-                            row.getBlob(columnName),
-                            valueForSearch);
-                    break;
-                case BOOLEAN:
-                    values[i] = value(fieldMapper, row.getBoolean(columnName), valueForSearch);
-                    break;
-                case COUNTER:
-                    logger.warn("Ignoring unsupported counter {} for column {}", cql3Type, columnName);
-                    break;
-                case INET:
-                    values[i] = value(fieldMapper, row.getInetAddress(columnName), valueForSearch);
-                    break;
-                default:
-                    logger.error("Ignoring unsupported type {} for column {}", cql3Type, columnName);
-                }
+                values[i] = nativeValue(documentMapper, docFieldMappers.smartNameFieldMapper(columnName), row, columnName, (CQL3Type.Native) cql3Type, valueForSearch);
             } else if (cql3Type.isCollection()) {
                 AbstractType<?> elementType;
                 switch (((CollectionType<?>) colSpec.type).kind) {
@@ -856,17 +1106,55 @@ public class QueryManager extends AbstractComponent {
                 if (map.get(m) == null && m.indexOf('.') == -1 && cfm.getColumnDefinition(objectMappers.get(m).cqlName()) != null)
                     map.put(m, NULL_VALUE);
             }
-            values = new ByteBuffer[map.size()];
+            // hand off the parsed fields to the local secondary index, the row is written at an explicit timestamp to validate the handoff.
+            final List<IndexableField> handoffFields = (mappingUpdate == null && ParsedDocumentHandoff.instance.isEnabled()) ?
+                    handoffFields(request, indexMetaData, cfm, docMapper, doc) : null;
+            final ParsedDocumentHandoff.Entry handoff = (handoffFields == null) ? null :
+                    ParsedDocumentHandoff.instance.offer(keyspaceName, cfName, id, indexService.index().getName(), docMapper, handoffFields, ClientState.forInternalCalls().getTimestamp());
+
+            values = new ByteBuffer[map.size() + (handoff == null ? 0 : 1)];
             query = buildInsertQuery(keyspaceName, cfName, map, id,
                     false,
                     values, 0);
-            this.clusterService.process(request.waitForActiveShards().toCassandraConsistencyLevel(), query, (Object[])values);
+            if (handoff != null) {
+                query += "USING TIMESTAMP ?";
+                values[values.length - 1] = LongType.instance.decompose(handoff.timestamp());
+            }
+            try {
+                this.clusterService.process(request.waitForActiveShards().toCassandraConsistencyLevel(), query, (Object[])values);
+            } finally {
+                if (handoff != null)
+                    ParsedDocumentHandoff.instance.release(keyspaceName, cfName, id, handoff);
+            }
         }
         
         assert request.versionType().validateVersionForWrites(request.version());
         return new Engine.IndexResult(1L, SequenceNumbers.UNASSIGNED_SEQ_NO, true);
     }
 
+    /**
+     * Mapped fields of the parsed document that the secondary index can reuse, or null when the secondary index must build
+     * the document from the cells (opaque storage, _source, _all, _parent, nested documents or static columns).
+     * Metadata fields are always built by the secondary index.
+     */
+    private List<IndexableField> handoffFields(final IndexRequest request, final IndexMetaData indexMetaData, final CFMetaData cfm, final DocumentMapper docMapper, final ParsedDocument doc) {
+        if (indexMetaData.isOpaqueStorage() || request.parent() != null || cfm.hasStaticColumns() || doc.docs().size() != 1
+                || docMapper.sourceMapper().enabled() || docMapper.allFieldMapper().enabled() || docMapper.parentFieldMapper().active()
+                || docMapper.type().equals("percolator"))
+            return null;
+
+        final List<IndexableField> fields = new ArrayList<>();
+        for (IndexableField field : doc.rootDoc()) {
+            final Mapper mapper = docMapper.mappers().getMapper(field.name());
+            if (mapper instanceof MetadataFieldMapper || (mapper == null && field.name().startsWith("_")))
+                continue;
+            if (mapper == null)
+                return null; // unexpected field, let the secondary index build the document.
+            fields.add(field);
+        }
+        return fields;
+    }
+
     /**
      * Build CQL insert query and populate values from the provided map.
      * TODO: cached prepared statements ?
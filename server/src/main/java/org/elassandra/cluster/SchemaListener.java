@@ -29,6 +29,7 @@ import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.locator.NetworkTopologyStrategy;
 import org.apache.cassandra.schema.KeyspaceMetadata;
 import org.apache.cassandra.service.MigrationListener;
+import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.utils.FBUtilities;
 import org.apache.logging.log4j.Logger;
 import org.elassandra.index.ElasticSecondaryIndex;
@@ -169,6 +170,10 @@ public class SchemaListener extends MigrationListener implements ClusterStateLis
     @Override
     public void onUpdateKeyspace(final String ksName) {
         logger.trace("{}", ksName);
+        if (StorageService.instance.getLocalRanges(ksName).isEmpty()) {
+            // cassandra cleanup does not run when the node does not own any token range anymore.
+            ElasticSecondaryIndex.cleanupKeyspace(ksName);
+        }
         MetaData metadata = this.clusterService.state().metaData();
         for(ObjectCursor<IndexMetaData> imdCursor : metadata.indices().values()) {
             if (ksName.equals(imdCursor.value.keyspace())) {
@@ -195,6 +200,7 @@ public class SchemaListener extends MigrationListener implements ClusterStateLis
     @Override
     public void onDropKeyspace(String ksName) {
         logger.trace("{}", ksName);
+        clusterService.removeIndexMetaDataExtensions(ksName);
     }
 
     boolean isElasticAdmin(String ksName, String cfName) {
@@ -206,7 +212,7 @@ public class SchemaListener extends MigrationListener implements ClusterStateLis
         boolean hasSecondaryIndex = cfm.getIndexes().has(SchemaManager.buildIndexName(cfm.cfName));
         for(Map.Entry<String, ByteBuffer> e : cfm.params.extensions.entrySet()) {
             if (clusterService.isValidTypeExtension(e.getKey())) {
-                    IndexMetaData indexMetaData = clusterService.getIndexMetaDataFromExtension(e.getValue());
+                    IndexMetaData indexMetaData = clusterService.getIndexMetaDataFromExtension(ClusterService.extensionCacheKey(cfm, e.getKey()), e.getValue());
                     if (recordedIndexMetaData != null)
                         recordedIndexMetaData.put(indexMetaData.getIndex().getName(), indexMetaData);
 
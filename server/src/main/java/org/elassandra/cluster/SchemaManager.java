@@ -68,6 +68,7 @@ import org.apache.cassandra.schema.TableParams;
 import org.apache.cassandra.schema.Views;
 import org.apache.cassandra.service.ClientState;
 import org.apache.cassandra.service.MigrationListener;
+import org.apache.cassandra.service.MigrationManager;
 import org.apache.cassandra.thrift.ThriftValidation;
 import org.apache.cassandra.transport.Event;
 import org.apache.cassandra.utils.FBUtilities;
@@ -78,6 +79,7 @@ import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.cluster.metadata.MappingMetaData;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.metrics.CounterMetric;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.settings.SettingsException;
 import org.elasticsearch.index.Index;
@@ -110,6 +112,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.StreamSupport;
@@ -123,6 +126,9 @@ public class SchemaManager extends AbstractComponent {
      */
     private final Collection<MigrationListener> inhibitedSchemaListeners;
 
+    private final CounterMetric schemaAnnounces = new CounterMetric();
+    private final CounterMetric keyspacePlans = new CounterMetric();
+
     public static final String GEO_POINT_TYPE = "geo_point";
     public static final ColumnIdentifier GEO_POINT_NAME = new ColumnIdentifier(GEO_POINT_TYPE, true);
     public static final String ATTACHMENT_TYPE = "attachement";
@@ -191,6 +197,28 @@ public class SchemaManager extends AbstractComponent {
         return inhibitedSchemaListeners;
     }
 
+    /**
+     * Announce the schema mutations of a cluster state update, applied by cassandra in a single schema merge.
+     */
+    public Future<?> announce(final Collection<Mutation> mutations) {
+        schemaAnnounces.inc();
+        return MigrationManager.announce(mutations, inhibitedSchemaListeners);
+    }
+
+    /**
+     * @return the number of schema updates announced by this node.
+     */
+    public long getSchemaAnnounces() {
+        return schemaAnnounces.count();
+    }
+
+    /**
+     * @return the number of keyspace metadata built to plan schema updates, once per keyspace and cluster state update.
+     */
+    public long getKeyspacePlans() {
+        return keyspacePlans.count();
+    }
+
     public boolean isNativeCql3Type(String cqlType) {
         return cqlMapping.keySet().contains(cqlType) && !cqlType.startsWith("geo_");
     }
@@ -346,6 +374,7 @@ public class SchemaManager extends AbstractComponent {
             final Collection<Event.SchemaChange> events) {
         KeyspaceMetadata ksm;
         Keyspace ks = null;
+        keyspacePlans.inc();
         try {
             ks = Keyspace.open(ksName);
             if (ks != null && !(ks.getReplicationStrategy() instanceof NetworkTopologyStrategy)) {
@@ -453,7 +482,13 @@ public class SchemaManager extends AbstractComponent {
             x = ats.updateTable(ksm, cfm, FBUtilities.timestampMicros());
         }
         // update extensions
+        Map<String, ByteBuffer> previousExtensions = (cfm.params == null || cfm.params.extensions == null) ? Collections.emptyMap() : cfm.params.extensions;
         updateTableExtensions(ksm, x.left, siblings);
+        if (colDataList.isEmpty() && previousExtensions.equals(x.left.params.extensions)) {
+            // no new column and unchanged index metadata, avoid a useless schema mutation.
+            logger.debug("table {}.{} unchanged", ksm.name, cfName);
+            return ksm;
+        }
         mutations.add(SchemaKeyspace.makeUpdateTableMutation(ksm, cfm, x.left, FBUtilities.timestampMicros()).build());
 
         ksm2 = ksm.withSwapped(ksm.tables.without(cfm.cfName).with(x.left));
@@ -472,6 +507,7 @@ public class SchemaManager extends AbstractComponent {
         CFMetaData cfm2 = cfm.copy();
         Map<String, ByteBuffer> extensions = new LinkedHashMap<String, ByteBuffer>();
         if (cfm.params != null && cfm.params.extensions != null) {
+            indexMetaDataSet.forEach(imd -> clusterService.removeIndexMetaDataExtension(imd));
             Set<String> toRemoveExtentsions = indexMetaDataSet.stream().map(imd -> clusterService.getExtensionKey(imd)).collect(Collectors.toSet());
             extensions = cfm.params.extensions.entrySet().stream()
                 .filter( x -> !toRemoveExtentsions.contains(x.getKey()))
@@ -26,7 +26,6 @@ import org.apache.cassandra.exceptions.ConfigurationException;
 import org.apache.cassandra.exceptions.UnavailableException;
 import org.apache.cassandra.exceptions.WriteTimeoutException;
 import org.apache.cassandra.gms.*;
-import org.apache.cassandra.service.MigrationManager;
 import org.apache.cassandra.service.StorageService;
 import org.apache.cassandra.transport.Event;
 import org.apache.cassandra.utils.FBUtilities;
@@ -61,6 +60,8 @@ import org.elasticsearch.cluster.service.ClusterApplier;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.Priority;
 import org.elasticsearch.common.component.AbstractLifecycleComponent;
+import org.elasticsearch.common.metrics.CounterMetric;
+import org.elasticsearch.common.metrics.MeanMetric;
 import org.elasticsearch.common.io.stream.NamedWriteableRegistry;
 import org.elasticsearch.common.network.NetworkAddress;
 import org.elasticsearch.common.settings.Setting;
@@ -75,6 +76,7 @@ import org.elasticsearch.discovery.DiscoverySettings;
 import org.elasticsearch.discovery.DiscoveryStats;
 import org.elasticsearch.env.NodeEnvironment;
 import org.elasticsearch.index.Index;
+import org.elasticsearch.threadpool.ThreadPool;
 import org.elasticsearch.transport.TransportService;
 
 import java.io.*;
@@ -85,6 +87,7 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -137,6 +140,25 @@ public class CassandraDiscovery extends AbstractLifecycleComponent implements Di
      */
     private final boolean gzip = Boolean.parseBoolean(System.getProperty(ClusterService.SETTING_SYSTEM_COMPRESS_INDEXES_IN_GOSSIP, "false"));
 
+    /**
+     * Publish the gossip application state X1 with the compact binary encoding, see {@link ShardRoutingStateCodec}.
+     */
+    private final boolean binaryX1 = Boolean.parseBoolean(System.getProperty(ClusterService.SETTING_SYSTEM_BINARY_INDEXES_IN_GOSSIP, "false"));
+
+    /**
+     * Version of the published binary X1, initialized with the current time to remain increasing across restarts.
+     */
+    private final AtomicLong localX1Version = new AtomicLong(System.currentTimeMillis());
+    private final ConcurrentMap<UUID, Long> remoteX1Versions = new ConcurrentHashMap<UUID, Long>();
+
+    private final MeanMetric x1PublishedSize = new MeanMetric();
+    private final MeanMetric x1ReceivedSize = new MeanMetric();
+    private final MeanMetric x1ParseTimeInNanos = new MeanMetric();
+    private final CounterMetric x1ParseSkipped = new CounterMetric();
+
+    private final CounterMetric routingTableUpdates = new CounterMetric();
+    private final MeanMetric routingTableUpdateTimeInNanos = new MeanMetric();
+
     /**
      * If autoEnableSearch=true, search is automatically enabled when the node becomes ready to operate, otherwise, searchEnabled should be manually set to true.
      */
@@ -145,6 +167,19 @@ public class CassandraDiscovery extends AbstractLifecycleComponent implements Di
     public static final Setting<Integer> MAX_PENDING_CLUSTER_STATES_SETTING =
             Setting.intSetting("discovery.cassandra.publish.max_pending_cluster_states", 1024, 1, Property.NodeScope);
 
+    /**
+     * Delay to coalesce routing table updates triggered by gossip events (0 submits updates immediately).
+     */
+    public static final Setting<TimeValue> ROUTING_UPDATE_DELAY_SETTING =
+            Setting.positiveTimeSetting("discovery.cassandra.routing.update_delay", TimeValue.ZERO, Property.NodeScope);
+
+    private final TimeValue routingUpdateDelay;
+    private final Object pendingRoutingMutex = new Object();
+    private final Set<Index> pendingRoutingIndices = new HashSet<>();
+    private boolean pendingRoutingUpdateNodes = false;
+    private int pendingRoutingSources = 0;
+    private boolean routingUpdateScheduled = false;
+
     public CassandraDiscovery(Settings settings,
             TransportService transportService,
             final ClusterService clusterService,
@@ -170,6 +205,7 @@ public class CassandraDiscovery extends AbstractLifecycleComponent implements Di
         this.pendingStatesQueue = new PendingClusterStatesQueue(logger, MAX_PENDING_CLUSTER_STATES_SETTING.get(settings));
         this.appliedClusterStateAction = new AppliedClusterStateAction(settings, transportService, this, discoverySettings);
         this.routingTableUpdateTaskExecutor = new RoutingTableUpdateTaskExecutor();
+        this.routingUpdateDelay = ROUTING_UPDATE_DELAY_SETTING.get(settings);
     }
 
     public PendingClusterStatesQueue pendingStatesQueue() {
@@ -274,13 +310,57 @@ public class CassandraDiscovery extends AbstractLifecycleComponent implements Di
 
     private void updateRoutingTable(String source, Set<Index> indices, boolean nodesUpdates) {
         logger.debug("Updating routing table indices source=[{}] indices={} nodesUpdates={}", source, indices, nodesUpdates);
-        clusterService.submitStateUpdateTask(source, new RoutingTableUpdateTask(indices, nodesUpdates),
-                this.routingTableUpdateTaskExecutor, this.routingTableUpdateTaskExecutor, this.routingTableUpdateTaskExecutor);
+        submitRoutingTableUpdate(source, new RoutingTableUpdateTask(indices, nodesUpdates));
     }
 
     private void updateNodesTable(String source) {
         logger.debug("Updating routing table node source=[{}]", source);
-        clusterService.submitStateUpdateTask(source, new RoutingTableUpdateTask(true),
+        submitRoutingTableUpdate(source, new RoutingTableUpdateTask(true));
+    }
+
+    /**
+     * Submit the routing table update, or merge it with pending updates submitted after {@link #ROUTING_UPDATE_DELAY_SETTING}
+     * to avoid a routing table update for each gossip event during a rolling restart.
+     */
+    private void submitRoutingTableUpdate(String source, RoutingTableUpdateTask task) {
+        if (routingUpdateDelay.millis() <= 0 || !lifecycle.started()) {
+            clusterService.submitStateUpdateTask(source, task,
+                    this.routingTableUpdateTaskExecutor, this.routingTableUpdateTaskExecutor, this.routingTableUpdateTaskExecutor);
+            return;
+        }
+        synchronized (pendingRoutingMutex) {
+            pendingRoutingIndices.addAll(task.indices());
+            pendingRoutingUpdateNodes |= task.updateNodes();
+            pendingRoutingSources++;
+            if (!routingUpdateScheduled) {
+                routingUpdateScheduled = true;
+                transportService.getThreadPool().schedule(routingUpdateDelay, ThreadPool.Names.GENERIC, this::submitPendingRoutingTableUpdate);
+            }
+        }
+    }
+
+    /**
+     * @return true if routing table updates are waiting for {@link #ROUTING_UPDATE_DELAY_SETTING} before being submitted.
+     */
+    public boolean hasPendingRoutingUpdates() {
+        synchronized (pendingRoutingMutex) {
+            return routingUpdateScheduled;
+        }
+    }
+
+    private void submitPendingRoutingTableUpdate() {
+        final RoutingTableUpdateTask task;
+        final int sources;
+        synchronized (pendingRoutingMutex) {
+            task = new RoutingTableUpdateTask(new HashSet<>(pendingRoutingIndices), pendingRoutingUpdateNodes);
+            sources = pendingRoutingSources;
+            pendingRoutingIndices.clear();
+            pendingRoutingUpdateNodes = false;
+            pendingRoutingSources = 0;
+            routingUpdateScheduled = false;
+        }
+        logger.debug("Submitting {} coalesced routing table updates indices={} nodesUpdates={}", sources, task.indices(), task.updateNodes());
+        clusterService.submitStateUpdateTask("coalesced-routing-update[" + sources + "]", task,
                 this.routingTableUpdateTaskExecutor, this.routingTableUpdateTaskExecutor, this.routingTableUpdateTaskExecutor);
     }
 
@@ -312,6 +392,16 @@ public class CassandraDiscovery extends AbstractLifecycleComponent implements Di
 
         @Override
         public ClusterTasksResult<RoutingTableUpdateTask> execute(ClusterState currentState, List<RoutingTableUpdateTask> tasks) throws Exception {
+            long start = System.nanoTime();
+            try {
+                return executeTasks(currentState, tasks);
+            } finally {
+                routingTableUpdates.inc();
+                routingTableUpdateTimeInNanos.inc(System.nanoTime() - start);
+            }
+        }
+
+        private ClusterTasksResult<RoutingTableUpdateTask> executeTasks(ClusterState currentState, List<RoutingTableUpdateTask> tasks) throws Exception {
             boolean updateNodes = tasks.stream().filter(RoutingTableUpdateTask::updateNodes).count() > 0;
             Set<Index> indices = tasks.stream().map(RoutingTableUpdateTask::indices).flatMap(Set::stream).collect(Collectors.toSet());
 
@@ -390,8 +480,9 @@ public class CassandraDiscovery extends AbstractLifecycleComponent implements Di
                         VersionedValue x1 = epState.getApplicationState(ApplicationState.X1);
                         if (!this.localNode().getId().equals(hostId)) {
                             try {
-                                Map<String, ShardRoutingState> shardsStateMap = jsonMapper.readValue(uncompressIfGZipped(x1.value), indexShardStateTypeReference);
-                                updateShardRouting(Gossiper.instance.getHostId(endpoint), shardsStateMap, "X1-"+endpoint, clusterState(), updateNodes);
+                                UUID hostUuid = Gossiper.instance.getHostId(endpoint);
+                                Map<String, ShardRoutingState> shardsStateMap = parseX1(hostUuid, x1.value);
+                                updateShardRouting(hostUuid, shardsStateMap, "X1-"+endpoint, clusterState(), updateNodes);
                             } catch (IOException e) {
                                 logger.error("Failed to parse X1 for node [{}]", hostId);
                             }
@@ -443,7 +534,7 @@ public class CassandraDiscovery extends AbstractLifecycleComponent implements Di
                 VersionedValue x1 = epState.getApplicationState(ApplicationState.X1);
                 if (x1 != null) {
                     try {
-                        Map<String, ShardRoutingState> newShardsStateMap = jsonMapper.readValue(uncompressIfGZipped(x1.value), indexShardStateTypeReference);
+                        Map<String, ShardRoutingState> newShardsStateMap = parseX1(hostUuid, x1.value);
                         Map<String, ShardRoutingState> oldShardStateMap = this.remoteShardRoutingStateMap.put(hostUuid, newShardsStateMap);
                         if (newShardsStateMap != null && !newShardsStateMap.equals(oldShardStateMap))
                             updatedNode = true;
@@ -453,6 +544,7 @@ public class CassandraDiscovery extends AbstractLifecycleComponent implements Di
                 }
                 break;
             default:
+                this.remoteX1Versions.remove(hostUuid);
                 if (this.remoteShardRoutingStateMap.remove(hostUuid) != null)
                     updatedNode = true;
             }
@@ -529,9 +621,9 @@ public class CassandraDiscovery extends AbstractLifecycleComponent implements Di
                     boolean updateNodes = clusterGroup.update(epState, hostId, endpoint, getInternalIp(epState), getRpcAddress(epState));
                     // update the remoteShardRoutingStateMap to build ES routing table for joined-normal nodes only.
                     if (clusterGroup.contains(hostId)) {
-                        final Map<String, ShardRoutingState> shardsStateMap = jsonMapper.readValue(uncompressIfGZipped(versionValue.value), indexShardStateTypeReference);
+                        final Map<String, ShardRoutingState> shardsStateMap = parseX1(UUID.fromString(hostId), versionValue.value);
                         if (logger.isTraceEnabled())
-                            logger.trace("Endpoint={} X1={} => updating routing table with shardsStateMap={}", endpoint, uncompressIfGZipped(versionValue.value), shardsStateMap);
+                            logger.trace("Endpoint={} X1={} => updating routing table with shardsStateMap={}", endpoint, versionValue.value, shardsStateMap);
                         updateShardRouting(UUID.fromString(hostId), shardsStateMap, "X1-" + endpoint, clusterState(), updateNodes);
                     }
                 } catch (Exception e) {
@@ -694,6 +786,68 @@ public class CassandraDiscovery extends AbstractLifecycleComponent implements Di
     private static final ObjectMapper jsonMapper = new ObjectMapper();
     private static final TypeReference<Map<String, ShardRoutingState>> indexShardStateTypeReference = new TypeReference<Map<String, ShardRoutingState>>() {};
 
+    /**
+     * Decode a remote X1 value, binary or JSON (possibly gzipped). A binary X1 with the same version
+     * as the last decoded one for this node is not decoded again.
+     */
+    private Map<String, ShardRoutingState> parseX1(UUID hostUuid, String value) throws IOException {
+        x1ReceivedSize.inc(value.length());
+        long start = System.nanoTime();
+        try {
+            if (ShardRoutingStateCodec.isBinary(value)) {
+                long version = ShardRoutingStateCodec.version(value);
+                Map<String, ShardRoutingState> previous = this.remoteShardRoutingStateMap.get(hostUuid);
+                if (previous != null && Long.valueOf(version).equals(this.remoteX1Versions.get(hostUuid))) {
+                    x1ParseSkipped.inc();
+                    return previous;
+                }
+                Map<String, ShardRoutingState> shardsStateMap = ShardRoutingStateCodec.decode(value);
+                this.remoteX1Versions.put(hostUuid, version);
+                return shardsStateMap;
+            }
+            this.remoteX1Versions.remove(hostUuid);
+            return jsonMapper.readValue(uncompressIfGZipped(value), indexShardStateTypeReference);
+        } finally {
+            x1ParseTimeInNanos.inc(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Size in chars of the published X1 values.
+     */
+    public MeanMetric x1PublishedSize() {
+        return this.x1PublishedSize;
+    }
+
+    /**
+     * Size in chars of the received X1 values.
+     */
+    public MeanMetric x1ReceivedSize() {
+        return this.x1ReceivedSize;
+    }
+
+    public MeanMetric x1ParseTimeInNanos() {
+        return this.x1ParseTimeInNanos;
+    }
+
+    /**
+     * Number of received binary X1 values not decoded because already known.
+     */
+    public CounterMetric x1ParseSkipped() {
+        return this.x1ParseSkipped;
+    }
+
+    /**
+     * Number of routing table computations (batched cluster state updates).
+     */
+    public CounterMetric routingTableUpdates() {
+        return this.routingTableUpdates;
+    }
+
+    public MeanMetric routingTableUpdateTimeInNanos() {
+        return this.routingTableUpdateTimeInNanos;
+    }
+
     public Map<String,ShardRoutingState> getShardRoutingState(UUID nodeUuid) {
         return remoteShardRoutingStateMap.get(nodeUuid);
     }
@@ -752,9 +906,18 @@ public class CassandraDiscovery extends AbstractLifecycleComponent implements Di
             if (blockException != null)
                 logger.debug("Node not ready for READ block={}", clusterState().blocks());
             if (searchEnabled.get() && blockException == null) {
-                String newValue = jsonMapper.writerWithType(indexShardStateTypeReference).writeValueAsString(localShardStateMap);
-                logger.debug("Compress X1 = {}", gzip);
-                Gossiper.instance.addLocalApplicationState(ELASTIC_SHARDS_STATES, StorageService.instance.valueFactory.datacenter(gzip ? compress(newValue) : newValue));
+                final String newValue;
+                if (binaryX1) {
+                    newValue = ShardRoutingStateCodec.encode(localX1Version.incrementAndGet(), localShardStateMap);
+                } else {
+                    String jsonValue = jsonMapper.writerWithType(indexShardStateTypeReference).writeValueAsString(localShardStateMap);
+                    logger.debug("Compress X1 = {}", gzip);
+                    newValue = gzip ? compress(jsonValue) : jsonValue;
+                }
+                x1PublishedSize.inc(newValue.length());
+                if (logger.isDebugEnabled())
+                    logger.debug("Publishing X1 binary={} size={} indices={}", binaryX1, newValue.length(), localShardStateMap.size());
+                Gossiper.instance.addLocalApplicationState(ELASTIC_SHARDS_STATES, StorageService.instance.valueFactory.datacenter(newValue));
             } else {
                 // publish an empty map, so other nodes will see local shards UNASSIGNED.
                 // empty doesn't have to be GZipped
@@ -887,7 +1050,10 @@ public class CassandraDiscovery extends AbstractLifecycleComponent implements Di
         }
 
         public DiscoveryNode remove(String id) {
-            remoteShardRoutingStateMap.remove(id);
+            // remote states are keyed by host UUID, also forget the last X1 version of a leaving node.
+            UUID hostUuid = UUID.fromString(id);
+            remoteShardRoutingStateMap.remove(hostUuid);
+            remoteX1Versions.remove(hostUuid);
             return members.remove(id);
         }
 
@@ -1014,7 +1180,7 @@ public class CassandraDiscovery extends AbstractLifecycleComponent implements Di
                         clusterChangedEvent.source(), clusterChangedEvent.schemaUpdate(), mutations);
 
                 // unless update is UPDATE_ASYNCHRONOUS, block until schema is applied.
-                Future<?> future = MigrationManager.announce(mutations, this.clusterService.getSchemaManager().getInhibitedSchemaListeners());
+                Future<?> future = this.clusterService.getSchemaManager().announce(mutations);
                 if (!SchemaUpdate.UPDATE_ASYNCHRONOUS.equals(clusterChangedEvent.schemaUpdate()))
                     FBUtilities.waitOnFuture(future);
 
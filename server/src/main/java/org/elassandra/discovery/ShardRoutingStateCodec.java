@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.discovery;
+
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.StringHelper;
+import org.elasticsearch.cluster.routing.ShardRoutingState;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compact binary encoding of the local shards states published in the gossip application state X1.
+ * <p>
+ * The payload is a base64 string prefixed by {@link #BINARY_PREFIX} containing:
+ * <ul>
+ * <li>the format version (byte),</li>
+ * <li>the publisher's X1 version (vlong), allowing receivers to skip a payload they already decoded,</li>
+ * <li>the number of indices (vint),</li>
+ * <li>for each index sorted by name, the length of the prefix shared with the previous index name (vint),
+ * the remaining UTF-8 suffix (vint length + bytes) and the {@link ShardRoutingState} byte value.</li>
+ * </ul>
+ * Sorted index names are front-coded, so time-partitioned indices (ex: logs-2018.01.01, logs-2018.01.02...)
+ * only cost a few bytes each.
+ */
+public class ShardRoutingStateCodec {
+
+    public static final String BINARY_PREFIX = "#";
+    public static final byte FORMAT_VERSION = 1;
+
+    // base64 chars needed to decode the format byte and a vlong (at most 10 bytes).
+    private static final int HEADER_BASE64_LENGTH = 16;
+
+    public static boolean isBinary(String value) {
+        return value != null && value.startsWith(BINARY_PREFIX);
+    }
+
+    public static String encode(long version, Map<String, ShardRoutingState> shardsStateMap) throws IOException {
+        TreeMap<BytesRef, ShardRoutingState> sorted = new TreeMap<>();
+        for(Map.Entry<String, ShardRoutingState> entry : shardsStateMap.entrySet())
+            sorted.put(new BytesRef(entry.getKey()), entry.getValue());
+
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            out.writeByte(FORMAT_VERSION);
+            out.writeVLong(version);
+            out.writeVInt(sorted.size());
+            BytesRef previous = new BytesRef();
+            for(Map.Entry<BytesRef, ShardRoutingState> entry : sorted.entrySet()) {
+                BytesRef name = entry.getKey();
+                int prefix = StringHelper.bytesDifference(previous, name);
+                out.writeVInt(prefix);
+                out.writeVInt(name.length - prefix);
+                out.writeBytes(name.bytes, name.offset + prefix, name.length - prefix);
+                out.writeByte(entry.getValue().value());
+                previous = name;
+            }
+            return BINARY_PREFIX + Base64.getEncoder().encodeToString(BytesReference.toBytes(out.bytes()));
+        }
+    }
+
+    /**
+     * Read the publisher's version without decoding the whole payload.
+     */
+    public static long version(String value) throws IOException {
+        String header = value.substring(BINARY_PREFIX.length(), Math.min(value.length(), BINARY_PREFIX.length() + HEADER_BASE64_LENGTH));
+        try (StreamInput in = StreamInput.wrap(Base64.getDecoder().decode(header))) {
+            checkFormat(in.readByte());
+            return in.readVLong();
+        }
+    }
+
+    public static Map<String, ShardRoutingState> decode(String value) throws IOException {
+        byte[] bytes = Base64.getDecoder().decode(value.substring(BINARY_PREFIX.length()));
+        try (StreamInput in = StreamInput.wrap(bytes)) {
+            checkFormat(in.readByte());
+            in.readVLong();
+            int size = in.readVInt();
+            Map<String, ShardRoutingState> shardsStateMap = new HashMap<>(size * 4 / 3 + 1);
+            byte[] name = new byte[64];
+            for(int i = 0; i < size; i++) {
+                int prefix = in.readVInt();
+                int suffix = in.readVInt();
+                if (prefix + suffix > name.length) {
+                    byte[] newName = new byte[Math.max(prefix + suffix, name.length << 1)];
+                    System.arraycopy(name, 0, newName, 0, prefix);
+                    name = newName;
+                }
+                in.readBytes(name, prefix, suffix);
+                shardsStateMap.put(new String(name, 0, prefix + suffix, StandardCharsets.UTF_8), ShardRoutingState.fromValue(in.readByte()));
+            }
+            return shardsStateMap;
+        }
+    }
+
+    private static void checkFormat(byte format) throws IOException {
+        if (format != FORMAT_VERSION)
+            throw new IOException("Unsupported X1 binary format version [" + format + "]");
+    }
+}
@@ -37,6 +37,7 @@ import org.elasticsearch.threadpool.ThreadPool;
 import java.io.IOException;
 
 import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class CassandraGatewayService extends GatewayService {
@@ -99,14 +100,20 @@ public class CassandraGatewayService extends GatewayService {
 
     @Override
     protected void performStateRecovery(boolean enforceRecoverAfterTime, String reason) {
-        final Gateway.GatewayStateRecoveredListener recoveryListener = new GatewayRecoveryListener();
+        final Gateway.GatewayStateRecoveredListener recoveryListener = new GatewayRecoveryListener(System.nanoTime());
         gateway().performStateRecovery(recoveryListener);
     }
 
     class GatewayRecoveryListener implements Gateway.GatewayStateRecoveredListener {
+        final long startNanos;
+
+        GatewayRecoveryListener(long startNanos) {
+            this.startNanos = startNanos;
+        }
 
         @Override
         public void onSuccess(final ClusterState recoveredState) {
+            final long loadedNanos = System.nanoTime();
             logger.trace("Successful state recovery, importing cluster state...");
             clusterService.submitStateUpdateTask("cassandra-gateway-recovery-state", new ClusterStateUpdateTask() {
                 @Override
@@ -147,8 +154,10 @@ public class CassandraGatewayService extends GatewayService {
 
                 @Override
                 public void clusterStateProcessed(String source, ClusterState oldState, ClusterState newState) {
-                    logger.info("Recovered [{}] indices into cluster_state metadata={}/{}",
-                            newState.metaData().indices().size(), newState.metaData().clusterUUID(), newState.metaData().version());
+                    long endNanos = System.nanoTime();
+                    logger.info("Recovered [{}] indices into cluster_state metadata={}/{}, metadata loaded in {} ms, cluster state applied in {} ms",
+                            newState.metaData().indices().size(), newState.metaData().clusterUUID(), newState.metaData().version(),
+                            TimeUnit.NANOSECONDS.toMillis(loadedNanos - startNanos), TimeUnit.NANOSECONDS.toMillis(endNanos - loadedNanos));
                 }
             });
         }
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.index;
+
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.util.IOUtils;
+import org.elasticsearch.action.admin.indices.flush.FlushRequest;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.common.util.concurrent.AbstractRunnable;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lucene commit of an index shard decoupled from the memtable flushes of a table.
+ * <p>
+ * On memtable flush, the commit is scheduled on the elasticsearch flush thread pool, coalesced with the following memtable
+ * flushes until the delay expires or enough bytes were indexed. As commitlog segments of the flushed memtable can be
+ * discarded before the lucene commit, a pending marker file is written and synced in the shard data path before the
+ * memtable flush completes, and removed once a lucene commit covers all flushed memtables, including the commit done
+ * when the shard is cleanly closed. The marker holds the generation of the last memtable flush and the generation
+ * covered by the last lucene commit, a flush generation greater than the committed one when the shard starts means
+ * the node crashed with indexed rows not committed and the secondary index must be rebuilt.
+ */
+public class AsyncFlush {
+
+    static final long DELAY_MS = Long.getLong(ClusterService.SETTING_SYSTEM_ASYNC_FLUSH_DELAY, 30000L);
+    static final long MAX_BYTES = Long.getLong(ClusterService.SETTING_SYSTEM_ASYNC_FLUSH_SIZE, 64L * 1024 * 1024);
+
+    private final Logger logger;
+    private final String markerName;
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private final LongAdder pendingBytes = new LongAdder();
+    private long generation = 0;          // incremented on each memtable flush with indexed rows
+    private long committedGeneration = 0; // last generation covered by a lucene commit
+    private boolean closed = false;       // set when the shard closes, no more commit is scheduled
+    private ScheduledFuture<?> scheduledCommit = null;
+
+    AsyncFlush(Logger logger, String ksName, String cfName) {
+        this.logger = logger;
+        this.markerName = markerName(ksName, cfName);
+    }
+
+    static String markerName(String ksName, String cfName) {
+        return "async_flush." + ksName + "." + cfName + ".pending";
+    }
+
+    void addBytes(long bytes) {
+        pendingBytes.add(bytes);
+    }
+
+    /**
+     * Called by the memtable flush, records the pending state before scheduling the lucene commit.
+     * @return false if the shard is closing, the caller must then flush the shard.
+     */
+    boolean onMemtableFlush(IndexShard indexShard) throws IOException {
+        synchronized (this) {
+            if (closed)
+                return false;
+            generation++;
+            writeMarker(indexShard.shardPath().getDataPath().resolve(markerName), generation, committedGeneration);
+            if (pendingBytes.sum() >= MAX_BYTES) {
+                if (scheduled.compareAndSet(false, true))
+                    indexShard.getThreadPool().executor(ThreadPool.Names.FLUSH).execute(commitTask(indexShard));
+            } else if (scheduled.compareAndSet(false, true)) {
+                scheduledCommit = indexShard.getThreadPool().schedule(TimeValue.timeValueMillis(DELAY_MS), ThreadPool.Names.FLUSH, commitTask(indexShard));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Called before the shard closes, cancels the scheduled commit and commits now, so that a clean close leaves no
+     * pending marker and does not trigger a rebuild when the shard starts again.
+     */
+    void close(IndexShard indexShard) throws IOException {
+        synchronized (this) {
+            closed = true;
+            if (scheduledCommit != null)
+                scheduledCommit.cancel(false);
+            scheduledCommit = null;
+            scheduled.set(false);
+            if (generation == committedGeneration)
+                return;
+        }
+        commit(indexShard);
+    }
+
+    private void commit(IndexShard indexShard) throws IOException {
+        final long gen;
+        synchronized (this) {
+            gen = generation;
+        }
+        pendingBytes.reset();
+        long start = System.currentTimeMillis();
+        indexShard.flush(new FlushRequest().force(false).waitIfOngoing(true));
+        synchronized (this) {
+            committedGeneration = gen;
+            Path marker = indexShard.shardPath().getDataPath().resolve(markerName);
+            if (generation == gen)
+                Files.deleteIfExists(marker);
+            else
+                writeMarker(marker, generation, committedGeneration);
+        }
+        if (logger.isDebugEnabled())
+            logger.debug("Elasticsearch index=[{}] async flushed, duration={}ms", indexShard.shardId().getIndexName(), System.currentTimeMillis() - start);
+    }
+
+    private AbstractRunnable commitTask(IndexShard indexShard) {
+        return new AbstractRunnable() {
+            @Override
+            public void onFailure(Exception e) {
+                scheduled.set(false);
+                logger.warn("async flush of index=[" + indexShard.shardId().getIndexName() + "] failed", e);
+            }
+
+            @Override
+            protected void doRun() throws Exception {
+                synchronized (AsyncFlush.this) {
+                    scheduledCommit = null;
+                    scheduled.set(false);
+                    if (closed)
+                        return; // committed by close
+                }
+                commit(indexShard);
+            }
+        };
+    }
+
+    /**
+     * Atomically replace the marker with the flush and committed generations, synced before returning.
+     */
+    static void writeMarker(Path marker, long flushGeneration, long committedGeneration) throws IOException {
+        Path tmp = marker.resolveSibling(marker.getFileName() + ".tmp");
+        Files.write(tmp, (flushGeneration + " " + committedGeneration).getBytes(StandardCharsets.UTF_8));
+        IOUtils.fsync(tmp, false);
+        Files.move(tmp, marker, StandardCopyOption.ATOMIC_MOVE);
+        IOUtils.fsync(marker.getParent(), true);
+    }
+
+    /**
+     * @return true if the pending marker records a memtable flush generation not covered by a lucene commit, and remove it.
+     * An unreadable marker is considered as uncommitted.
+     */
+    static boolean checkPendingMarker(IndexShard indexShard, String ksName, String cfName) throws IOException {
+        Path marker = indexShard.shardPath().getDataPath().resolve(markerName(ksName, cfName));
+        if (!Files.exists(marker))
+            return false;
+        boolean uncommitted;
+        try {
+            String[] generations = new String(Files.readAllBytes(marker), StandardCharsets.UTF_8).trim().split(" ");
+            uncommitted = Long.parseLong(generations[0]) > Long.parseLong(generations[1]);
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            uncommitted = true;
+        }
+        Files.delete(marker);
+        return uncommitted;
+    }
+}
@@ -35,6 +35,7 @@ import org.apache.cassandra.db.ClusteringBound;
 import org.apache.cassandra.db.ColumnFamilyStore;
 import org.apache.cassandra.db.DecoratedKey;
 import org.apache.cassandra.db.DeletionTime;
+import org.apache.cassandra.db.LivenessInfo;
 import org.apache.cassandra.db.PartitionColumns;
 import org.apache.cassandra.db.RangeTombstone;
 import org.apache.cassandra.db.ReadCommand;
@@ -43,6 +44,10 @@ import org.apache.cassandra.db.SinglePartitionReadCommand;
 import org.apache.cassandra.db.Slice;
 import org.apache.cassandra.db.Slices;
 import org.apache.cassandra.db.SystemKeyspace;
+import org.apache.cassandra.db.commitlog.CommitLogPosition;
+import org.apache.cassandra.db.compaction.CompactionInfo;
+import org.apache.cassandra.db.compaction.CompactionInterruptedException;
+import org.apache.cassandra.db.compaction.OperationType;
 import org.apache.cassandra.db.filter.ClusteringIndexNamesFilter;
 import org.apache.cassandra.db.filter.ClusteringIndexSliceFilter;
 import org.apache.cassandra.db.filter.ColumnFilter;
@@ -63,16 +68,28 @@ import org.apache.cassandra.db.rows.Row;
 import org.apache.cassandra.db.rows.RowIterator;
 import org.apache.cassandra.db.rows.UnfilteredRowIterator;
 import org.apache.cassandra.db.rows.UnfilteredRowIterators;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
 import org.apache.cassandra.exceptions.InvalidRequestException;
+import org.apache.cassandra.gms.FailureDetector;
 import org.apache.cassandra.index.Index;
 import org.apache.cassandra.index.IndexRegistry;
+import org.apache.cassandra.index.SecondaryIndexBuilder;
 import org.apache.cassandra.index.transactions.IndexTransaction;
 import org.apache.cassandra.index.transactions.IndexTransaction.Type;
+import org.apache.cassandra.io.sstable.ReducingKeyIterator;
+import org.apache.cassandra.io.sstable.format.SSTableReader;
 import org.apache.cassandra.io.util.FileUtils;
 import org.apache.cassandra.schema.IndexMetadata;
 import org.apache.cassandra.serializers.SimpleDateSerializer;
 import org.apache.cassandra.service.ElassandraDaemon;
+import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.streaming.StreamEvent;
+import org.apache.cassandra.streaming.StreamManager;
+import org.apache.cassandra.streaming.StreamState;
+import org.apache.cassandra.streaming.management.StreamStateCompositeData;
 import org.apache.cassandra.utils.ByteBufferUtil;
+import org.apache.cassandra.utils.FBUtilities;
 import org.apache.cassandra.utils.Pair;
 import org.apache.cassandra.utils.UUIDGen;
 import org.apache.cassandra.utils.concurrent.OpOrder;
@@ -82,18 +99,25 @@ import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.message.ParameterizedMessage;
 import org.apache.logging.log4j.util.Supplier;
 import org.apache.lucene.document.Field;
+import org.apache.lucene.document.IntPoint;
 import org.apache.lucene.document.LongPoint;
 import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.document.SortedNumericDocValuesField;
 import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.IndexCommit;
 import org.apache.lucene.index.IndexOptions;
 import org.apache.lucene.index.IndexReaderContext;
 import org.apache.lucene.index.IndexableField;
 import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.PostingsEnum;
 import org.apache.lucene.index.ReaderUtil;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexOrDocValuesQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MatchAllDocsQuery;
@@ -103,14 +127,22 @@ import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TermRangeQuery;
 import org.apache.lucene.search.Weight;
 import org.apache.lucene.search.join.BitSetProducer;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.CloseableThreadLocal;
+import org.apache.lucene.util.IOUtils;
 import org.elassandra.cluster.SchemaManager;
 import org.elassandra.cluster.Serializer;
 import org.elassandra.index.ElasticSecondaryIndex.ImmutableMappingInfo.WideRowcumentIndexer.WideRowcument;
+import org.elassandra.index.mapper.CellFieldCodec;
+import org.elassandra.index.mapper.internal.TokenFieldMapper;
 import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ElasticsearchParseException;
 import org.elasticsearch.Version;
 import org.elasticsearch.action.admin.indices.flush.FlushRequest;
+import org.elasticsearch.action.admin.indices.forcemerge.ForceMergeRequest;
 import org.elasticsearch.cluster.ClusterChangedEvent;
 import org.elasticsearch.cluster.ClusterName;
 import org.elasticsearch.cluster.ClusterState;
@@ -120,6 +152,7 @@ import org.elasticsearch.cluster.block.ClusterBlockLevel;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.cluster.metadata.MappingMetaData;
 import org.elasticsearch.cluster.metadata.MetaData;
+import org.elasticsearch.cluster.node.DiscoveryNode;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.SuppressForbidden;
 import org.elasticsearch.common.bytes.BytesArray;
@@ -127,15 +160,19 @@ import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.geo.GeoPoint;
 import org.elasticsearch.common.geo.builders.ShapeBuilder;
 import org.elasticsearch.common.geo.parsers.ShapeParser;
+import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.lucene.BytesRefs;
 import org.elasticsearch.common.lucene.all.AllEntries;
 import org.elasticsearch.common.lucene.search.Queries;
+import org.elasticsearch.common.metrics.CounterMetric;
 import org.elasticsearch.common.settings.Setting;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.CountDown;
 import org.elasticsearch.common.xcontent.NamedXContentRegistry;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
 import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.common.xcontent.support.XContentMapValues;
@@ -147,6 +184,7 @@ import org.elasticsearch.index.engine.Engine.DeleteByQuery;
 import org.elasticsearch.index.engine.Engine.IndexResult;
 import org.elasticsearch.index.engine.Engine.Operation;
 import org.elasticsearch.index.engine.EngineException;
+import org.elasticsearch.index.engine.VersionLessInternalEngine;
 import org.elasticsearch.index.mapper.BooleanFieldMapper;
 import org.elasticsearch.index.mapper.ContentPath;
 import org.elasticsearch.index.mapper.DateFieldMapper;
@@ -183,10 +221,13 @@ import org.elasticsearch.index.mapper.VersionFieldMapper;
 import org.elasticsearch.index.seqno.SequenceNumbers;
 import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.shard.IndexShardState;
+import org.elasticsearch.index.store.Store;
+import org.elasticsearch.index.store.StoreFileMetaData;
 import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.threadpool.ThreadPool;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
 import java.nio.file.DirectoryIteratorException;
@@ -204,6 +245,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -217,7 +259,10 @@ import java.util.Set;
 import java.util.TreeMap;
 import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -227,6 +272,8 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import javax.management.openmbean.CompositeData;
+
 
 /**
  * Custom secondary index for CQL3 only, should be created when mapping is applied and local shard started.
@@ -245,9 +292,31 @@ public class ElasticSecondaryIndex implements Index {
     private final static Field DEFAULT_EXTERNAL_VERSION = new NumericDocValuesField(VersionFieldMapper.NAME, 1L);
 
     public static final Map<String, ElasticSecondaryIndex> elasticSecondayIndices = Maps.newConcurrentMap();
+
+    // lucene field holding the expiration time in seconds of rows entirely written with a TTL, when index_expiration is enabled.
+    public static final String EXPIRATION_FIELD = "_expiration";
+    // doc values of the last write timestamp and of the first expiration time of the indexed cells, when index_on_compaction or repair indexing is enabled.
+    public static final String ROW_TIMESTAMP_FIELD = "_row_timestamp";
+    public static final String ROW_EXPIRATION_FIELD = "_row_expiration";
+    private static final boolean STREAM_SEGMENTS = Boolean.getBoolean(ClusterService.SETTING_SYSTEM_STREAM_SEGMENTS);
+    private static final String STREAM_SUCCESS_NOTIFICATION = StreamEvent.class.getCanonicalName() + ".success";
+    private static final int REPAIR_INDEXING_BATCH_SIZE = Integer.getInteger(ClusterService.SETTING_SYSTEM_REPAIR_INDEXING_BATCH_SIZE, 128);
+    // set by the repair indexing threads, rows of the indexed partitions are merged rows not requiring a read-before-write.
+    private static final ThreadLocal<Boolean> BULK_INDEXING = ThreadLocal.withInitial(() -> false);
     public static final Pattern TARGET_REGEX = Pattern.compile("^(keys|entries|values|full)\\((.+)\\)$");
     private static final ClusteringIndexSliceFilter SKINNY_FILTER = new ClusteringIndexSliceFilter(Slices.ALL, false);
 
+    static {
+        // forget the segments import result of a stream plan once it completed.
+        StreamManager.instance.addNotificationListener((notification, handback) -> {
+            if (STREAM_SUCCESS_NOTIFICATION.equals(notification.getType()) && notification.getUserData() instanceof CompositeData) {
+                UUID planId = StreamStateCompositeData.fromCompositeData((CompositeData) notification.getUserData()).planId;
+                for (ElasticSecondaryIndex esi : elasticSecondayIndices.values())
+                    esi.forgetImportedStream(planId);
+            }
+        }, null, null);
+    }
+
     public static boolean runsElassandra = false;
 
     final String index_name;
@@ -256,6 +325,12 @@ public class ElasticSecondaryIndex implements Index {
     // updated when create/open/close/remove an ES index.
     protected final ReadWriteLock mappingInfoLock = new ReentrantReadWriteLock();
     protected final AtomicReference<ImmutableMappingInfo> mappingInfoRef;
+    protected final AtomicLong cleanupRingVersion = new AtomicLong(-1);  // ring version of the last successful token ranges cleanup
+    protected final AtomicBoolean cleanupRunning = new AtomicBoolean(false);
+    protected volatile Set<Range<Token>> cleanupRanges = null;       // local token ranges of the last successful cleanup
+    protected volatile Set<Range<Token>> cleanupPendingRanges = null; // local token ranges of the running cleanup
+    protected final CounterMetric builtDocuments = new CounterMetric();  // lucene documents built from rows
+    protected final CounterMetric reusedDocuments = new CounterMetric(); // lucene documents reused from another index of the same docGroup
     protected final ClusterService clusterService;
 
     protected final ColumnFamilyStore baseCfs;
@@ -263,6 +338,8 @@ public class ElasticSecondaryIndex implements Index {
     protected String typeName;
     protected Object[] readBeforeWriteLocks;
     protected AtomicBoolean needBuild;
+    protected final Map<String, AsyncFlush> asyncFlushes = Maps.newConcurrentMap(); // pending lucene commits by index name
+    protected final Map<UUID, Boolean> importedStreams = new HashMap<>(); // segments import result by stream plan id
 
     ElasticSecondaryIndex(ColumnFamilyStore baseCfs, IndexMetadata indexDef) {
         this.baseCfs = baseCfs;
@@ -281,6 +358,13 @@ public class ElasticSecondaryIndex implements Index {
         this.needBuild = new AtomicBoolean(!isBuilt());
     }
 
+    /**
+     * @return the lock of the partition shared by the read-before-write of the indexers and the repair indexing.
+     */
+    Object readBeforeWriteLock(DecoratedKey key) {
+        return readBeforeWriteLocks[Math.abs(key.hashCode() % readBeforeWriteLocks.length)];
+    }
+
     public static ElasticSecondaryIndex newElasticSecondaryIndex(ColumnFamilyStore baseCfs, IndexMetadata indexDef) {
         ElasticSecondaryIndex esi = elasticSecondayIndices.computeIfAbsent(baseCfs.keyspace.getName() + "." + baseCfs.name, K -> new ElasticSecondaryIndex(baseCfs, indexDef));
         return esi;
@@ -842,21 +926,26 @@ public class ElasticSecondaryIndex implements Index {
             final boolean versionLessEngine;
             final boolean insert_only;
             final boolean opaque_storage;
+            final boolean index_expiration;
+            final boolean doc_values_update;
+            final AsyncFlush asyncFlush;  // null when lucene is committed on memtable flush
             final long version;
 
             Mapper[] mappers;   // inititalized in the ImmutableMappingInfo constructor.
+            CellFieldCodec[] codecs; // inititalized in the ImmutableMappingInfo constructor, null when no field has a codec.
+            CellFieldCodec[] docValuesCodecs; // doc values only fields indexed as numeric doc values, inititalized in the ImmutableMappingInfo constructor.
+            int docGroup;       // position of the first index building the same lucene documents, inititalized in the ImmutableMappingInfo constructor.
             ReadWriteLock dynamicMappingUpdateLock;
             volatile boolean updated = false;
 
-            public ImmutableIndexInfo(String name, IndexService indexService, MappingMetaData mappingMetaData, MetaData metadata, boolean versionLessEngine) throws IOException {
+            public ImmutableIndexInfo(String name, IndexService indexService, MappingMetaData mappingMetaData, Map<String, Object> mappingMap, MetaData metadata, boolean versionLessEngine) throws IOException {
                 this.name = name;
                 this.versionLessEngine = versionLessEngine;
                 this.indexService = indexService;
-                this.mapping = mappingMetaData.sourceAsMap();
+                this.mapping = mappingMap;
                 this.type = mappingMetaData.type();
                 this.shardStarted = (shard() != null);
 
-                Map<String, Object> mappingMap = mappingMetaData.getSourceAsMap();
                 Map<String, Object> metaMap = (mappingMap == null) ? null : (Map<String, Object>) mappingMap.get("_meta");
 
                 this.version = indexService.getMetaData().getVersion();
@@ -872,6 +961,12 @@ public class ElasticSecondaryIndex implements Index {
                 this.index_static_document = getMetaSettings(metadata.settings(), metaMap, IndexMetaData.INDEX_INDEX_STATIC_DOCUMENT_SETTING);
                 this.insert_only = getMetaSettings(metadata.settings(), metaMap, IndexMetaData.INDEX_INDEX_INSERT_ONLY_SETTING);
                 this.opaque_storage = getMetaSettings(metadata.settings(), metaMap, IndexMetaData.INDEX_INDEX_OPAQUE_STORAGE_SETTING);
+                this.index_expiration = getMetaSettings(metadata.settings(), metaMap, IndexMetaData.INDEX_INDEX_EXPIRATION_SETTING);
+                // a final index setting, the type of the doc values must not change, and the engine tracks the pending writes.
+                this.doc_values_update = !this.opaque_storage && indexService.getIndexSettings().getValue(IndexMetaData.INDEX_INDEX_DOC_VALUES_UPDATE_SETTING);
+                this.asyncFlush = getMetaSettings(metadata.settings(), metaMap, IndexMetaData.INDEX_ASYNC_FLUSH_SETTING) ?
+                        asyncFlushes.computeIfAbsent(name, k -> new AsyncFlush(logger, baseCfs.keyspace.getName(), baseCfs.metadata.cfName)) :
+                        null;
 
                 // lazy lock array initialization if needed
                 if (!this.insert_only && readBeforeWriteLocks == null) {
@@ -889,6 +984,34 @@ public class ElasticSecondaryIndex implements Index {
                 return ImmutableMappingInfo.this;
             }
 
+            /**
+             * Lucene documents do not depend on the index when mappings, index created version, analysis settings
+             * (keyword normalizers are applied when building fields) and indexing options are the same.
+             * Indices with dynamic mapping updates of map columns are excluded, because building the document updates the mapping.
+             */
+            boolean buildsSameDocumentsAs(ImmutableIndexInfo other) {
+                if (this.opaque_storage || other.opaque_storage
+                        || this.dynamicMappingUpdateLock != null || other.dynamicMappingUpdateLock != null
+                        || this.includeNodeId != other.includeNodeId
+                        || this.versionLessEngine != other.versionLessEngine
+                        || this.index_on_compaction != other.index_on_compaction
+                        || this.index_expiration != other.index_expiration
+                        || this.doc_values_update != other.doc_values_update
+                        || this.index_static_columns != other.index_static_columns
+                        || this.index_static_document != other.index_static_document
+                        || this.index_static_only != other.index_static_only)
+                    return false;
+                IndexSettings settings = this.indexService.getIndexSettings();
+                IndexSettings otherSettings = other.indexService.getIndexSettings();
+                if (!settings.getIndexVersionCreated().equals(otherSettings.getIndexVersionCreated())
+                        || !settings.getSettings().getByPrefix("index.analysis.").equals(otherSettings.getSettings().getByPrefix("index.analysis.")))
+                    return false;
+                DocumentMapper docMapper = this.indexService.mapperService().documentMapper(this.type);
+                DocumentMapper otherDocMapper = other.indexService.mapperService().documentMapper(other.type);
+                return docMapper != null && otherDocMapper != null
+                        && (docMapper.mapping() == otherDocMapper.mapping() || docMapper.mappingSource().equals(otherDocMapper.mappingSource()));
+            }
+
             // get _meta, index, cluster or system settings.
             public boolean getMetaSettings(Settings metadataSettings, Map<String, Object> metaMap, Setting indexSetting) {
                 boolean value = false;
@@ -939,56 +1062,80 @@ public class ElasticSecondaryIndex implements Index {
             }
 
             public void deleteByQuery(final Object pkCols[], RangeTombstone tombstone) {
-                IndexShard shard = shard();
-                if (shard != null) {
-                    Slice slice = tombstone.deletedSlice();
-                    ClusteringBound start = slice.start();
-                    ClusteringBound end = slice.end();
+                deleteByQuery(pkCols, Collections.singletonList(tombstone));
+            }
 
+            /**
+             * Remove the row slices of a partition with one delete-by-query, the disjunction of the slice queries
+             * (split when exceeding the max boolean clause count). The following refresh is coalesced by the engine.
+             */
+            public void deleteByQuery(final Object pkCols[], List<RangeTombstone> tombstones) {
+                IndexShard shard = shard();
+                if (shard != null && !tombstones.isEmpty()) {
                     DocumentMapper docMapper = indexService.mapperService().documentMapper(typeName);
-                    BooleanQuery.Builder builder = new BooleanQuery.Builder();
+                    int maxClauses = BooleanQuery.getMaxClauseCount();
+                    for (int from = 0; from < tombstones.size(); from += maxClauses) {
+                        List<RangeTombstone> chunk = tombstones.subList(from, Math.min(tombstones.size(), from + maxClauses));
+                        Query query;
+                        if (chunk.size() == 1) {
+                            query = sliceQuery(docMapper, pkCols, chunk.get(0).deletedSlice());
+                        } else {
+                            BooleanQuery.Builder builder = new BooleanQuery.Builder();
+                            for (RangeTombstone tombstone : chunk)
+                                builder.add(sliceQuery(docMapper, pkCols, tombstone.deletedSlice()), Occur.SHOULD);
+                            query = builder.build();
+                        }
+                        if (logger.isDebugEnabled()) {
+                            logger.debug("delete {} rangeTombstones from ks.cf={}.{} query={} in elasticsearch index=[{}]",
+                                chunk.size(), baseCfs.metadata.ksName, baseCfs.name, query, name);
+                        }
+                        if (!updated)
+                            updated = true;
+                        DeleteByQuery deleteByQuery = buildDeleteByQuery(shard.indexService(), query).deferredRefresh(true);
+                        shard.getEngine().delete(deleteByQuery);
+                    }
+                }
+            }
 
-                    int partitionKeyLen = baseCfs.metadata.partitionKeyColumns().size();
+            /**
+             * Build the query matching the documents of a row slice in a partition.
+             */
+            Query sliceQuery(DocumentMapper docMapper, final Object pkCols[], Slice slice) {
+                ClusteringBound start = slice.start();
+                ClusteringBound end = slice.end();
+                BooleanQuery.Builder builder = new BooleanQuery.Builder();
 
-                    // build the primary key part of the delete by query
-                    int i = 0;
-                    for (ColumnDefinition cd : baseCfs.metadata.primaryKeyColumns()) {
-                        if (i >= (partitionKeyLen + Math.max(start.size(), end.size())))
-                            break;
+                int partitionKeyLen = baseCfs.metadata.partitionKeyColumns().size();
 
-                        if (indexedPkColumns[i]) {
-                            FieldMapper mapper = docMapper.mappers().smartNameFieldMapper(cd.name.toString());
-                            Query q;
-                            if (i < partitionKeyLen) {
-                                q = buildQuery(cd, mapper, pkCols[i], pkCols[i], true, true);
-                            } else {
-                                ByteBuffer startByteBuffer = null, endByteBuffer = null;
-                                boolean startIsInclusive = true, endIsInclusive = true;
-                                if (i - partitionKeyLen < start.size()) {
-                                    startByteBuffer = start.get(i - partitionKeyLen);
-                                    startIsInclusive = start.isInclusive();
-                                }
-                                if (i - partitionKeyLen < end.size()) {
-                                    endByteBuffer = end.get(i - partitionKeyLen);
-                                    endIsInclusive = end.isInclusive();
-                                }
-                                q = buildQuery(cd, mapper, startByteBuffer, endByteBuffer, startIsInclusive, endIsInclusive);
+                // build the primary key part of the delete by query
+                int i = 0;
+                for (ColumnDefinition cd : baseCfs.metadata.primaryKeyColumns()) {
+                    if (i >= (partitionKeyLen + Math.max(start.size(), end.size())))
+                        break;
+
+                    if (indexedPkColumns[i]) {
+                        FieldMapper mapper = docMapper.mappers().smartNameFieldMapper(cd.name.toString());
+                        Query q;
+                        if (i < partitionKeyLen) {
+                            q = buildQuery(cd, mapper, pkCols[i], pkCols[i], true, true);
+                        } else {
+                            ByteBuffer startByteBuffer = null, endByteBuffer = null;
+                            boolean startIsInclusive = true, endIsInclusive = true;
+                            if (i - partitionKeyLen < start.size()) {
+                                startByteBuffer = start.get(i - partitionKeyLen);
+                                startIsInclusive = start.isInclusive();
+                            }
+                            if (i - partitionKeyLen < end.size()) {
+                                endByteBuffer = end.get(i - partitionKeyLen);
+                                endIsInclusive = end.isInclusive();
                             }
-                            builder.add(q, Occur.FILTER);
+                            q = buildQuery(cd, mapper, startByteBuffer, endByteBuffer, startIsInclusive, endIsInclusive);
                         }
-                        i++;
+                        builder.add(q, Occur.FILTER);
                     }
-
-                    Query query = builder.build();
-                    if (logger.isDebugEnabled()) {
-                        logger.debug("delete rangeTombstone={} from ks.cf={}.{} query={} in elasticsearch index=[{}]",
-                            tombstone.deletedSlice().toString(baseCfs.metadata), baseCfs.metadata.ksName, baseCfs.name, query, name);
-                    }
-                    if (!updated)
-                        updated = true;
-                    DeleteByQuery deleteByQuery = buildDeleteByQuery(shard.indexService(), query);
-                    shard.getEngine().delete(deleteByQuery);
+                    i++;
                 }
+                return builder.build();
             }
 
             /**
@@ -1195,6 +1342,10 @@ public class ElasticSecondaryIndex implements Index {
         final ImmutableIndexInfo[] indices;
         final ObjectIntHashMap<String> indexToIdx;
         final ObjectIntHashMap<String> fieldsToIdx;
+        final IdentityHashMap<ColumnDefinition, Integer> columnsToIdx; // fields position resolved by column definition
+        final BitSet rawFields;  // fields kept as serialized cell values and indexed by a CellFieldCodec in all indices
+        final BitSet docValuesUpdateFields; // fields only indexed as numeric doc values in all indices, null when doc values are not updated in place
+        final boolean sharedDocuments; // true if some indices build the same lucene documents (see ImmutableIndexInfo.docGroup)
         final ColumnFilter columnFilter;
         final BitSet staticColumns;
         final boolean indexSomeStaticColumnsOnWideRow;
@@ -1205,6 +1356,7 @@ public class ElasticSecondaryIndex implements Index {
         final boolean indexOnCompaction;  // true if at least one index has index_on_compaction=true;
         final boolean indexInsertOnly;    // true if all indices have index_append_only=true
         final boolean indexOpaqueStorage; // true if one index have index_opaque_storage=true (
+        final boolean indexExpiration;    // true if one index have index_expiration=true
 
         ImmutableMappingInfo(final ClusterState state) {
             this.metadataVersion = state.metaData().version();
@@ -1216,6 +1368,10 @@ public class ElasticSecondaryIndex implements Index {
                 this.indices = null;
                 this.indexToIdx = null;
                 this.fieldsToIdx = null;
+                this.columnsToIdx = null;
+                this.rawFields = null;
+                this.docValuesUpdateFields = null;
+                this.sharedDocuments = false;
                 this.columnFilter = null;
                 this.staticColumns = null;
                 this.indexSomeStaticColumnsOnWideRow = false;
@@ -1224,12 +1380,15 @@ public class ElasticSecondaryIndex implements Index {
                 this.indexOnCompaction = false;
                 this.indexInsertOnly = false;
                 this.indexOpaqueStorage = false;
+                this.indexExpiration = false;
                 return;
             }
 
             Map<String, Boolean> fieldsMap = new HashMap<String, Boolean>();
             Map<String, ImmutablePartitionFunction> partFuncs = null;
             List<ImmutableIndexInfo> indexList = new ArrayList<ImmutableIndexInfo>();
+            // indices of a virtual index share the same MappingMetaData instance, parse it once.
+            Map<MappingMetaData, Map<String, Object>> mappingMaps = new IdentityHashMap<>();
 
             for (IndexMetaData indexMetaData : state.metaData()) {
                 if (!ElasticSecondaryIndex.this.baseCfs.metadata.ksName.equals(indexMetaData.keyspace()))
@@ -1264,7 +1423,12 @@ public class ElasticSecondaryIndex implements Index {
                 }
 
                 try {
-                    Map<String, Object> mappingMap = mappingMetaData.getSourceAsMap();
+                    Map<String, Object> mappingMap = mappingMaps.get(mappingMetaData);
+                    if (mappingMap == null) {
+                        mappingMap = mappingMetaData.getSourceAsMap();
+                        mappingMap.computeIfAbsent("properties", s -> new HashMap<>());
+                        mappingMaps.put(mappingMetaData, mappingMap);
+                    }
                     // #181 IndiceService is available when activated and before Node start.
                     IndicesService indicesService = clusterService.getIndicesService();
                     IndexService indexService = indicesService.indexService(indexMetaData.getIndex());
@@ -1272,10 +1436,10 @@ public class ElasticSecondaryIndex implements Index {
                         logger.error("indexService not available for [{}], ignoring", index);
                         continue;
                     }
-                    ImmutableIndexInfo indexInfo = new ImmutableIndexInfo(index, indexService, mappingMetaData, state.metaData(), IndexMetaData.isIndexUsingVersionLessEngine(indexMetaData.getSettings()));
+                    ImmutableIndexInfo indexInfo = new ImmutableIndexInfo(index, indexService, mappingMetaData, mappingMap, state.metaData(), IndexMetaData.isIndexUsingVersionLessEngine(indexMetaData.getSettings()));
                     indexList.add(indexInfo);
 
-                    Map<String, Object> props = (Map<String, Object>) mappingMap.computeIfAbsent("properties", s -> new HashMap<>());
+                    Map<String, Object> props = (Map<String, Object>) mappingMap.get("properties");
                     for (String fieldName : props.keySet()) {
                         Map<String, Object> fieldMap = (Map<String, Object>) props.get(fieldName);
                         if (fieldMap.get("enabled") == null || XContentMapValues.nodeBooleanValue(fieldMap.get("enabled"))) {
@@ -1322,6 +1486,10 @@ public class ElasticSecondaryIndex implements Index {
                 this.indices = null;
                 this.indexToIdx = null;
                 this.fieldsToIdx = null;
+                this.columnsToIdx = null;
+                this.rawFields = null;
+                this.docValuesUpdateFields = null;
+                this.sharedDocuments = false;
                 this.columnFilter = null;
                 this.staticColumns = null;
                 this.indexSomeStaticColumnsOnWideRow = false;
@@ -1330,6 +1498,7 @@ public class ElasticSecondaryIndex implements Index {
                 this.indexOnCompaction = false;
                 this.indexInsertOnly = false;
                 this.indexOpaqueStorage = false;
+                this.indexExpiration = false;
                 return;
             }
 
@@ -1344,6 +1513,7 @@ public class ElasticSecondaryIndex implements Index {
             boolean _indexOnCompaction = false;
             boolean _indexInsertOnly = true;
             boolean _indexOpaqueStorage = false;
+            boolean _indexExpiration = false;
             for (ImmutableIndexInfo indexInfo : this.indices) {
                 if (indexInfo.index_static_columns)
                     _indexSomeStaticColumns = true;
@@ -1353,11 +1523,14 @@ public class ElasticSecondaryIndex implements Index {
                     _indexInsertOnly = false;
                 if (indexInfo.opaque_storage)
                     _indexOpaqueStorage = true;
+                if (indexInfo.index_expiration)
+                    _indexExpiration = true;
             }
             this.indexSomeStaticColumnsOnWideRow = _indexSomeStaticColumns;
             this.indexOnCompaction = _indexOnCompaction;
             this.indexInsertOnly = _indexInsertOnly;
             this.indexOpaqueStorage = _indexOpaqueStorage;
+            this.indexExpiration = _indexExpiration;
 
             if (indexOpaqueStorage) {
                 fieldsMap.put(SourceFieldMapper.NAME, true);
@@ -1392,12 +1565,16 @@ public class ElasticSecondaryIndex implements Index {
                 this.fieldsToIdx.put(fields[i], i);
 
             this.staticColumns = (baseCfs.metadata.hasStaticColumns()) ? new BitSet(fields.length) : null;
+            this.columnsToIdx = new IdentityHashMap<>(fields.length);
+            final ColumnDefinition[] columnDefs = new ColumnDefinition[fields.length];
             ColumnFilter.Builder cfb = ColumnFilter.selectionBuilder();
             for (int i = 0; i < fields.length; i++) {
                 ColumnIdentifier colId = new ColumnIdentifier(fields[i], true);
                 ColumnDefinition colDef = baseCfs.metadata.getColumnDefinition(colId);
                 if (colDef != null) {
                     // colDef may be null when mapping an object with no sub-field (and no underlying column, see #144)
+                    columnDefs[i] = colDef;
+                    this.columnsToIdx.put(colDef, i);
                     if (staticColumns != null)
                         this.staticColumns.set(i, colDef.isStatic());
                     if (colDef.isRegular() || colDef.isStatic())
@@ -1417,11 +1594,12 @@ public class ElasticSecondaryIndex implements Index {
                 this.partitionFunctions = null;
             }
 
-            // build InderInfo.mappers arrays.
+            // build InderInfo.mappers arrays, shared between indices having the same mappers (see VirtualIndexMappings).
+            List<Mapper[]> mappersArrays = new ArrayList<>();
             for (ImmutableIndexInfo indexInfo : this.indices) {
                 indexInfo.mappers = new Mapper[fields.length];
+                DocumentMapper docMapper = indexInfo.indexService.mapperService().documentMapper(typeName);
                 for (int i = 0; i < fields.length; i++) {
-                    DocumentMapper docMapper = indexInfo.indexService.mapperService().documentMapper(typeName);
                     Mapper mapper = fields[i].startsWith(ParentFieldMapper.NAME) ?
                         docMapper.parentFieldMapper() : docMapper.mappers().smartNameFieldMapper(fields[i]); // workaround for _parent#<join_type>
                     if (mapper != null) {
@@ -1433,7 +1611,83 @@ public class ElasticSecondaryIndex implements Index {
                         indexInfo.mappers[i] = objectMapper;
                     }
                 }
+                for (Mapper[] mappers : mappersArrays) {
+                    if (Arrays.equals(mappers, indexInfo.mappers)) {
+                        indexInfo.mappers = mappers;
+                        break;
+                    }
+                }
+                if (!mappersArrays.contains(indexInfo.mappers))
+                    mappersArrays.add(indexInfo.mappers);
+            }
+
+            // resolve type-specialized codecs for regular columns, only usable when all indices have one.
+            BitSet _rawFields = new BitSet(fields.length);
+            for (int i = 0; i < fields.length; i++)
+                _rawFields.set(i, columnDefs[i] != null && columnDefs[i].isRegular() && !columnDefs[i].type.isMultiCell());
+            if (partitionFunctions != null) {
+                for (ImmutablePartitionFunction func : partitionFunctions.values())
+                    for (int idx : func.fieldsIdx)
+                        if (idx >= 0)
+                            _rawFields.clear(idx);
+            }
+            for (ImmutableIndexInfo indexInfo : this.indices) {
+                DocumentMapper docMapper = indexInfo.indexService.mapperService().documentMapper(typeName);
+                if (docMapper.parentFieldMapper().active())
+                    _rawFields.clear();
+                CellFieldCodec[] codecs = new CellFieldCodec[fields.length];
+                for (int i = _rawFields.nextSetBit(0); i >= 0; i = _rawFields.nextSetBit(i + 1)) {
+                    codecs[i] = CellFieldCodec.of(columnDefs[i].type, indexInfo.mappers[i], docMapper);
+                    if (codecs[i] == null)
+                        _rawFields.clear(i);
+                }
+                indexInfo.codecs = codecs;
+            }
+            this.rawFields = _rawFields.isEmpty() ? null : _rawFields;
+            if (this.rawFields == null) {
+                for (ImmutableIndexInfo indexInfo : this.indices)
+                    indexInfo.codecs = null;
+            }
+
+            // resolve doc values only fields updatable in place, only when all indices have index_doc_values_update=true.
+            boolean _docValuesUpdate = partitionFunctions == null && !indexExpiration;
+            for (ImmutableIndexInfo indexInfo : this.indices)
+                _docValuesUpdate = _docValuesUpdate && indexInfo.doc_values_update;
+            // the numeric doc values of a field only depend on the mapping of its index, whatever the other indices.
+            BitSet _docValuesUpdateFields = new BitSet(fields.length);
+            for (int i = 0; i < fields.length; i++)
+                _docValuesUpdateFields.set(i, columnDefs[i] != null && columnDefs[i].isRegular() && !columnDefs[i].type.isMultiCell());
+            for (ImmutableIndexInfo indexInfo : this.indices) {
+                if (!indexInfo.doc_values_update)
+                    continue;
+                DocumentMapper docMapper = indexInfo.indexService.mapperService().documentMapper(typeName);
+                CellFieldCodec[] docValuesCodecs = new CellFieldCodec[fields.length];
+                for (int i = 0; i < fields.length; i++) {
+                    if (indexInfo.mappers[i] == null || columnDefs[i] == null || !columnDefs[i].isRegular() || columnDefs[i].type.isMultiCell())
+                        continue;
+                    CellFieldCodec codec = CellFieldCodec.of(columnDefs[i].type, indexInfo.mappers[i], docMapper);
+                    if (codec != null && codec.isDocValuesOnly())
+                        docValuesCodecs[i] = codec;
+                    else
+                        _docValuesUpdateFields.clear(i);
+                }
+                indexInfo.docValuesCodecs = docValuesCodecs;
+            }
+            this.docValuesUpdateFields = (_docValuesUpdate && !_docValuesUpdateFields.isEmpty()) ? _docValuesUpdateFields : null;
+
+            // detect indices building the same lucene documents, to build them once per row.
+            boolean _sharedDocuments = false;
+            for (int i = 0; i < this.indices.length; i++) {
+                this.indices[i].docGroup = i;
+                for (int k = 0; k < i; k++) {
+                    if (this.indices[k].docGroup == k && this.indices[k].buildsSameDocumentsAs(this.indices[i])) {
+                        this.indices[i].docGroup = k;
+                        _sharedDocuments = true;
+                        break;
+                    }
+                }
             }
+            this.sharedDocuments = _sharedDocuments;
 
             if (logger.isDebugEnabled()) {
                 logger.debug("New ImmutableMappingInfo indices={}, fields={} staticColumns={} columnFilter=[{}] ",
@@ -1441,6 +1695,15 @@ public class ElasticSecondaryIndex implements Index {
             }
         }
 
+        /**
+         * @return the field position of a cell column, or -1 if not indexed.
+         */
+        int columnIdx(ColumnDefinition cd) {
+            Integer idx = columnsToIdx.get(cd);
+            // column definitions are rebuilt on schema changes, fallback to the column name.
+            return (idx != null) ? idx : fieldsToIdx.getOrDefault(cd.name.toString(), -1);
+        }
+
         public long startedShardCount() {
             return indices == null ? 0 : Arrays.stream(indices).filter(i -> { return i.shard() != null; }).count();
         }
@@ -1512,11 +1775,106 @@ public class ElasticSecondaryIndex implements Index {
             return new DeleteByQuery(query, null, null, null, parentFilter, Operation.Origin.PRIMARY, System.currentTimeMillis(), typeName);
         }
 
+        /**
+         * Remove the documents expired at nowInSec with one points range delete-by-query per index having index_expiration.
+         * Fully expired segments are dropped by the IndexWriter when applying the deletes.
+         */
+        public void expireDocuments(int nowInSec) {
+            if (!indexExpiration)
+                return;
+            final Query query = IntPoint.newRangeQuery(EXPIRATION_FIELD, Integer.MIN_VALUE, nowInSec);
+            for (ImmutableIndexInfo indexInfo : indices) {
+                if (!indexInfo.index_expiration)
+                    continue;
+                final IndexShard shard = indexInfo.shard();
+                if (shard == null)
+                    continue;
+                try {
+                    // avoid a delete-by-query and the following refresh when nothing expired.
+                    try (Engine.Searcher searcher = shard.acquireSearcher("expiration")) {
+                        if (searcher.searcher().count(query) == 0)
+                            continue;
+                    }
+                    if (logger.isDebugEnabled())
+                        logger.debug("expire documents from ks.cf={}.{} in elasticsearch index=[{}] nowInSec={}", baseCfs.metadata.ksName, baseCfs.name, indexInfo.name, nowInSec);
+                    shard.getEngine().delete(buildDeleteByQuery(indexInfo.indexService, query));
+                } catch (Exception e) {
+                    logger.error("expiration of index=[" + indexInfo.name + "] failed", e);
+                }
+            }
+        }
+
+        /**
+         * Remove the documents of the token ranges no longer owned by this node with one delete-by-query per index,
+         * then expunge the deleted documents, rather than deleting rows one by one during cleanup compactions.
+         * The ring version is recorded when all indices are cleaned, so that a failed cleanup is retried by the next cleanup transaction.
+         */
+        void cleanupTokenRanges(final Collection<Range<Token>> localRanges, final long ringVersion) {
+            if (indices.length == 0) {
+                cleanupDone(ringVersion, true);
+                return;
+            }
+
+            // documents having a token (nested documents are removed with their parent).
+            final Query tokenQuery = NumberFieldMapper.NumberType.LONG.rangeQuery(TokenFieldMapper.NAME, null, null, true, true, true);
+            final Query query;
+            if (localRanges.isEmpty()) {
+                // the node does not own any token range anymore, remove all documents.
+                query = tokenQuery;
+            } else {
+                final Query owned = tokenRangesQuery(localRanges);
+                if (owned == null) {
+                    // the node owns the whole ring, nothing to remove.
+                    cleanupDone(ringVersion, true);
+                    return;
+                }
+                query = new BooleanQuery.Builder()
+                    .add(tokenQuery, Occur.FILTER)
+                    .add(owned, Occur.MUST_NOT)
+                    .build();
+            }
+
+            final CountDown countDown = new CountDown(indices.length);
+            final AtomicBoolean success = new AtomicBoolean(true);
+            for (ImmutableIndexInfo indexInfo : indices) {
+                final IndexShard shard = indexInfo.shard();
+                if (shard == null) {
+                    logger.warn("cleanup of index=[{}] skipped, shard not available", indexInfo.name);
+                    success.set(false);
+                    if (countDown.countDown())
+                        cleanupDone(ringVersion, success.get());
+                    continue;
+                }
+                final DeleteByQuery deleteByQuery = buildDeleteByQuery(indexInfo.indexService, query);
+                try {
+                    shard.getThreadPool().executor(ThreadPool.Names.FORCE_MERGE).execute(() -> {
+                        try {
+                            logger.info("cleanup index=[{}] from ks.cf={}.{} for token ranges not in {}", indexInfo.name, baseCfs.metadata.ksName, baseCfs.name, localRanges);
+                            shard.getEngine().delete(deleteByQuery);
+                            shard.getEngine().forceMerge(true, ForceMergeRequest.Defaults.MAX_NUM_SEGMENTS, true, false, false);
+                        } catch (Exception e) {
+                            logger.error("cleanup of index=[" + indexInfo.name + "] failed", e);
+                            success.set(false);
+                        } finally {
+                            if (countDown.countDown())
+                                cleanupDone(ringVersion, success.get());
+                        }
+                    });
+                } catch (Exception e) {
+                    logger.error("cleanup of index=[" + indexInfo.name + "] failed", e);
+                    success.set(false);
+                    if (countDown.countDown())
+                        cleanupDone(ringVersion, success.get());
+                }
+            }
+        }
+
         class WideRowcumentIndexer extends RowcumentIndexer {
             final NavigableSet<Clustering> clusterings = new java.util.TreeSet<Clustering>(baseCfs.metadata.comparator);
             final Map<Clustering, WideRowcument> rowcuments = new TreeMap<Clustering, WideRowcument>(baseCfs.metadata.comparator);
             List<RangeTombstone> rangeTombstones = null;
             Row inStaticRow, outStaticRow;
+            boolean staticRowReadBack = false;
 
             public WideRowcumentIndexer(final DecoratedKey key,
                                         final PartitionColumns columns,
@@ -1559,7 +1917,7 @@ public class ElasticSecondaryIndex implements Index {
                     Row row = (inRow == null) ? outRow : inRow;
                     if (!row.isStatic()) {
                         clusterings.add(row.clustering());
-                        if (outRow != null || ImmutableMappingInfo.this.indexInsertOnly)
+                        if (outRow != null || ImmutableMappingInfo.this.indexInsertOnly || bulk)
                             rowcuments.put(row.clustering(), new WideRowcument(inRow, outRow));
                     }
                 } catch (Throwable t) {
@@ -1572,11 +1930,13 @@ public class ElasticSecondaryIndex implements Index {
                 if (!rowIt.staticRow().isEmpty()) {
                     this.inStaticRow = rowIt.staticRow();
                     this.outStaticRow = null;
+                    this.staticRowReadBack = true;
                 }
                 for (; rowIt.hasNext(); ) {
                     try {
                         Row row = rowIt.next();
                         WideRowcument rowcument = new WideRowcument(row, null);
+                        rowcument.readBack(row);
                         if (indexSomeStaticColumnsOnWideRow && inStaticRow != null)
                             rowcument.readCellValues(inStaticRow); // add static fields
                         rowcument.write(); // index live doc or remove tombestone
@@ -1587,6 +1947,74 @@ public class ElasticSecondaryIndex implements Index {
                 }
             }
 
+            /**
+             * @return the document id of a slice covering exactly one row, or null.
+             */
+            String singleRowId(Slice slice) {
+                ClusteringBound start = slice.start();
+                ClusteringBound end = slice.end();
+                int clusteringSize = baseCfs.metadata.clusteringColumns().size();
+                if (start.size() != clusteringSize || end.size() != clusteringSize || !start.isInclusive() || !end.isInclusive())
+                    return null;
+                for (int i = 0; i < clusteringSize; i++)
+                    if (baseCfs.metadata.comparator.compareComponent(i, start.get(i), end.get(i)) != 0)
+                        return null;
+
+                Object[] rowPkCols = Arrays.copyOf(pkCols, pkCols.length);
+                int partitionKeyLen = baseCfs.metadata.partitionKeyColumns().size();
+                int i = 0;
+                for (ColumnDefinition ccd : baseCfs.metadata.clusteringColumns()) {
+                    rowPkCols[partitionKeyLen + i] = Serializer.deserialize(ccd.type, start.get(i));
+                    i++;
+                }
+                return Serializer.stringify(rowPkCols, rowPkCols.length);
+            }
+
+            void deleteRangeTombstones(ImmutableMappingInfo.ImmutableIndexInfo indexInfo, List<String> rowIds, List<RangeTombstone> sliceTombstones) throws IOException {
+                if (!rowIds.isEmpty()) {
+                    final IndexShard indexShard = indexInfo.shard();
+                    if (indexShard != null) {
+                        if (!indexInfo.updated)
+                            indexInfo.updated = true;
+                        for (String rowId : rowIds) {
+                            Term termUid = termUid(indexShard.indexService(), rowId);
+                            if (logger.isDebugEnabled())
+                                logger.debug("deleting document from index.type={}.{} id={} termUid={}", indexInfo.name, typeName, rowId, termUid.text());
+                            indexShard.delete(indexShard.getEngine(), new Engine.Delete(typeName, rowId, termUid));
+                        }
+                    }
+                }
+                if (!sliceTombstones.isEmpty())
+                    indexInfo.deleteByQuery(pkCols, sliceTombstones);
+            }
+
+            /**
+             * Remove the range tombstones of the update, single row slices by id, others by one delete-by-query per index.
+             */
+            void deleteRangeTombstones() {
+                try {
+                    List<String> rowIds = new ArrayList<>();
+                    List<RangeTombstone> sliceTombstones = new ArrayList<>(rangeTombstones.size());
+                    for (RangeTombstone tombstone : rangeTombstones) {
+                        String rowId = singleRowId(tombstone.deletedSlice());
+                        if (rowId != null)
+                            rowIds.add(rowId);
+                        else
+                            sliceTombstones.add(tombstone);
+                    }
+                    BitSet targets = targetIndices(pkCols);
+                    if (targets == null) {
+                        for (ImmutableMappingInfo.ImmutableIndexInfo indexInfo : indices)
+                            deleteRangeTombstones(indexInfo, rowIds, sliceTombstones);
+                    } else {
+                        for (int i = targets.nextSetBit(0); i >= 0 && i < indices.length; i = targets.nextSetBit(i + 1))
+                            deleteRangeTombstones(indices[i], rowIds, sliceTombstones);
+                    }
+                } catch (Throwable t) {
+                    logger.error("Unexpected error", t);
+                }
+            }
+
             /**
              * read-before-write is mandatory to filter out-of-time-order inserted rows.
              * We also need to delete rows removed from memtable, not found in the read-before-write to keep ES index sync.
@@ -1597,30 +2025,23 @@ public class ElasticSecondaryIndex implements Index {
                     logger.trace("indexer={} inStaticRow={} outStaticRow={} clustering={} rangeTombstones={}",
                         this.hashCode(), inStaticRow, outStaticRow, this.clusterings, this.rangeTombstones);
 
+                if (updateDocValues())
+                    return;
+
                 // A partition delete before an insert indexed after that insert could trigger a wrong delete, so we need to read-before-write when indexInsertOnly=false, ...
-                if (delTime != null && delTime.deletes(this.nowInSec)) {
-                    deletePartition();
+                final boolean partitionDeleted = delTime != null && delTime.deletes(this.nowInSec);
+                if (partitionDeleted) {
+                    // range tombstones are covered by the partition delete, batched with them.
+                    deletePartition(rangeTombstones != null);
                     if (ImmutableMappingInfo.this.indexInsertOnly)
                         return;
                 }
 
                 if (rangeTombstones != null) {
-                    for (RangeTombstone tombstone : rangeTombstones) {
-                        try {
-                            BitSet targets = targetIndices(pkCols);
-                            if (targets == null) {
-                                for (ImmutableMappingInfo.ImmutableIndexInfo indexInfo : indices)
-                                    indexInfo.deleteByQuery(pkCols, tombstone);
-                            } else {
-                                for (int i = targets.nextSetBit(0); i >= 0 && i < indices.length; i = targets.nextSetBit(i + 1))
-                                    indices[i].deleteByQuery(pkCols, tombstone);
-                            }
-                        } catch (Throwable t) {
-                            logger.error("Unexpected error", t);
-                        }
-                    }
+                    if (!partitionDeleted)
+                        deleteRangeTombstones();
                     // read tombstone ranges in case of delete played out-of-time-order (if time matters)
-                    if (!ImmutableMappingInfo.this.indexInsertOnly) {
+                    if (!ImmutableMappingInfo.this.indexInsertOnly && !bulk) {
                         Slices.Builder slices = new Slices.Builder(baseCfs.metadata.comparator, rangeTombstones.size());
                         for (RangeTombstone tombstone : rangeTombstones) {
                             if (!tombstone.deletedSlice().isEmpty(baseCfs.metadata.comparator)) {
@@ -1635,7 +2056,7 @@ public class ElasticSecondaryIndex implements Index {
                     }
                 }
 
-                if (ImmutableMappingInfo.this.indexInsertOnly) {
+                if (ImmutableMappingInfo.this.indexInsertOnly || bulk) {
                     for (WideRowcument rowcument : rowcuments.values()) {
                         if (indexSomeStaticColumnsOnWideRow && inStaticRow != null) {
                             try {
@@ -1669,6 +2090,8 @@ public class ElasticSecondaryIndex implements Index {
                         // index live static document to ES
                         WideRowcument rowcument = new WideRowcument(inStaticRow, null);
                         rowcument.isStatic = true;
+                        if (staticRowReadBack)
+                            rowcument.readBack(inStaticRow);
                         rowcument.index();
                     } catch (IOException e) {
                         logger.error("Unexpected error", e);
@@ -1704,7 +2127,12 @@ public class ElasticSecondaryIndex implements Index {
             }
 
             @Override
-            public void deletePartition(ImmutableMappingInfo.ImmutableIndexInfo indexInfo, IndexShard indexShard) throws IOException {
+            boolean hasDeletions() {
+                return super.hasDeletions() || rangeTombstones != null;
+            }
+
+            @Override
+            public void deletePartition(ImmutableMappingInfo.ImmutableIndexInfo indexInfo, IndexShard indexShard, boolean batched) throws IOException {
                 if (logger.isTraceEnabled())
                     logger.trace("deleting documents where _routing={} from index.type={}.{}", this.partitionKey, indexShard.shardId().getIndexName(), typeName);
 
@@ -1717,22 +2145,11 @@ public class ElasticSecondaryIndex implements Index {
                 } else {
                     termQuery = new TermQuery(new Term(RoutingFieldMapper.NAME, this.partitionKey));
                 }
-                DeleteByQuery deleteByQuery = buildDeleteByQuery(indexShard.indexService(), termQuery);
+                DeleteByQuery deleteByQuery = buildDeleteByQuery(indexShard.indexService(), termQuery).deferredRefresh(batched);
                 indexShard.getEngine().delete(deleteByQuery);
             }
         }
 
-        class CleanupWideRowcumentIndexer extends WideRowcumentIndexer {
-            public CleanupWideRowcumentIndexer(DecoratedKey key, PartitionColumns columns, int nowInSec, Group opGroup, Type transactionType) {
-                super(key, columns, nowInSec, opGroup, transactionType);
-            }
-
-            @Override
-            public void update() {
-                for (WideRowcument rowcument : rowcuments.values())
-                    rowcument.delete();
-            }
-        }
 
         class SkinnyRowcumentIndexer extends RowcumentIndexer {
             SkinnyRowcument rowcument;
@@ -1754,7 +2171,7 @@ public class ElasticSecondaryIndex implements Index {
             @Override
             public void collect(Row inRow, Row outRow) {
                 try {
-                    if (outRow != null || ImmutableMappingInfo.this.indexInsertOnly)
+                    if (outRow != null || ImmutableMappingInfo.this.indexInsertOnly || bulk)
                         this.rowcument = new SkinnyRowcument(inRow, outRow);
                 } catch (Throwable t) {
                     logger.error("Unexpected error", t);
@@ -1770,6 +2187,9 @@ public class ElasticSecondaryIndex implements Index {
                 if (logger.isTraceEnabled())
                     logger.trace("indexer={} key={}", this.hashCode(), key);
 
+                if (updateDocValues())
+                    return;
+
                 // A partition delete before an insert indexed after that insert could trigger a wrong delete, so we need to read-before-write when indexInsertOnly=false, ...
                 if (delTime != null && delTime.deletes(this.nowInSec)) {
                     deletePartition();
@@ -1777,7 +2197,7 @@ public class ElasticSecondaryIndex implements Index {
                         return;
                 }
 
-                if (ImmutableMappingInfo.this.indexInsertOnly) {
+                if (ImmutableMappingInfo.this.indexInsertOnly || bulk) {
                     if (rowcument != null)
                         rowcument.write();
                 } else {
@@ -1785,7 +2205,9 @@ public class ElasticSecondaryIndex implements Index {
                     RowIterator rowIt = read(command);
                     if (rowIt.hasNext()) {
                         try {
-                            rowcument = new SkinnyRowcument(rowIt.next(), null);
+                            Row row = rowIt.next();
+                            rowcument = new SkinnyRowcument(row, null);
+                            rowcument.readBack(row);
                             rowcument.write(); // update live row in ES.
                         } catch (IOException e) {
                             logger.error("Unexpected error", e);
@@ -1799,7 +2221,7 @@ public class ElasticSecondaryIndex implements Index {
             }
 
             @Override
-            public void deletePartition(ImmutableMappingInfo.ImmutableIndexInfo indexInfo, IndexShard indexShard) throws IOException {
+            public void deletePartition(ImmutableMappingInfo.ImmutableIndexInfo indexInfo, IndexShard indexShard, boolean batched) throws IOException {
                 Term termUid = termUid(indexShard.indexService(), this.partitionKey);
                 if (logger.isDebugEnabled())
                     logger.debug("indexer={} deleting document from index.type={}.{} id={} termUid={}",
@@ -1809,17 +2231,6 @@ public class ElasticSecondaryIndex implements Index {
             }
         }
 
-        class CleanupSkinnyRowcumentIndexer extends SkinnyRowcumentIndexer {
-            public CleanupSkinnyRowcumentIndexer(DecoratedKey key, PartitionColumns columns, int nowInSec, Group opGroup, Type transactionType) {
-                super(key, columns, nowInSec, opGroup, transactionType);
-            }
-
-            @Override
-            public void update() {
-                if (rowcument != null)
-                    rowcument.delete();
-            }
-        }
 
         abstract class RowcumentIndexer implements Index.Indexer {
             final DecoratedKey key;
@@ -1828,8 +2239,13 @@ public class ElasticSecondaryIndex implements Index {
             final OpOrder.Group opGroup;
             final Object[] pkCols = new Object[baseCfs.metadata.partitionKeyColumns().size() + baseCfs.metadata.clusteringColumns().size()];
             final String partitionKey;
+            final boolean bulk = BULK_INDEXING.get(); // merged rows read by the repair indexing
             BitSet targets = null;
             DeletionTime delTime = null;
+            // rows only updating doc values only fields, updated in place without read-before-write when possible.
+            boolean docValuesUpdatable = docValuesUpdateFields != null && !indexInsertOnly && !bulk;
+            List<Row> docValuesRows = null;
+            Map<ImmutableIndexInfo, Engine.Searcher> searchers = null; // acquired by the first unchanged row check of an index, released on finish.
 
             public RowcumentIndexer(final DecoratedKey key,
                                     final PartitionColumns columns,
@@ -1855,9 +2271,23 @@ public class ElasticSecondaryIndex implements Index {
                 this.partitionKey = Serializer.stringify(pkCols, i);
             }
 
+            /**
+             * @return a searcher of the index shard shared by the rows of the partition.
+             */
+            Engine.Searcher searcher(ImmutableIndexInfo indexInfo, IndexShard indexShard) {
+                if (searchers == null)
+                    searchers = new IdentityHashMap<>(indices.length);
+                Engine.Searcher searcher = searchers.get(indexInfo);
+                if (searcher == null) {
+                    searcher = indexShard.acquireSearcher("compaction");
+                    searchers.put(indexInfo, searcher);
+                }
+                return searcher;
+            }
+
             // return a per partition object for read-before-write locking
             protected Object getLock() {
-                return readBeforeWriteLocks[Math.abs(key.hashCode() % readBeforeWriteLocks.length)];
+                return readBeforeWriteLock(key);
             }
 
             /**
@@ -1880,6 +2310,7 @@ public class ElasticSecondaryIndex implements Index {
             public void insertRow(Row row) {
                 if (logger.isTraceEnabled())
                     logger.trace("indexer={} Insert row {}: {}", this.hashCode(), this.transactionType, row);
+                collectDocValues(row);
                 if (row.hasLiveData(nowInSec, baseCfs.metadata.enforceStrictLiveness()))
                     collect(row, null);
                 else
@@ -1909,6 +2340,7 @@ public class ElasticSecondaryIndex implements Index {
             public void updateRow(Row oldRowData, Row newRowData) {
                 if (logger.isTraceEnabled())
                     logger.trace("indexer={} Update row {}: {} to {}", this.hashCode(), this.transactionType, oldRowData, newRowData);
+                collectDocValues(newRowData);
                 collect(newRowData, oldRowData);
             }
 
@@ -1932,6 +2364,7 @@ public class ElasticSecondaryIndex implements Index {
             public void removeRow(Row row) {
                 if (logger.isTraceEnabled())
                     logger.trace("indexer={} Remove row {}: {}", this.hashCode(), this.transactionType, row);
+                docValuesUpdatable = false;
                 collect(null, row);
             }
 
@@ -1984,6 +2417,64 @@ public class ElasticSecondaryIndex implements Index {
                     }
                 } catch (Throwable t) {
                     logger.error("Unexpected error", t);
+                } finally {
+                    if (searchers != null)
+                        Releasables.close(searchers.values());
+                }
+            }
+
+            /**
+             * @return true if a partition or range deletion was collected.
+             */
+            boolean hasDeletions() {
+                return delTime != null;
+            }
+
+            /**
+             * Collect a row of an update only writing live non-expiring cells of doc values only fields.
+             */
+            void collectDocValues(Row row) {
+                if (!docValuesUpdatable)
+                    return;
+                if (transactionType != IndexTransaction.Type.UPDATE || row.isStatic()
+                        || !row.primaryKeyLivenessInfo().isEmpty() || !row.deletion().isLive()) {
+                    docValuesUpdatable = false;
+                    return;
+                }
+                boolean indexed = false;
+                for (Cell cell : row.cells()) {
+                    int idx = columnIdx(cell.column());
+                    if (idx == -1)
+                        continue;
+                    if (!docValuesUpdateFields.get(idx) || !cell.isLive(nowInSec) || cell.isExpiring() || !cell.value().hasRemaining()) {
+                        docValuesUpdatable = false;
+                        return;
+                    }
+                    indexed = true;
+                }
+                if (indexed) {
+                    if (docValuesRows == null)
+                        docValuesRows = new ArrayList<>(1);
+                    docValuesRows.add(row);
+                }
+            }
+
+            /**
+             * Update in place the doc values of the collected rows, without read-before-write.
+             * @return false if some documents must be re-indexed, all collected rows are then re-indexed.
+             */
+            boolean updateDocValues() {
+                if (!docValuesUpdatable || docValuesRows == null || hasDeletions())
+                    return false;
+                try {
+                    for (Row row : docValuesRows) {
+                        if (!new Rowcument(row, null).updateDocValues())
+                            return false;
+                    }
+                    return true;
+                } catch (Throwable t) {
+                    logger.error("Unexpected error", t);
+                    return false;
                 }
             }
 
@@ -2001,6 +2492,14 @@ public class ElasticSecondaryIndex implements Index {
             public abstract void update();
 
             public void deletePartition() {
+                deletePartition(false);
+            }
+
+            /**
+             * Delete the documents of the partition in all indices.
+             * @param batched true when the partition delete replaces the range tombstone deletes of the update, its refresh is then coalesced.
+             */
+            public void deletePartition(boolean batched) {
                 mappingInfoLock.readLock().lock();
                 try {
                     for (ImmutableMappingInfo.ImmutableIndexInfo indexInfo : indices) {
@@ -2009,7 +2508,7 @@ public class ElasticSecondaryIndex implements Index {
                             if (!indexInfo.updated)
                                 indexInfo.updated = true;
                             try {
-                                deletePartition(indexInfo, indexShard);
+                                deletePartition(indexInfo, indexShard, batched);
                             } catch (EngineException e) {
                                 logger.error("Document deletion error", e);
                             }
@@ -2025,7 +2524,7 @@ public class ElasticSecondaryIndex implements Index {
                 }
             }
 
-            public abstract void deletePartition(ImmutableMappingInfo.ImmutableIndexInfo indexInfo, IndexShard indexShard) throws IOException;
+            public abstract void deletePartition(ImmutableMappingInfo.ImmutableIndexInfo indexInfo, IndexShard indexShard, boolean batched) throws IOException;
 
             public RowIterator read(SinglePartitionReadCommand command) {
                 try (ReadExecutionController control = command.executionController()) {
@@ -2054,6 +2553,10 @@ public class ElasticSecondaryIndex implements Index {
                 boolean hasLiveData = false;
                 boolean hasRowMarker = false;
                 boolean isStatic;
+                long rowTimestamp = LivenessInfo.NO_TIMESTAMP;
+                long minCellTimestamp = Long.MAX_VALUE;   // write timestamps of the live indexed cells
+                long maxCellTimestamp = Long.MIN_VALUE;
+                int expirationTime = Cell.NO_DELETION_TIME; // when the row read back from cassandra expires, if entirely written with a TTL
 
                 /**
                  *
@@ -2065,6 +2568,7 @@ public class ElasticSecondaryIndex implements Index {
                     if (inRow != null) {
                         this.inRowDataSize = inRow.dataSize();
                         this.hasRowMarker = inRow.primaryKeyLivenessInfo().isLive(nowInSec);
+                        this.rowTimestamp = inRow.primaryKeyLivenessInfo().timestamp();
                         this.hasLiveData = inRow.hasLiveData(nowInSec, baseCfs.metadata.enforceStrictLiveness());
                     }
                     Row row = inRow != null ? inRow : outRow;
@@ -2098,6 +2602,113 @@ public class ElasticSecondaryIndex implements Index {
                     return hasLiveData;
                 }
 
+                /**
+                 * Set the expiration time of a row read back from cassandra. Inserted rows (insert-only and bulk indexing)
+                 * may only contain some of the cells and cannot tell when the whole row expires.
+                 */
+                void readBack(Row row) {
+                    if (indexExpiration)
+                        this.expirationTime = expirationTime(row);
+                }
+
+                /**
+                 * @return the time the row marker and all live cells expire, or Cell.NO_DELETION_TIME if some never expire.
+                 */
+                int expirationTime(Row row) {
+                    int expiration = Integer.MIN_VALUE;
+                    LivenessInfo liveness = row.primaryKeyLivenessInfo();
+                    if (liveness.isLive(nowInSec))
+                        expiration = liveness.isExpiring() ? liveness.localExpirationTime() : Cell.NO_DELETION_TIME;
+                    for (Cell cell : row.cells()) {
+                        if (expiration == Cell.NO_DELETION_TIME)
+                            break;
+                        if (cell.isLive(nowInSec))
+                            expiration = Math.max(expiration, cell.localDeletionTime());
+                    }
+                    return expiration == Integer.MIN_VALUE ? Cell.NO_DELETION_TIME : expiration;
+                }
+
+                /**
+                 * Add the expiration time to the root document, used to remove expired documents.
+                 */
+                void addExpiration(ImmutableIndexInfo indexInfo, ParsedDocument parsedDoc) {
+                    if (indexInfo.index_expiration && expirationTime != Cell.NO_DELETION_TIME) {
+                        parsedDoc.rootDoc().add(new IntPoint(EXPIRATION_FIELD, expirationTime));
+                        parsedDoc.rootDoc().add(new NumericDocValuesField(EXPIRATION_FIELD, expirationTime));
+                    }
+                }
+
+                /**
+                 * Add the row timestamp and first cell expiration to the root document, used to skip unchanged rows on compaction or repair,
+                 * and to order the in-place doc values updates.
+                 */
+                void addRowTimestamp(ImmutableIndexInfo indexInfo, ParsedDocument parsedDoc) {
+                    if (indexInfo.index_on_compaction || indexInfo.doc_values_update || clusterService.getRepairIndexingExecutor() != null) {
+                        parsedDoc.rootDoc().add(new NumericDocValuesField(ROW_TIMESTAMP_FIELD, Math.max(rowTimestamp, maxCellTimestamp)));
+                        if (docTtl != Integer.MAX_VALUE)
+                            parsedDoc.rootDoc().add(new NumericDocValuesField(ROW_EXPIRATION_FIELD, docTtl));
+                    }
+                }
+
+                /**
+                 * Update in place the doc values and the row timestamp of the document in all indices.
+                 * @return false if the document is not live, or written more recently than the cells.
+                 */
+                boolean updateDocValues() throws IOException {
+                    for (ImmutableIndexInfo indexInfo : indices) {
+                        if (indexInfo.index_static_only)
+                            continue;
+                        final IndexShard indexShard = indexInfo.shard();
+                        if (indexShard == null)
+                            return false;
+                        List<Field> fields = new ArrayList<>();
+                        for (int i = 0; i < values.length; i++) {
+                            if (values[i] != null && indexInfo.docValuesCodecs[i] != null)
+                                fields.add(new NumericDocValuesField(indexInfo.docValuesCodecs[i].name(), indexInfo.docValuesCodecs[i].docValue(values[i])));
+                        }
+                        fields.add(new NumericDocValuesField(ROW_TIMESTAMP_FIELD, maxCellTimestamp));
+                        if (!indexShard.getEngine().updateNumericDocValues(termUid(indexInfo.indexService, id), ROW_TIMESTAMP_FIELD, maxCellTimestamp, fields.toArray(new Field[fields.size()])))
+                            return false;
+                        if (!indexInfo.updated)
+                            indexInfo.updated = true;
+                    }
+                    return true;
+                }
+
+                /**
+                 * A compacted or repaired row is unchanged when the indexed document has the same row timestamp and no expired cell.
+                 * The searcher is acquired once for all the rows of the partition.
+                 */
+                boolean isUnchanged(ImmutableIndexInfo indexInfo) throws IOException {
+                    final IndexShard indexShard = indexInfo.shard();
+                    if (indexShard == null)
+                        return false;
+                    final Term uid = termUid(indexInfo.indexService, isStatic() ? partitionKey : id);
+                    for (LeafReaderContext ctx : searcher(indexInfo, indexShard).reader().leaves()) {
+                        Terms terms = ctx.reader().terms(uid.field());
+                        if (terms == null)
+                            continue;
+                        TermsEnum termsEnum = terms.iterator();
+                        if (!termsEnum.seekExact(uid.bytes()))
+                            continue;
+                        Bits liveDocs = ctx.reader().getLiveDocs();
+                        NumericDocValues timestamps = ctx.reader().getNumericDocValues(ROW_TIMESTAMP_FIELD);
+                        if (timestamps == null)
+                            continue;
+                        PostingsEnum postings = termsEnum.postings(null, PostingsEnum.NONE);
+                        for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+                            // nested documents share the uid of their root document, but have no timestamp.
+                            if ((liveDocs == null || liveDocs.get(doc)) && timestamps.advanceExact(doc)) {
+                                if (timestamps.longValue() != Math.max(rowTimestamp, maxCellTimestamp))
+                                    return false;
+                                NumericDocValues expirations = ctx.reader().getNumericDocValues(ROW_EXPIRATION_FIELD);
+                                return expirations == null || !expirations.advanceExact(doc) || expirations.longValue() > nowInSec;
+                            }
+                        }
+                    }
+                    return false;
+                }
+
                 public boolean isStatic() {
                     return isStatic;
                 }
@@ -2108,15 +2719,23 @@ public class ElasticSecondaryIndex implements Index {
                 }
 
                 public void readCellValue(Cell cell) throws IOException {
-                    final String cellNameString = cell.column().name.toString();
-                    int idx = fieldsToIdx.getOrDefault(cellNameString, -1);
+                    final ColumnDefinition cd = cell.column();
+                    int idx = columnIdx(cd);
                     if (idx == -1)
                         return; //ignore cell, not indexed.
 
                     if (cell.isLive(nowInSec)) {
                         docTtl = Math.min(cell.localDeletionTime(), docTtl);
+                        minCellTimestamp = Math.min(cell.timestamp(), minCellTimestamp);
+                        maxCellTimestamp = Math.max(cell.timestamp(), maxCellTimestamp);
+
+                        if (rawFields != null && rawFields.get(idx)) {
+                            // keep the serialized value, converted to lucene fields by the CellFieldCodec.
+                            values[idx] = cell.value().hasRemaining() ? cell.value() : null;
+                            return;
+                        }
 
-                        ColumnDefinition cd = cell.column();
+                        final String cellNameString = cd.name.toString();
                         if (cd.type.isCollection()) {
                             CollectionType ctype = (CollectionType) cd.type;
                             Object value = null;
@@ -2175,6 +2794,13 @@ public class ElasticSecondaryIndex implements Index {
                 }
 
                 public IndexingContext buildContext(ImmutableIndexInfo indexInfo, boolean staticColumnsOnly) throws IOException {
+                    return buildContext(indexInfo, staticColumnsOnly, null);
+                }
+
+                /**
+                 * @param parsedFields mapped fields parsed by the elasticsearch write path, or null to build fields from the cell values.
+                 */
+                public IndexingContext buildContext(ImmutableIndexInfo indexInfo, boolean staticColumnsOnly, List<IndexableField> parsedFields) throws IOException {
                     IndexingContext context = ElasticSecondaryIndex.this.perThreadContext.get();
                     Uid uid = new Uid(typeName, (staticColumnsOnly) ? partitionKey : id);
                     context.reset(indexInfo, uid);
@@ -2200,10 +2826,20 @@ public class ElasticSecondaryIndex implements Index {
                     }
 
                     // add all mapped fields to the current context.
-                    for (int i = 0; i < values.length; i++) {
+                    if (parsedFields != null) {
+                        for (IndexableField field : parsedFields)
+                            context.doc().add(field);
+                    } else for (int i = 0; i < values.length; i++) {
                         if (indexInfo.mappers[i] != null && (indexInfo.index_static_columns || indexInfo.index_static_document || !indexInfo.isStaticField(i)))
                             try {
-                                ElasticSecondaryIndex.this.addField(context, indexInfo, indexInfo.mappers[i], values[i]);
+                                if (indexInfo.docValuesCodecs != null && indexInfo.docValuesCodecs[i] != null) {
+                                    // single-valued numeric doc values, updatable in place.
+                                    if (values[i] != null)
+                                        context.doc().add(new NumericDocValuesField(indexInfo.docValuesCodecs[i].name(), indexInfo.docValuesCodecs[i].docValue(values[i])));
+                                } else if (indexInfo.codecs != null && indexInfo.codecs[i] != null && values[i] instanceof ByteBuffer)
+                                    indexInfo.codecs[i].createFields(context.doc(), (ByteBuffer) values[i]);
+                                else
+                                    ElasticSecondaryIndex.this.addField(context, indexInfo, indexInfo.mappers[i], values[i]);
                             } catch (IOException e) {
                                 logger.error("error", e);
                             }
@@ -2270,18 +2906,34 @@ public class ElasticSecondaryIndex implements Index {
                     long ttl = (this.docTtl < Integer.MAX_VALUE) ? this.docTtl : 0;
 
                     targets = ImmutableMappingInfo.this.targetIndices(values);
+                    // documents built for the first index of a docGroup, reused by the other indices of the group.
+                    final ParsedDocument[] parsedDocs = sharedDocuments ? new ParsedDocument[indices.length] : null;
+                    final ParsedDocumentHandoff.Entry handoff = takeHandoff();
                     if (targets == null) {
                         // index for associated indices
-                        for (ImmutableIndexInfo indexInfo : indices)
-                            index(indexInfo, startTime, ttl);
+                        for (int i = 0; i < indices.length; i++)
+                            index(indices[i], startTime, ttl, parsedDocs, handoff);
                     } else {
                         // delete for matching target indices.
                         for (int i = targets.nextSetBit(0); i >= 0 && i < indices.length; i = targets.nextSetBit(i + 1))
-                            index(indices[i], startTime, ttl);
+                            index(indices[i], startTime, ttl, parsedDocs, handoff);
                     }
                 }
 
-                private void index(ImmutableIndexInfo indexInfo, long startTime, long ttl) {
+                /**
+                 * Fields parsed by the local elasticsearch write path can only be reused when all live indexed cells of the row
+                 * were written with the row marker at the handoff timestamp.
+                 */
+                private ParsedDocumentHandoff.Entry takeHandoff() {
+                    if (transactionType != IndexTransaction.Type.UPDATE || ParsedDocumentHandoff.instance.isEmpty()
+                            || isStatic() || rowTimestamp == LivenessInfo.NO_TIMESTAMP)
+                        return null;
+                    if (maxCellTimestamp != Long.MIN_VALUE && (minCellTimestamp != rowTimestamp || maxCellTimestamp != rowTimestamp))
+                        return null;
+                    return ParsedDocumentHandoff.instance.take(baseCfs.metadata.ksName, baseCfs.metadata.cfName, id, rowTimestamp);
+                }
+
+                private void index(ImmutableIndexInfo indexInfo, long startTime, long ttl, ParsedDocument[] parsedDocs, ParsedDocumentHandoff.Entry handoff) {
                     if (indexInfo.index_on_compaction || transactionType == IndexTransaction.Type.UPDATE) {
                         if (isStatic() && !indexInfo.index_static_document)
                             return; // ignore static document.
@@ -2289,6 +2941,17 @@ public class ElasticSecondaryIndex implements Index {
                             return; // ignore non-static document.
 
                         try {
+                            // skip rows indexed with the same write timestamp, unless deleted by a collected deletion not visible to searchers yet.
+                            if ((transactionType == IndexTransaction.Type.COMPACTION || (bulk && !hasDeletions())) && isUnchanged(indexInfo))
+                                return;
+
+                            if (parsedDocs != null && parsedDocs[indexInfo.docGroup] != null) {
+                                // same lucene documents already built for another index.
+                                reusedDocuments.inc();
+                                indexParsedDocument(indexInfo, indexInfo.indexService.mapperService().documentMapper(typeName), parsedDocs[indexInfo.docGroup], startTime, ttl);
+                                return;
+                            }
+
                             if (indexInfo.opaque_storage) {
                                 final DocumentMapper docMapper = indexInfo.indexService.mapperService().documentMapper(typeName);
                                 final ByteBuffer bb = (ByteBuffer) values[indexInfo.indexOf(SourceFieldMapper.NAME)];
@@ -2301,9 +2964,16 @@ public class ElasticSecondaryIndex implements Index {
                                     sourceToParse.routing(partitionKey);
 
                                 final ParsedDocument parsedDoc = docMapper.parse(sourceToParse);
+                                builtDocuments.inc();
+                                addExpiration(indexInfo, parsedDoc);
+                                addRowTimestamp(indexInfo, parsedDoc);
                                 indexParsedDocument(indexInfo, docMapper, parsedDoc, startTime, ttl);
                             } else {
-                                IndexingContext context = buildContext(indexInfo, isStatic());
+                                final List<IndexableField> parsedFields = (handoff != null && handoff.index.equals(indexInfo.name) && !indexInfo.doc_values_update
+                                        && handoff.docMapper == indexInfo.indexService.mapperService().documentMapper(typeName)) ? handoff.fields : null;
+                                IndexingContext context = buildContext(indexInfo, isStatic(), parsedFields);
+                                if (parsedFields != null)
+                                    ParsedDocumentHandoff.instance.onReuse();
                                 if (isStatic()) {
                                     for (Document doc : context.docs()) {
                                         if (doc instanceof IndexingContext.StaticDocument)
@@ -2319,12 +2989,17 @@ public class ElasticSecondaryIndex implements Index {
                                     context.type(),
                                     partitionKey,
                                     ((Long) key.getToken().getTokenValue()).longValue(),
-                                    context.docs(),
+                                    (parsedDocs == null) ? context.docs() : new ArrayList<>(context.docs()), // the per-thread context is reset by the next index
                                     context.source(), // source
                                     XContentType.JSON,
                                     (Mapping) null); // mappingUpdate
 
                                 parsedDoc.parent(context.parent());
+                                builtDocuments.inc();
+                                addExpiration(indexInfo, parsedDoc);
+                                addRowTimestamp(indexInfo, parsedDoc);
+                                if (parsedDocs != null)
+                                    parsedDocs[indexInfo.docGroup] = parsedDoc;
                                 indexParsedDocument(indexInfo, context.docMapper, parsedDoc, startTime, ttl);
                             }
                         } catch (IOException e) {
@@ -2345,6 +3020,8 @@ public class ElasticSecondaryIndex implements Index {
                     if (indexShard != null) {
                         if (!indexInfo.updated)
                             indexInfo.updated = true;
+                        if (indexInfo.asyncFlush != null)
+                            indexInfo.asyncFlush.addBytes(inRowDataSize);
 
                         final Engine.Index operation = new Engine.Index(
                             termUid(indexInfo.indexService, id),
@@ -2562,9 +3239,40 @@ public class ElasticSecondaryIndex implements Index {
      */
     public void onShardStarted(IndexShard indexShard)
     {
+        try {
+            if (AsyncFlush.checkPendingMarker(indexShard, baseCfs.keyspace.getName(), baseCfs.metadata.cfName)) {
+                logger.warn("index=[{}] was not committed after the last memtable flush, rebuilding secondary index {}.{}.{}",
+                    indexShard.shardId().getIndexName(), baseCfs.keyspace.getName(), baseCfs.metadata.cfName, indexMetadata.name);
+                SystemKeyspace.setIndexRemoved(baseCfs.keyspace.getName(), indexMetadata.name);
+                needBuild.set(true);
+            }
+        } catch (IOException e) {
+            logger.error("Failed to check the pending async flush of index=[" + indexShard.shardId().getIndexName() + "]", e);
+        }
+        try {
+            SegmentStreamingService.wipeSessions(indexShard);
+        } catch (IOException e) {
+            logger.warn("Failed to remove the segments copies left in index=[" + indexShard.shardId().getIndexName() + "]", e);
+        }
         startRebuildIfNeeded();
     }
 
+    /**
+     * Commit the pending async flush of the closing shard and forget it, a reopened or recreated index starting
+     * with a new one.
+     */
+    public void onShardClosing(IndexShard indexShard)
+    {
+        AsyncFlush asyncFlush = asyncFlushes.remove(indexShard.shardId().getIndexName());
+        if (asyncFlush != null) {
+            try {
+                asyncFlush.close(indexShard);
+            } catch (Exception e) {
+                logger.warn("Failed to commit the pending async flush of index=[" + indexShard.shardId().getIndexName() + "]", e);
+            }
+        }
+    }
+
     /**
      * Rebuild 2i index if needed.
      */
@@ -2589,6 +3297,229 @@ public class ElasticSecondaryIndex implements Index {
         return baseCfs.indexManager.isIndexBuilding(this.indexMetadata.name);
     }
 
+    /**
+     * When the sstables are streamed for a bootstrap or a rebuild, import the lucene segments of the streamed token ranges
+     * from source replicas rather than indexing the streamed sstables, falling back to the sstables indexing on failure.
+     * When the sstables are streamed by a repair, index their partitions in parallel batches.
+     */
+    @Override
+    public IndexBuildingSupport getBuildTaskSupport() {
+        return (cfs, indexes, sstables) -> {
+            if (indexes.size() == 1 && currentStream("Repair") != null) {
+                SecondaryIndexBuilder bulkBuilder = getBulkIndexBuilder(cfs, sstables);
+                if (bulkBuilder != null)
+                    return bulkBuilder;
+            }
+            final SecondaryIndexBuilder builder = INDEX_BUILDER_SUPPORT.getIndexBuildTask(cfs, indexes, sstables);
+            if (!STREAM_SEGMENTS || indexes.size() != 1)
+                return builder;
+            return new SecondaryIndexBuilder() {
+                @Override
+                public CompactionInfo getCompactionInfo() {
+                    return builder.getCompactionInfo();
+                }
+
+                @Override
+                public void build() {
+                    if (!importStreamedSegments())
+                        builder.build();
+                }
+            };
+        };
+    }
+
+    /**
+     * @return a builder indexing the partitions of the sstables in parallel batches, rows having the write timestamp of
+     * the indexed document being skipped, or null when the repair indexing threads are disabled.
+     */
+    public SecondaryIndexBuilder getBulkIndexBuilder(ColumnFamilyStore cfs, Collection<SSTableReader> sstables) {
+        ThreadPoolExecutor executor = clusterService.getRepairIndexingExecutor();
+        return executor == null ? null : new BulkIndexBuilder(cfs, sstables, executor);
+    }
+
+    /**
+     * @return the first current stream plan having one of the descriptions, or null.
+     */
+    private static StreamState currentStream(String... descriptions) {
+        for (CompositeData data : StreamManager.instance.getCurrentStreams()) {
+            StreamState state = StreamStateCompositeData.fromCompositeData(data);
+            for (String description : descriptions)
+                if (description.equals(state.description))
+                    return state;
+        }
+        return null;
+    }
+
+    /**
+     * Index the partitions of the sstables streamed by a repair in parallel batches of keys. Each partition is read once
+     * under its read-before-write lock and its merged rows are indexed without the read-before-write of the update path,
+     * rows having the write timestamp of the indexed document being skipped as most repaired rows are already indexed.
+     */
+    class BulkIndexBuilder extends SecondaryIndexBuilder {
+        private final ColumnFamilyStore cfs;
+        private final ReducingKeyIterator iter;
+        private final ThreadPoolExecutor executor;
+        private final UUID compactionId = UUIDGen.getTimeUUID();
+
+        BulkIndexBuilder(ColumnFamilyStore cfs, Collection<SSTableReader> sstables, ThreadPoolExecutor executor) {
+            this.cfs = cfs;
+            this.iter = new ReducingKeyIterator(sstables);
+            this.executor = executor;
+        }
+
+        @Override
+        public CompactionInfo getCompactionInfo() {
+            return new CompactionInfo(cfs.metadata, OperationType.INDEX_BUILD, iter.getBytesRead(), iter.getTotalBytes(), compactionId);
+        }
+
+        @Override
+        public void build() {
+            final int pageSize = cfs.indexManager.calculateIndexingPageSize();
+            final int maxPendingBatches = 2 * executor.getMaximumPoolSize();
+            final Semaphore pendingBatches = new Semaphore(maxPendingBatches);
+            final AtomicReference<Throwable> failure = new AtomicReference<>();
+            long start = System.currentTimeMillis();
+            try {
+                while (iter.hasNext() && failure.get() == null) {
+                    if (isStopRequested())
+                        throw new CompactionInterruptedException(getCompactionInfo());
+                    final List<DecoratedKey> keys = new ArrayList<>(REPAIR_INDEXING_BATCH_SIZE);
+                    while (iter.hasNext() && keys.size() < REPAIR_INDEXING_BATCH_SIZE)
+                        keys.add(iter.next());
+                    pendingBatches.acquireUninterruptibly();
+                    executor.execute(() -> {
+                        try {
+                            for (DecoratedKey key : keys)
+                                indexPartition(key, pageSize);
+                        } catch (Throwable t) {
+                            failure.compareAndSet(null, t);
+                        } finally {
+                            pendingBatches.release();
+                        }
+                    });
+                }
+            } finally {
+                pendingBatches.acquireUninterruptibly(maxPendingBatches);
+                FileUtils.closeQuietly(iter);
+            }
+            if (failure.get() != null)
+                throw new RuntimeException("Failed to index streamed sstables of " + cfs.metadata.ksName + "." + cfs.metadata.cfName, failure.get());
+            if (logger.isDebugEnabled())
+                logger.debug("Indexed streamed sstables of {}.{} in {}ms", cfs.metadata.ksName, cfs.metadata.cfName, System.currentTimeMillis() - start);
+        }
+
+        private void indexPartition(DecoratedKey key, int pageSize) {
+            BULK_INDEXING.set(true);
+            try {
+                ImmutableMappingInfo mappingInfo = mappingInfoRef.get();
+                if (mappingInfo == null || mappingInfo.indexInsertOnly) {
+                    cfs.indexManager.indexPartition(key, Collections.singleton(ElasticSecondaryIndex.this), pageSize);
+                } else {
+                    // same lock as the indexers of concurrent updates, the partition being read and indexed in one step.
+                    synchronized (readBeforeWriteLock(key)) {
+                        cfs.indexManager.indexPartition(key, Collections.singleton(ElasticSecondaryIndex.this), pageSize);
+                    }
+                }
+            } finally {
+                BULK_INDEXING.set(false);
+            }
+        }
+    }
+
+    /**
+     * Import segments once per bootstrap or rebuild stream plan.
+     * @return true if the segments of the streamed token ranges were imported in all indices.
+     */
+    private synchronized boolean importStreamedSegments() {
+        StreamState stream = currentStream("Bootstrap", "Rebuild");
+        if (stream == null || !isIndexing())
+            return false;
+
+        // a failed plan is not notified with its id, forget the plans no longer streaming.
+        Set<UUID> currentPlans = new HashSet<>();
+        for (CompositeData data : StreamManager.instance.getCurrentStreams())
+            currentPlans.add(StreamStateCompositeData.fromCompositeData(data).planId);
+        importedStreams.keySet().retainAll(currentPlans);
+
+        Boolean imported = importedStreams.get(stream.planId);
+        if (imported == null) {
+            String ksName = baseCfs.metadata.ksName;
+            Collection<Range<Token>> ranges = "Bootstrap".equals(stream.description) ?
+                StorageService.instance.getTokenMetadata().getPendingRanges(ksName, FBUtilities.getBroadcastAddress()) :
+                StorageService.instance.getLocalRanges(ksName);
+            try {
+                imported = importSegments(ranges);
+            } catch (Exception e) {
+                logger.warn("Failed to import segments for token ranges " + ranges + ", indexing streamed sstables", e);
+                imported = false;
+            }
+            importedStreams.put(stream.planId, imported);
+        }
+        return imported;
+    }
+
+    private synchronized void forgetImportedStream(UUID planId) {
+        importedStreams.remove(planId);
+    }
+
+    private boolean importSegments(Collection<Range<Token>> ranges) throws IOException {
+        ImmutableMappingInfo mappingInfo = mappingInfoRef.get();
+        for (ImmutableMappingInfo.ImmutableIndexInfo indexInfo : mappingInfo.indices) {
+            IndexShard indexShard = indexInfo.shard();
+            if (indexShard == null || !(indexShard.getEngine() instanceof VersionLessInternalEngine))
+                return false;
+        }
+
+        // a live source replica for each range, preferring the local datacenter.
+        InetAddress localAddress = FBUtilities.getBroadcastAddress();
+        String localDc = DatabaseDescriptor.getEndpointSnitch().getDatacenter(localAddress);
+        Map<DiscoveryNode, List<Range<Token>>> sources = new HashMap<>();
+        for (Range<Token> range : Range.normalize(ranges)) {
+            DiscoveryNode source = null;
+            for (InetAddress endpoint : StorageService.instance.getNaturalEndpoints(baseCfs.metadata.ksName, range.right)) {
+                if (endpoint.equals(localAddress) || !FailureDetector.instance.isAlive(endpoint))
+                    continue;
+                UUID hostId = StorageService.instance.getHostId(endpoint);
+                DiscoveryNode node = (hostId == null) ? null : clusterService.state().nodes().get(hostId.toString());
+                if (node != null && (source == null || localDc.equals(DatabaseDescriptor.getEndpointSnitch().getDatacenter(endpoint))))
+                    source = node;
+            }
+            if (source == null) {
+                logger.info("No live source replica with elasticsearch for token range {}, indexing streamed sstables", range);
+                return false;
+            }
+            sources.computeIfAbsent(source, k -> new ArrayList<>()).add(range);
+        }
+
+        // download everything before importing, so that a failure falls back to indexing sstables with no partially imported index.
+        SegmentStreamingService segmentStreamingService = ElassandraDaemon.instance.node().injector().getInstance(SegmentStreamingService.class);
+        Map<ImmutableMappingInfo.ImmutableIndexInfo, List<Path>> fetched = new HashMap<>();
+        try {
+            for (ImmutableMappingInfo.ImmutableIndexInfo indexInfo : mappingInfo.indices) {
+                List<Path> paths = new ArrayList<>();
+                fetched.put(indexInfo, paths);
+                for (Map.Entry<DiscoveryNode, List<Range<Token>>> entry : sources.entrySet())
+                    paths.add(segmentStreamingService.fetchSegments(indexInfo.shard(), entry.getKey(), entry.getValue()));
+            }
+            for (Map.Entry<ImmutableMappingInfo.ImmutableIndexInfo, List<Path>> entry : fetched.entrySet()) {
+                IndexShard indexShard = entry.getKey().shard();
+                String uidField = indexShard.indexSettings().getIndexVersionCreated().onOrAfter(Version.V_6_0_0_beta1) ||
+                    indexShard.mapperService().documentMapper(typeName).idFieldMapper().fieldType().indexOptions() != IndexOptions.NONE ?
+                    IdFieldMapper.NAME : UidFieldMapper.NAME;
+                for (Path path : entry.getValue()) {
+                    try (Directory directory = FSDirectory.open(path)) {
+                        indexShard.getEngine().addIndexes(directory, uidField);
+                    }
+                }
+                logger.info("index=[{}] imported segments for token ranges {} from {}", entry.getKey().name, ranges, sources.keySet());
+            }
+            return true;
+        } finally {
+            for (List<Path> paths : fetched.values())
+                IOUtils.rm(paths.toArray(new Path[paths.size()]));
+        }
+    }
+
     @Override
     public Callable<?> getMetadataReloadTask(IndexMetadata indexMetadata) {
         return null;
@@ -2608,6 +3539,14 @@ public class ElasticSecondaryIndex implements Index {
                             if (indexShard.state() == IndexShardState.STARTED) {
                                 long start = System.currentTimeMillis();
                                 indexInfo.updated = false; // reset updated state
+                                if (indexInfo.asyncFlush != null) {
+                                    try {
+                                        if (indexInfo.asyncFlush.onMemtableFlush(indexShard))
+                                            continue;
+                                    } catch (IOException e) {
+                                        logger.warn("Failed to schedule the async flush of index=[" + indexInfo.name + "], flushing now", e);
+                                    }
+                                }
                                 indexShard.flush(new FlushRequest().force(false).waitIfOngoing(true));
                                 if (logger.isInfoEnabled())
                                     logger.info("Elasticsearch index=[{}] type=[{}] flushed, duration={}ms", indexInfo.name, indexInfo.type, System.currentTimeMillis() - start);
@@ -2637,7 +3576,10 @@ public class ElasticSecondaryIndex implements Index {
         PosixFilePermission.OTHERS_READ));
 
     /**
-     * Cassandra table snapshot, hard links associated elasticsearch lucene files.
+     * Cassandra table snapshot, hard links the files of the last lucene commit and writes a {@value #SNAPSHOT_MANIFEST} listing
+     * these files with their length and checksum, flagging the ones not included in the previous snapshot of the index.
+     * The manifest also records the commitlog position of the flushed memtables, rows before this position being in both
+     * the snapshot sstables and the lucene commit.
      */
     @SuppressForbidden(reason = "File used for snapshots")
     @Override
@@ -2658,20 +3600,53 @@ public class ElasticSecondaryIndex implements Index {
                             if ((Files.notExists(snapshotIndex)))
                                 Files.createDirectory(snapshotIndex, snapshotDirPermissions);
 
+                            Map<String, String> previousFiles = new HashMap<>();
+                            String previousSnapshot = readPreviousSnapshotManifest(snapshotIndex, previousFiles);
+
                             // snapshotDir = data/elasticsearch.data/nodes/0/snapshots/<index_uuid>/<snapshot_name>
                             Path snapshotDir = Files.createDirectory(snapshotIndex.resolve(snapshotName), snapshotDirPermissions);
                             Path indexPath = indexShard.shardPath().resolveIndex();
 
-                            try (DirectoryStream<Path> stream = Files.newDirectoryStream(indexPath, "{_*.*,segments*}")) {
-                                for (Path luceneFile : stream) {
-                                    File targetLink = new File(snapshotDir.toFile(), luceneFile.getFileName().toString());
-                                    FileUtils.createHardLink(luceneFile.toFile(), targetLink);
+                            // the memtable lower bound is the commitlog position covered by the flushed sstables.
+                            CommitLogPosition position = baseCfs.getTracker().getView().getCurrentMemtable().getCommitLogLowerBound();
+
+                            // with async flush, the last lucene commit may not include the last flushed memtables.
+                            try (Engine.IndexCommitRef commitRef = indexShard.acquireIndexCommit(false, indexInfo.asyncFlush != null)) {
+                                IndexCommit commit = commitRef.getIndexCommit();
+                                Store.MetadataSnapshot metadata = indexShard.store().getMetadata(commit);
+                                try (XContentBuilder manifest = XContentFactory.jsonBuilder(Files.newOutputStream(snapshotDir.resolve(SNAPSHOT_MANIFEST)))) {
+                                    manifest.prettyPrint().startObject()
+                                        .field("snapshot", snapshotName)
+                                        .field("index", indexInfo.name)
+                                        .field("index_uuid", indexInfo.indexService.indexUUID())
+                                        .field("keyspace", baseCfs.keyspace.getName())
+                                        .field("table", baseCfs.metadata.cfName);
+                                    if (previousSnapshot != null)
+                                        manifest.field("previous_snapshot", previousSnapshot);
+                                    manifest.startObject("commitlog_position")
+                                            .field("segment_id", position.segmentId)
+                                            .field("position", position.position)
+                                        .endObject()
+                                        .field("lucene_generation", commit.getGeneration())
+                                        .field("segments_file", commit.getSegmentsFileName())
+                                        .startArray("files");
+                                    for (String fileName : commit.getFileNames()) {
+                                        FileUtils.createHardLink(indexPath.resolve(fileName).toFile(), snapshotDir.resolve(fileName).toFile());
+                                        StoreFileMetaData md = metadata.get(fileName);
+                                        manifest.startObject().field("name", fileName);
+                                        if (md != null) {
+                                            manifest.field("length", md.length())
+                                                .field("checksum", md.checksum())
+                                                .field("written_by", md.writtenBy().toString());
+                                        }
+                                        manifest.field("incremental", md == null || !md.checksum().equals(previousFiles.get(fileName)))
+                                            .endObject();
+                                    }
+                                    manifest.endArray().endObject();
                                 }
-                                if (logger.isDebugEnabled())
-                                    logger.debug("Elasticsearch index=[{}/{}], snapshot=[{}], path=[{}]", indexInfo.name, indexInfo.indexService.indexUUID(), snapshotName, snapshotDir.toString());
-                            } catch (DirectoryIteratorException ex) {
-                                logger.error("Failed to retreive lucene files in {}", ex, indexPath);
                             }
+                            if (logger.isDebugEnabled())
+                                logger.debug("Elasticsearch index=[{}/{}], snapshot=[{}], path=[{}]", indexInfo.name, indexInfo.indexService.indexUUID(), snapshotName, snapshotDir.toString());
                         } else {
                             if (logger.isDebugEnabled())
                                 logger.debug("Cannot snapshot index=[{}/{}], state=[{}], snapshot=[{}]", indexInfo.name, indexInfo.indexService.indexUUID(), indexShard.state(), snapshotName);
@@ -2683,6 +3658,94 @@ public class ElasticSecondaryIndex implements Index {
         };
     }
 
+    public static final String SNAPSHOT_MANIFEST = "manifest.json";
+
+    /**
+     * Read the files of the most recent snapshot manifest of an index.
+     * @return the previous snapshot name, or null if there is no snapshot manifest.
+     */
+    @SuppressWarnings("unchecked")
+    private String readPreviousSnapshotManifest(Path snapshotIndex, Map<String, String> files) throws IOException {
+        Path previous = null;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(snapshotIndex)) {
+            for (Path snapshotDir : stream) {
+                Path manifest = snapshotDir.resolve(SNAPSHOT_MANIFEST);
+                if (Files.exists(manifest) && (previous == null || Files.getLastModifiedTime(manifest).compareTo(Files.getLastModifiedTime(previous)) > 0))
+                    previous = manifest;
+            }
+        } catch (DirectoryIteratorException ex) {
+            logger.error("Failed to retreive snapshots in {}", ex, snapshotIndex);
+        }
+        if (previous == null)
+            return null;
+        try (InputStream in = Files.newInputStream(previous)) {
+            Map<String, Object> manifest = XContentHelper.convertToMap(XContentType.JSON.xContent(), in, false);
+            for (Map<String, Object> file : (List<Map<String, Object>>) manifest.get("files")) {
+                if (file.get("checksum") != null)
+                    files.put((String) file.get("name"), (String) file.get("checksum"));
+            }
+        } catch (ElasticsearchParseException e) {
+            logger.warn("Failed to parse snapshot manifest " + previous, e);
+            return null;
+        }
+        return previous.getParent().getFileName().toString();
+    }
+
+    /**
+     * @return a query matching the documents in the token ranges, or null when the ranges cover the whole ring.
+     */
+    public static Query tokenRangesQuery(Collection<Range<Token>> ranges) {
+        List<Query> queries = new ArrayList<>();
+        for (Range<Token> range : Range.normalize(ranges)) {
+            Long left = (Long) range.left.getTokenValue();
+            Long right = (Long) range.right.getTokenValue();
+            if (left == Long.MIN_VALUE && right == Long.MIN_VALUE)
+                return null;
+            queries.add(NumberFieldMapper.NumberType.LONG.rangeQuery(TokenFieldMapper.NAME,
+                left == Long.MIN_VALUE ? null : left,
+                right == Long.MIN_VALUE ? null : right,
+                false, true, true));
+        }
+        // nest the ranges to stay below the max clause count.
+        int maxClauses = BooleanQuery.getMaxClauseCount();
+        while (queries.size() > maxClauses) {
+            List<Query> groups = new ArrayList<>();
+            for (int i = 0; i < queries.size(); i += maxClauses) {
+                BooleanQuery.Builder group = new BooleanQuery.Builder();
+                for (Query q : queries.subList(i, Math.min(queries.size(), i + maxClauses)))
+                    group.add(q, Occur.SHOULD);
+                groups.add(group.build());
+            }
+            queries = groups;
+        }
+        BooleanQuery.Builder builder = new BooleanQuery.Builder();
+        for (Query q : queries)
+            builder.add(q, Occur.SHOULD);
+        return builder.build();
+    }
+
+    /**
+     * Remove the expired documents of all indices having index_expiration, scheduled by the {@link ClusterService} when started.
+     */
+    public static void expireDocuments() {
+        expireDocuments(FBUtilities.nowInSeconds());
+    }
+
+    /**
+     * Remove the documents expired at nowInSec of all indices having index_expiration.
+     */
+    public static void expireDocuments(final int nowInSec) {
+        for (ElasticSecondaryIndex esi : elasticSecondayIndices.values()) {
+            try {
+                ImmutableMappingInfo mappingInfo = esi.mappingInfoRef.get();
+                if (runsElassandra && mappingInfo != null && mappingInfo.indices != null)
+                    mappingInfo.expireDocuments(nowInSec);
+            } catch (Throwable t) {
+                esi.logger.error("Unexpected error", t);
+            }
+        }
+    }
+
     @Override
     public Callable<?> getInvalidateTask() {
         return () -> {
@@ -2706,8 +3769,11 @@ public class ElasticSecondaryIndex implements Index {
                             }
                             if (!indexInfo.updated)
                                 indexInfo.updated = true;
-                            DeleteByQuery deleteByQuery = mappingInfoRef.get().buildDeleteByQuery(indexInfo.indexService, Queries.newMatchAllQuery());
-                            indexShard.getEngine().delete(deleteByQuery);
+                            // drop all segments when the index only maps this table, otherwise fallback to a delete-by-query.
+                            if (indexInfo.indexService.mapperService().types().size() > 1 || !indexShard.getEngine().truncate()) {
+                                DeleteByQuery deleteByQuery = mappingInfoRef.get().buildDeleteByQuery(indexInfo.indexService, Queries.newMatchAllQuery());
+                                indexShard.getEngine().delete(deleteByQuery);
+                            }
                         }
                     } catch (ElasticsearchException e) {
                         logger.error("Error while truncating index=[{}]", e, indexInfo.name);
@@ -2786,6 +3852,65 @@ public class ElasticSecondaryIndex implements Index {
         };
     }
 
+    /**
+     * Remove the documents of the token ranges not in localRanges, unless already done for this ring version and these ranges or in progress.
+     */
+    public void cleanupTokenRanges(Collection<Range<Token>> localRanges, long ringVersion) {
+        final Set<Range<Token>> ranges = new HashSet<>(localRanges);
+        if ((cleanupRingVersion.get() != ringVersion || !ranges.equals(cleanupRanges)) && cleanupRunning.compareAndSet(false, true)) {
+            try {
+                cleanupPendingRanges = ranges;
+                ImmutableMappingInfo mappingInfo = this.mappingInfoRef.get();
+                if (mappingInfo == null)
+                    cleanupDone(ringVersion, true);
+                else
+                    mappingInfo.cleanupTokenRanges(localRanges, ringVersion);
+            } catch (Throwable t) {
+                logger.error("cleanup failed", t);
+                cleanupDone(ringVersion, false);
+            }
+        }
+    }
+
+    void cleanupDone(long ringVersion, boolean success) {
+        if (success) {
+            cleanupRanges = cleanupPendingRanges;
+            cleanupRingVersion.set(ringVersion);
+        }
+        cleanupRunning.set(false);
+    }
+
+    /**
+     * Remove the documents of the token ranges no longer owned by this node for all elasticsearch secondary indices of a keyspace.
+     * Cassandra cleanup compactions do not run when the node does not own any token range, so this is triggered explicitly on keyspace replication changes.
+     */
+    public static void cleanupKeyspace(String ksName) {
+        Collection<Range<Token>> localRanges = StorageService.instance.getLocalRanges(ksName);
+        long ringVersion = StorageService.instance.getTokenMetadata().getRingVersion();
+        for (ElasticSecondaryIndex esi : elasticSecondayIndices.values()) {
+            if (ksName.equals(esi.baseCfs.metadata.ksName) && esi.isIndexing())
+                esi.cleanupTokenRanges(localRanges, ringVersion);
+        }
+    }
+
+    public long getCleanupRingVersion() {
+        return cleanupRingVersion.get();
+    }
+
+    /**
+     * @return the number of lucene documents built from rows, once per docGroup of indices having identical mappings.
+     */
+    public long getBuiltDocuments() {
+        return builtDocuments.count();
+    }
+
+    /**
+     * @return the number of lucene documents indexed without being built again, reused from another index of the same docGroup.
+     */
+    public long getReusedDocuments() {
+        return reusedDocuments.count();
+    }
+
     @Override
     public Indexer indexerFor(DecoratedKey key, PartitionColumns columns, int nowInSec, Group opGroup, Type transactionType)
     {
@@ -2794,6 +3919,12 @@ public class ElasticSecondaryIndex implements Index {
             if (transactionType == Type.COMPACTION && !mappingInfo.indexOnCompaction)
                 return null;
 
+            if (transactionType == Type.CLEANUP) {
+                // nodetool cleanup: remove documents of the lost token ranges once per ring version and local ranges, skip row level cleanup.
+                cleanupTokenRanges(StorageService.instance.getLocalRanges(baseCfs.metadata.ksName), StorageService.instance.getTokenMetadata().getRingVersion());
+                return null;
+            }
+
             boolean found = (columns.size() == 0);
             if (!found) {
                 for (ColumnDefinition cd : columns) {
@@ -2806,19 +3937,9 @@ public class ElasticSecondaryIndex implements Index {
             if (found) {
                 try {
                     if (baseCfs.getComparator().size() == 0) {
-                        switch (transactionType) {
-                            case CLEANUP:
-                                return mappingInfo.new CleanupSkinnyRowcumentIndexer(key, columns, nowInSec, opGroup, transactionType);
-                            default:
-                                return mappingInfo.new SkinnyRowcumentIndexer(key, columns, nowInSec, opGroup, transactionType);
-                        }
+                        return mappingInfo.new SkinnyRowcumentIndexer(key, columns, nowInSec, opGroup, transactionType);
                     } else {
-                        switch (transactionType) {
-                            case CLEANUP:
-                                return mappingInfo.new CleanupWideRowcumentIndexer(key, columns, nowInSec, opGroup, transactionType);
-                            default:
-                                return mappingInfo.new WideRowcumentIndexer(key, columns, nowInSec, opGroup, transactionType);
-                        }
+                        return mappingInfo.new WideRowcumentIndexer(key, columns, nowInSec, opGroup, transactionType);
                     }
                 } catch (Throwable e) {
                     throw new RuntimeException(e);
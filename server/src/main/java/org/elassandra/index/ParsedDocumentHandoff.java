@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.index;
+
+import org.apache.lucene.index.IndexableField;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.metrics.CounterMetric;
+import org.elasticsearch.index.mapper.DocumentMapper;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Node-local handoff of the lucene fields parsed by the elasticsearch write path to the {@link ElasticSecondaryIndex}.
+ * <p>
+ * When a document is written through the elasticsearch API, the coordinator parses the JSON source to detect dynamic
+ * mapping updates, then writes the row with an explicit write timestamp. When the coordinator is also a replica, the
+ * secondary index takes the parsed mapped fields instead of rebuilding them from the cells, but only if the indexed row
+ * was entirely written at that timestamp and the document mapper did not change. Metadata fields are always built by the
+ * secondary index. A missing, stale or rejected entry just falls back to the cell based indexing.
+ */
+public class ParsedDocumentHandoff {
+
+    public static final ParsedDocumentHandoff instance = new ParsedDocumentHandoff(Integer.getInteger(ClusterService.SETTING_SYSTEM_PARSED_DOCUMENT_HANDOFF_SIZE, 1024));
+
+    public static class Entry {
+        final String index;
+        final DocumentMapper docMapper;
+        final List<IndexableField> fields;
+        final long timestamp;
+
+        Entry(String index, DocumentMapper docMapper, List<IndexableField> fields, long timestamp) {
+            this.index = index;
+            this.docMapper = docMapper;
+            this.fields = fields;
+            this.timestamp = timestamp;
+        }
+
+        public long timestamp() {
+            return timestamp;
+        }
+    }
+
+    private final int maxEntries;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final CounterMetric reused = new CounterMetric();
+
+    ParsedDocumentHandoff(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    static String key(String ksName, String cfName, String id) {
+        return ksName + "." + cfName + "/" + id;
+    }
+
+    public boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * Publish the mapped fields of a document written at timestamp.
+     * @return the registered entry to release after the write, or null if the handoff is full.
+     */
+    public Entry offer(String ksName, String cfName, String id, String index, DocumentMapper docMapper, List<IndexableField> fields, long timestamp) {
+        if (entries.size() >= maxEntries)
+            return null;
+        Entry entry = new Entry(index, docMapper, fields, timestamp);
+        entries.put(key(ksName, cfName, id), entry);
+        return entry;
+    }
+
+    /**
+     * Remove the entry if not already taken by the secondary index.
+     */
+    public void release(String ksName, String cfName, String id, Entry entry) {
+        entries.remove(key(ksName, cfName, id), entry);
+    }
+
+    /**
+     * @return the entry of the document written at timestamp, or null.
+     */
+    public Entry take(String ksName, String cfName, String id, long timestamp) {
+        final String key = key(ksName, cfName, id);
+        final Entry entry = entries.get(key);
+        if (entry != null && entry.timestamp == timestamp && entries.remove(key, entry))
+            return entry;
+        return null;
+    }
+
+    void onReuse() {
+        reused.inc();
+    }
+
+    /**
+     * @return number of documents indexed from the handed off fields.
+     */
+    public long getReused() {
+        return reused.count();
+    }
+}
@@ -0,0 +1,477 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.index;
+
+import org.apache.cassandra.dht.Murmur3Partitioner;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.lucene.index.CodecReader;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.FilterCodecReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.SlowCodecReaderWrapper;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BitSetIterator;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.IOUtils;
+import org.elasticsearch.cluster.node.DiscoveryNode;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.UUIDs;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.lucene.search.Queries;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.index.Index;
+import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.engine.EngineConfig;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.EmptyTransportResponseHandler;
+import org.elasticsearch.transport.FutureTransportResponseHandler;
+import org.elasticsearch.transport.TransportRequest;
+import org.elasticsearch.transport.TransportResponse;
+import org.elasticsearch.transport.TransportService;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transfer lucene segments filtered to some token ranges from a source replica.
+ * <p>
+ * The source node writes a copy of its last lucene commit keeping only the documents in the requested token ranges
+ * (nested documents follow their parent), and the target node downloads the files of this copy by chunks.
+ */
+public class SegmentStreamingService extends AbstractComponent {
+
+    public static final String SNAPSHOT_ACTION_NAME = "internal:index/elassandra/segments/snapshot";
+    public static final String CHUNK_ACTION_NAME = "internal:index/elassandra/segments/chunk";
+    public static final String RELEASE_ACTION_NAME = "internal:index/elassandra/segments/release";
+
+    static final int CHUNK_SIZE = 512 * 1024;
+    static final long SESSION_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(Long.getLong(ClusterService.SETTING_SYSTEM_STREAM_SEGMENTS_SESSION_TIMEOUT, 600L));
+    static final String SESSION_DIR_PREFIX = "segments.";
+
+    private final TransportService transportService;
+    private final IndicesService indicesService;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>(); // filtered copies by session id on the source node.
+
+    /**
+     * Filtered copy of a source shard, removed on release or when not accessed for {@link #SESSION_TIMEOUT_MS}
+     * (the target node failed or was restarted during the download).
+     */
+    static class Session {
+        final Path dir;
+        volatile long lastAccess = System.currentTimeMillis();
+
+        Session(Path dir) {
+            this.dir = dir;
+        }
+    }
+
+    public SegmentStreamingService(Settings settings, TransportService transportService, IndicesService indicesService) {
+        super(settings);
+        this.transportService = transportService;
+        this.indicesService = indicesService;
+        transportService.getThreadPool().scheduleWithFixedDelay(this::expireSessions,
+            TimeValue.timeValueMillis(Math.max(1000L, SESSION_TIMEOUT_MS / 2)), ThreadPool.Names.GENERIC);
+        transportService.registerRequestHandler(SNAPSHOT_ACTION_NAME, SnapshotRequest::new, ThreadPool.Names.GENERIC,
+            (request, channel) -> channel.sendResponse(snapshot(request)));
+        transportService.registerRequestHandler(CHUNK_ACTION_NAME, ChunkRequest::new, ThreadPool.Names.GENERIC,
+            (request, channel) -> channel.sendResponse(new ChunkResponse(readChunk(request))));
+        transportService.registerRequestHandler(RELEASE_ACTION_NAME, ReleaseRequest::new, ThreadPool.Names.GENERIC,
+            (request, channel) -> {
+                Session session = sessions.remove(request.sessionId);
+                if (session != null)
+                    IOUtils.rm(session.dir);
+                channel.sendResponse(TransportResponse.Empty.INSTANCE);
+            });
+    }
+
+    /**
+     * Download from the source node the documents of the shard index in the token ranges, in a temporary directory of the shard data path.
+     * @return the downloaded index directory, to be removed by the caller.
+     */
+    public Path fetchSegments(IndexShard indexShard, DiscoveryNode source, Collection<Range<Token>> ranges) throws IOException {
+        SnapshotResponse snapshot = transportService.submitRequest(source, SNAPSHOT_ACTION_NAME,
+            new SnapshotRequest(indexShard.shardId().getIndex(), ranges),
+            new FutureTransportResponseHandler<SnapshotResponse>() {
+                @Override
+                public SnapshotResponse newInstance() {
+                    return new SnapshotResponse();
+                }
+            }).txGet();
+
+        Path dir = indexShard.shardPath().getDataPath().resolve(SESSION_DIR_PREFIX + snapshot.sessionId);
+        try {
+            Files.createDirectories(dir);
+            long bytes = 0;
+            for (int i = 0; i < snapshot.files.length; i++) {
+                try (OutputStream out = Files.newOutputStream(dir.resolve(snapshot.files[i]))) {
+                    long offset = 0;
+                    while (offset < snapshot.lengths[i]) {
+                        ChunkRequest request = new ChunkRequest(snapshot.sessionId, snapshot.files[i], offset, (int) Math.min(CHUNK_SIZE, snapshot.lengths[i] - offset));
+                        BytesReference chunk = transportService.submitRequest(source, CHUNK_ACTION_NAME, request,
+                            new FutureTransportResponseHandler<ChunkResponse>() {
+                                @Override
+                                public ChunkResponse newInstance() {
+                                    return new ChunkResponse();
+                                }
+                            }).txGet().bytes;
+                        if (chunk.length() == 0)
+                            throw new IOException("Unexpected end of file [" + snapshot.files[i] + "] from " + source);
+                        chunk.writeTo(out);
+                        offset += chunk.length();
+                    }
+                }
+                bytes += snapshot.lengths[i];
+            }
+            logger.info("index=[{}] fetched {} files ({} bytes) for token ranges {} from {}",
+                indexShard.shardId().getIndexName(), snapshot.files.length, bytes, ranges, source);
+            return dir;
+        } catch (Exception e) {
+            IOUtils.rm(dir);
+            throw e;
+        } finally {
+            transportService.sendRequest(source, RELEASE_ACTION_NAME, new ReleaseRequest(snapshot.sessionId), EmptyTransportResponseHandler.INSTANCE_SAME);
+        }
+    }
+
+    private SnapshotResponse snapshot(SnapshotRequest request) throws IOException {
+        final IndexShard indexShard = indicesService.indexServiceSafe(request.index).getShard(0);
+        final EngineConfig config = indexShard.getEngine().config();
+        final String sessionId = UUIDs.randomBase64UUID();
+        final Path dir = indexShard.shardPath().getDataPath().resolve(SESSION_DIR_PREFIX + sessionId);
+
+        // flush first, so that the copy includes the memtables flushed to the streamed sstables.
+        try (Engine.IndexCommitRef commitRef = indexShard.acquireIndexCommit(false, true);
+             DirectoryReader reader = DirectoryReader.open(commitRef.getIndexCommit());
+             Directory target = FSDirectory.open(dir)) {
+            IndexWriterConfig iwc = new IndexWriterConfig(null)
+                .setOpenMode(IndexWriterConfig.OpenMode.CREATE)
+                .setCodec(config.getCodec());
+            if (config.getIndexSort() != null)
+                iwc.setIndexSort(config.getIndexSort());
+            filteredCopy(reader, request.ranges(), Queries.newNonNestedFilter(indexShard.indexSettings().getIndexVersionCreated()), target, iwc);
+
+            List<String> files = new ArrayList<>();
+            for (String file : target.listAll()) {
+                if (!IndexWriter.WRITE_LOCK_NAME.equals(file))
+                    files.add(file);
+            }
+            long[] lengths = new long[files.size()];
+            for (int i = 0; i < lengths.length; i++)
+                lengths[i] = target.fileLength(files.get(i));
+            // registered once copied, so that a long copy is not expired.
+            sessions.put(sessionId, new Session(dir));
+            logger.debug("index=[{}] session=[{}] filtered copy of {} files for token ranges {}", request.index.getName(), sessionId, files.size(), request.ranges());
+            return new SnapshotResponse(sessionId, files.toArray(new String[files.size()]), lengths);
+        } catch (Exception e) {
+            IOUtils.rm(dir);
+            throw e;
+        }
+    }
+
+    /**
+     * Write and commit in the target directory the live root documents of the reader in the token ranges, with their nested documents.
+     */
+    public static void filteredCopy(DirectoryReader reader, Collection<Range<Token>> ranges, Query nonNestedFilter, Directory target, IndexWriterConfig iwc) throws IOException {
+        final Query tokenQuery = ElasticSecondaryIndex.tokenRangesQuery(ranges);
+        IndexSearcher searcher = new IndexSearcher(reader);
+        searcher.setQueryCache(null);
+        Weight tokenWeight = tokenQuery == null ? null : searcher.createNormalizedWeight(tokenQuery, false);
+        Weight rootWeight = searcher.createNormalizedWeight(nonNestedFilter, false);
+        List<CodecReader> readers = new ArrayList<>();
+        for (LeafReaderContext ctx : reader.leaves()) {
+            CodecReader filtered = filter(ctx, tokenWeight, rootWeight);
+            if (filtered != null)
+                readers.add(filtered);
+        }
+        try (IndexWriter writer = new IndexWriter(target, iwc)) {
+            writer.addIndexes(readers.toArray(new CodecReader[readers.size()]));
+            writer.commit();
+        }
+    }
+
+    void expireSessions() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, Session> entry : sessions.entrySet()) {
+            Session session = entry.getValue();
+            if (now - session.lastAccess > SESSION_TIMEOUT_MS && sessions.remove(entry.getKey(), session)) {
+                logger.info("segments session=[{}] expired, removing {}", entry.getKey(), session.dir);
+                try {
+                    IOUtils.rm(session.dir);
+                } catch (IOException e) {
+                    logger.warn("Failed to remove expired segments copy " + session.dir, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove the filtered copies and the downloaded segments left in the shard data path by a node stopped during a
+     * transfer, no session of the shard being active before it is started.
+     */
+    public static void wipeSessions(IndexShard indexShard) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(indexShard.shardPath().getDataPath(), SESSION_DIR_PREFIX + "*")) {
+            for (Path dir : stream)
+                IOUtils.rm(dir);
+        }
+    }
+
+    /**
+     * @return a reader on the live root documents matching the token weight and their nested documents, or null if there is no such document.
+     */
+    private static CodecReader filter(LeafReaderContext ctx, Weight tokenWeight, Weight rootWeight) throws IOException {
+        final FixedBitSet roots = matches(rootWeight, ctx);
+        final FixedBitSet docs = new FixedBitSet(ctx.reader().maxDoc());
+        final Bits liveDocs = ctx.reader().getLiveDocs();
+        DocIdSetIterator it = new BitSetIterator((tokenWeight == null) ? roots : matches(tokenWeight, ctx), 0);
+        for (int doc = it.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = it.nextDoc()) {
+            if (roots.get(doc) && (liveDocs == null || liveDocs.get(doc))) {
+                // nested documents are indexed in the same block before their parent.
+                int first = (doc == 0) ? 0 : roots.prevSetBit(doc - 1) + 1;
+                docs.set(first, doc + 1);
+            }
+        }
+        final int numDocs = docs.cardinality();
+        if (numDocs == 0)
+            return null;
+        return new FilterCodecReader(SlowCodecReaderWrapper.wrap(ctx.reader())) {
+            @Override
+            public Bits getLiveDocs() {
+                return docs;
+            }
+
+            @Override
+            public int numDocs() {
+                return numDocs;
+            }
+
+            @Override
+            public CacheHelper getCoreCacheHelper() {
+                return null;
+            }
+
+            @Override
+            public CacheHelper getReaderCacheHelper() {
+                return null;
+            }
+        };
+    }
+
+    private static FixedBitSet matches(Weight weight, LeafReaderContext ctx) throws IOException {
+        FixedBitSet bits = new FixedBitSet(ctx.reader().maxDoc());
+        Scorer scorer = weight.scorer(ctx);
+        if (scorer != null)
+            bits.or(scorer.iterator());
+        return bits;
+    }
+
+    private BytesReference readChunk(ChunkRequest request) throws IOException {
+        Session session = sessions.get(request.sessionId);
+        if (session == null)
+            throw new IllegalStateException("Unknown segments session [" + request.sessionId + "]");
+        session.lastAccess = System.currentTimeMillis();
+        Path dir = session.dir;
+        Path file = dir.resolve(request.file).normalize();
+        if (!dir.equals(file.getParent()))
+            throw new IllegalArgumentException("Invalid file name [" + request.file + "]");
+        try (SeekableByteChannel channel = Files.newByteChannel(file)) {
+            channel.position(request.offset);
+            ByteBuffer buffer = ByteBuffer.allocate(request.length);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+            }
+            return new BytesArray(buffer.array(), 0, buffer.position());
+        }
+    }
+
+    static class SnapshotRequest extends TransportRequest {
+        Index index;
+        long[] ranges; // left and right murmur3 tokens of the normalized ranges
+
+        SnapshotRequest() {
+        }
+
+        SnapshotRequest(Index index, Collection<Range<Token>> ranges) {
+            this.index = index;
+            List<Range<Token>> normalized = Range.normalize(ranges);
+            this.ranges = new long[normalized.size() * 2];
+            int i = 0;
+            for (Range<Token> range : normalized) {
+                this.ranges[i++] = (Long) range.left.getTokenValue();
+                this.ranges[i++] = (Long) range.right.getTokenValue();
+            }
+        }
+
+        List<Range<Token>> ranges() {
+            List<Range<Token>> list = new ArrayList<>(ranges.length / 2);
+            for (int i = 0; i < ranges.length; i += 2)
+                list.add(new Range<>(new Murmur3Partitioner.LongToken(ranges[i]), new Murmur3Partitioner.LongToken(ranges[i + 1])));
+            return list;
+        }
+
+        @Override
+        public void readFrom(StreamInput in) throws IOException {
+            super.readFrom(in);
+            index = new Index(in);
+            ranges = in.readLongArray();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            super.writeTo(out);
+            index.writeTo(out);
+            out.writeLongArray(ranges);
+        }
+    }
+
+    static class SnapshotResponse extends TransportResponse {
+        String sessionId;
+        String[] files;
+        long[] lengths;
+
+        SnapshotResponse() {
+        }
+
+        SnapshotResponse(String sessionId, String[] files, long[] lengths) {
+            this.sessionId = sessionId;
+            this.files = files;
+            this.lengths = lengths;
+        }
+
+        @Override
+        public void readFrom(StreamInput in) throws IOException {
+            super.readFrom(in);
+            sessionId = in.readString();
+            files = in.readStringArray();
+            lengths = in.readLongArray();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            super.writeTo(out);
+            out.writeString(sessionId);
+            out.writeStringArray(files);
+            out.writeLongArray(lengths);
+        }
+    }
+
+    static class ChunkRequest extends TransportRequest {
+        String sessionId;
+        String file;
+        long offset;
+        int length;
+
+        ChunkRequest() {
+        }
+
+        ChunkRequest(String sessionId, String file, long offset, int length) {
+            this.sessionId = sessionId;
+            this.file = file;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public void readFrom(StreamInput in) throws IOException {
+            super.readFrom(in);
+            sessionId = in.readString();
+            file = in.readString();
+            offset = in.readVLong();
+            length = in.readVInt();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            super.writeTo(out);
+            out.writeString(sessionId);
+            out.writeString(file);
+            out.writeVLong(offset);
+            out.writeVInt(length);
+        }
+    }
+
+    static class ChunkResponse extends TransportResponse {
+        BytesReference bytes;
+
+        ChunkResponse() {
+        }
+
+        ChunkResponse(BytesReference bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void readFrom(StreamInput in) throws IOException {
+            super.readFrom(in);
+            bytes = in.readBytesReference();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            super.writeTo(out);
+            out.writeBytesReference(bytes);
+        }
+    }
+
+    static class ReleaseRequest extends TransportRequest {
+        String sessionId;
+
+        ReleaseRequest() {
+        }
+
+        ReleaseRequest(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        @Override
+        public void readFrom(StreamInput in) throws IOException {
+            super.readFrom(in);
+            sessionId = in.readString();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            super.writeTo(out);
+            out.writeString(sessionId);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.index;
+
+import org.elasticsearch.Version;
+import org.elasticsearch.common.compress.CompressedXContent;
+import org.elasticsearch.common.metrics.CounterMetric;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.IndexSettings;
+import org.elasticsearch.index.mapper.Mapping;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Node-level registry of the parsed {@link Mapping} of virtual indices.
+ * <p>
+ * Indices pointing to the same virtual index usually have the same mapping source, so the immutable mapper tree
+ * (root object mapper, field mappers and field types) is parsed once and shared by reference between their
+ * DocumentMappers. A mapping is only shared when the mapping source, the index created version and the similarity
+ * settings are identical, and when indices have no custom analysis settings, because index scoped analyzers are closed
+ * with their index. When an index mapping diverges, its MapperService merges it into a new Mapping (mappers are
+ * immutable), which is copy-on-write by design.
+ */
+public class VirtualIndexMappings {
+
+    static class Entry {
+        final CompressedXContent source;
+        final Mapping mapping;
+        final Version indexCreatedVersion;
+        final Settings similaritySettings;
+
+        Entry(CompressedXContent source, Mapping mapping, IndexSettings indexSettings) {
+            this.source = source;
+            this.mapping = mapping;
+            this.indexCreatedVersion = indexSettings.getIndexVersionCreated();
+            this.similaritySettings = similaritySettings(indexSettings);
+        }
+
+        boolean matches(CompressedXContent source, IndexSettings indexSettings) {
+            return this.source.equals(source)
+                    && this.indexCreatedVersion.equals(indexSettings.getIndexVersionCreated())
+                    && this.similaritySettings.equals(similaritySettings(indexSettings));
+        }
+    }
+
+    private final ConcurrentMap<String, Entry> mappings = new ConcurrentHashMap<>();
+    private final CounterMetric sharedMappings = new CounterMetric();
+
+    static Settings similaritySettings(IndexSettings indexSettings) {
+        return indexSettings.getSettings().getByPrefix("index.similarity.");
+    }
+
+    /**
+     * Only indices using built-in analyzers can share mappers, index scoped analyzers are closed with their index.
+     */
+    public static boolean isShareable(IndexSettings indexSettings) {
+        return indexSettings.getSettings().getByPrefix("index.analysis.").isEmpty();
+    }
+
+    static String key(String virtualIndex, String type) {
+        return virtualIndex + "/" + type;
+    }
+
+    /**
+     * @return the shared mapping of the virtual index type if it was parsed from the same source with compatible index settings, null otherwise.
+     */
+    public Mapping get(String virtualIndex, String type, CompressedXContent source, IndexSettings indexSettings) {
+        Entry entry = mappings.get(key(virtualIndex, type));
+        if (entry != null && entry.matches(source, indexSettings)) {
+            sharedMappings.inc();
+            return entry.mapping;
+        }
+        return null;
+    }
+
+    /**
+     * Register the mapping parsed from the source, replacing any previous mapping of the virtual index type.
+     */
+    public void put(String virtualIndex, String type, CompressedXContent source, IndexSettings indexSettings, Mapping mapping) {
+        Objects.requireNonNull(mapping);
+        mappings.put(key(virtualIndex, type), new Entry(source, mapping, indexSettings));
+    }
+
+    /**
+     * Release mappings of a removed virtual index.
+     */
+    public void remove(String virtualIndex) {
+        mappings.keySet().removeIf(k -> k.startsWith(virtualIndex + "/"));
+    }
+
+    public int size() {
+        return mappings.size();
+    }
+
+    public long getSharedMappings() {
+        return sharedMappings.count();
+    }
+}
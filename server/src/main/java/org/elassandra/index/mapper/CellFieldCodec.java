@@ -0,0 +1,245 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra.index.mapper;
+
+import org.apache.cassandra.db.marshal.AbstractType;
+import org.apache.cassandra.db.marshal.ByteType;
+import org.apache.cassandra.db.marshal.DoubleType;
+import org.apache.cassandra.db.marshal.FloatType;
+import org.apache.cassandra.db.marshal.Int32Type;
+import org.apache.cassandra.db.marshal.LongType;
+import org.apache.cassandra.db.marshal.ShortType;
+import org.apache.cassandra.db.marshal.TimestampType;
+import org.apache.lucene.document.DoublePoint;
+import org.apache.lucene.document.FloatPoint;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.document.SortedNumericDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.IndexOptions;
+import org.apache.lucene.util.NumericUtils;
+import org.elasticsearch.index.mapper.DateFieldMapper;
+import org.elasticsearch.index.mapper.DocumentMapper;
+import org.elasticsearch.index.mapper.FieldMapper;
+import org.elasticsearch.index.mapper.MappedFieldType;
+import org.elasticsearch.index.mapper.Mapper;
+import org.elasticsearch.index.mapper.NumberFieldMapper;
+import org.elasticsearch.index.mapper.ParseContext;
+
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+/**
+ * Type-specialized conversion of a serialized cell value into lucene fields, without deserializing the value into a boxed
+ * java object. A codec is only available when the produced fields are strictly identical to the ones produced by
+ * {@link FieldMapper#createField(ParseContext, Object)}, that is, for numeric and date fields with doc values, without
+ * multi-fields, copy_to, null_value or _all, and a CQL type having the same width as the elasticsearch type.
+ */
+public abstract class CellFieldCodec {
+
+    protected final String name;
+    protected final boolean indexed;
+    protected final boolean docValued;
+    protected final boolean stored;
+
+    CellFieldCodec(MappedFieldType fieldType) {
+        this.name = fieldType.name();
+        this.indexed = fieldType.indexOptions() != IndexOptions.NONE;
+        this.docValued = fieldType.hasDocValues();
+        this.stored = fieldType.stored();
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return true if the field is only indexed as doc values, allowing in-place doc values updates.
+     */
+    public boolean isDocValuesOnly() {
+        return !indexed && docValued && !stored;
+    }
+
+    /**
+     * Add lucene fields for a non-empty serialized cell value.
+     */
+    public abstract void createFields(ParseContext.Document doc, ByteBuffer value);
+
+    /**
+     * @return the doc value of a non-empty serialized cell value or of a deserialized value.
+     */
+    public abstract long docValue(Object value);
+
+    /**
+     * @return a codec for the CQL type and the mapper, or null if the generic path must be used.
+     */
+    public static CellFieldCodec of(AbstractType<?> cqlType, Mapper mapper, DocumentMapper docMapper) {
+        if (!(mapper instanceof NumberFieldMapper || mapper instanceof DateFieldMapper))
+            return null;
+        FieldMapper fieldMapper = (FieldMapper) mapper;
+        MappedFieldType fieldType = fieldMapper.fieldType();
+        if (docMapper.allFieldMapper().enabled()
+                || !fieldMapper.copyTo().copyToFields().isEmpty()
+                || fieldMapper.iterator().hasNext()
+                || fieldType.nullValue() != null
+                || !fieldType.hasDocValues())
+            return null;
+        return of(cqlType, fieldType);
+    }
+
+    /**
+     * @return a codec producing the lucene fields of a numeric or date field type for the CQL type, or null if not supported.
+     */
+    public static CellFieldCodec of(AbstractType<?> cqlType, MappedFieldType fieldType) {
+        switch(fieldType.typeName()) {
+        case "byte":
+            return cqlType == ByteType.instance ? new IntCodec(fieldType, 1) : null;
+        case "short":
+            return cqlType == ShortType.instance ? new IntCodec(fieldType, 2) : null;
+        case "integer":
+            return cqlType == Int32Type.instance ? new IntCodec(fieldType, 4) : null;
+        case "long":
+            return cqlType == LongType.instance ? new LongCodec(fieldType) : null;
+        case "date":
+            return cqlType == TimestampType.instance ? new LongCodec(fieldType) : null;
+        case "double":
+            return cqlType == DoubleType.instance ? new DoubleCodec(fieldType) : null;
+        case "float":
+            return cqlType == FloatType.instance ? new FloatCodec(fieldType) : null;
+        default:
+            return null;
+        }
+    }
+
+    static class IntCodec extends CellFieldCodec {
+        final int width;
+
+        IntCodec(MappedFieldType fieldType, int width) {
+            super(fieldType);
+            this.width = width;
+        }
+
+        @Override
+        public void createFields(ParseContext.Document doc, ByteBuffer value) {
+            final int pos = value.position();
+            final int v;
+            switch(width) {
+            case 1: v = value.get(pos); break;
+            case 2: v = value.getShort(pos); break;
+            default: v = value.getInt(pos);
+            }
+            if (indexed)
+                doc.add(new IntPoint(name, v));
+            if (docValued)
+                doc.add(new SortedNumericDocValuesField(name, v));
+            if (stored)
+                doc.add(new StoredField(name, v));
+        }
+
+        @Override
+        public long docValue(Object value) {
+            if (value instanceof ByteBuffer) {
+                final ByteBuffer bb = (ByteBuffer) value;
+                switch(width) {
+                case 1: return bb.get(bb.position());
+                case 2: return bb.getShort(bb.position());
+                default: return bb.getInt(bb.position());
+                }
+            }
+            return ((Number) value).intValue();
+        }
+    }
+
+    static class LongCodec extends CellFieldCodec {
+        LongCodec(MappedFieldType fieldType) {
+            super(fieldType);
+        }
+
+        @Override
+        public void createFields(ParseContext.Document doc, ByteBuffer value) {
+            final long v = value.getLong(value.position());
+            if (indexed)
+                doc.add(new LongPoint(name, v));
+            if (docValued)
+                doc.add(new SortedNumericDocValuesField(name, v));
+            if (stored)
+                doc.add(new StoredField(name, v));
+        }
+
+        @Override
+        public long docValue(Object value) {
+            if (value instanceof ByteBuffer)
+                return ((ByteBuffer) value).getLong(((ByteBuffer) value).position());
+            if (value instanceof Date)
+                return ((Date) value).getTime();
+            return ((Number) value).longValue();
+        }
+    }
+
+    static class DoubleCodec extends CellFieldCodec {
+        DoubleCodec(MappedFieldType fieldType) {
+            super(fieldType);
+        }
+
+        @Override
+        public void createFields(ParseContext.Document doc, ByteBuffer value) {
+            final double v = value.getDouble(value.position());
+            if (!Double.isFinite(v))
+                throw new IllegalArgumentException("[double] supports only finite values, but got [" + v + "]");
+            if (indexed)
+                doc.add(new DoublePoint(name, v));
+            if (docValued)
+                doc.add(new SortedNumericDocValuesField(name, NumericUtils.doubleToSortableLong(v)));
+            if (stored)
+                doc.add(new StoredField(name, v));
+        }
+
+        @Override
+        public long docValue(Object value) {
+            final double v = (value instanceof ByteBuffer) ? ((ByteBuffer) value).getDouble(((ByteBuffer) value).position()) : ((Number) value).doubleValue();
+            if (!Double.isFinite(v))
+                throw new IllegalArgumentException("[double] supports only finite values, but got [" + v + "]");
+            return NumericUtils.doubleToSortableLong(v);
+        }
+    }
+
+    static class FloatCodec extends CellFieldCodec {
+        FloatCodec(MappedFieldType fieldType) {
+            super(fieldType);
+        }
+
+        @Override
+        public void createFields(ParseContext.Document doc, ByteBuffer value) {
+            final float v = value.getFloat(value.position());
+            if (!Float.isFinite(v))
+                throw new IllegalArgumentException("[float] supports only finite values, but got [" + v + "]");
+            if (indexed)
+                doc.add(new FloatPoint(name, v));
+            if (docValued)
+                doc.add(new SortedNumericDocValuesField(name, NumericUtils.floatToSortableInt(v)));
+            if (stored)
+                doc.add(new StoredField(name, v));
+        }
+
+        @Override
+        public long docValue(Object value) {
+            final float v = (value instanceof ByteBuffer) ? ((ByteBuffer) value).getFloat(((ByteBuffer) value).position()) : ((Number) value).floatValue();
+            if (!Float.isFinite(v))
+                throw new IllegalArgumentException("[float] supports only finite values, but got [" + v + "]");
+            return NumericUtils.floatToSortableInt(v);
+        }
+    }
+}
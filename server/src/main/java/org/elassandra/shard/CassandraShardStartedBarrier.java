@@ -55,8 +55,11 @@ public class CassandraShardStartedBarrier extends AbstractComponent implements C
     public void blockUntilShardsStarted() {
         try {
             logger.debug("Waiting latch={}", latch.getCount());
+            long start = System.nanoTime();
             if (latch.await(600, TimeUnit.SECONDS))
-                logger.debug("All local shards ready to index.");
+                logger.info("All [{}] local shards ready to index after {} ms",
+                        clusterService.state().metaData().indices().size(),
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
             else
                 logger.error("Some local shards not ready to index, clusterState = {}", clusterService.state());
         } catch (InterruptedException e) {
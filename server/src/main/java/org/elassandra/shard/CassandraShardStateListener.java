@@ -128,6 +128,14 @@ public class CassandraShardStateListener extends AbstractComponent implements In
      */
     @Override
     public void beforeIndexShardClosed(ShardId shardId, @Nullable IndexShard indexShard, Settings indexSettings) {
+        if (indexShard != null) {
+            String keyspace = indexShard.indexService().keyspace();
+            for(String type : indexShard.indexService().mapperService().types()) {
+                ElasticSecondaryIndex esi = ElasticSecondaryIndex.elasticSecondayIndices.get(keyspace + "." + SchemaManager.typeToCfName(keyspace, type));
+                if (esi != null)
+                    esi.onShardClosing(indexShard);
+            }
+        }
         try {
             clusterService.publishShardRoutingState(shardId.getIndexName(), ShardRoutingState.UNASSIGNED);
         } catch (IOException e) {
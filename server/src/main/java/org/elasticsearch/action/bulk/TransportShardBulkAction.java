@@ -55,7 +55,9 @@ import org.elasticsearch.index.IndexService;
 import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.engine.VersionConflictEngineException;
 import org.elasticsearch.index.get.GetResult;
+import org.elasticsearch.index.mapper.DocumentMapper;
 import org.elasticsearch.index.mapper.Mapping;
+import org.elasticsearch.index.mapper.ParsedDocument;
 import org.elasticsearch.index.mapper.SourceToParse;
 import org.elasticsearch.index.seqno.SequenceNumbers;
 import org.elasticsearch.index.shard.IndexShard;
@@ -140,12 +142,14 @@ public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequ
     }
 
     private static BulkItemResultHolder executeIndexRequest(final IndexRequest indexRequest,
-                                                            final BulkItemRequest bulkItemRequest,
+                                                            final BulkShardRequest request,
+                                                            final int requestIndex,
                                                             final IndexShard primary,
                                                             final MappingUpdatePerformer mappingUpdater,
                                                             final IndexMetaData metaData,
                                                             final ClusterService clusterService) throws Exception {
-        Engine.IndexResult indexResult = executeIndexRequestOnPrimary(indexRequest, metaData, primary, mappingUpdater, clusterService);
+        final BulkItemRequest bulkItemRequest = request.items()[requestIndex];
+        Engine.IndexResult indexResult = executeIndexRequestOnPrimary(indexRequest, metaData, primary, mappingUpdater, clusterService, request, requestIndex);
         if (indexResult.hasFailure()) {
             return new BulkItemResultHolder(null, indexResult, bulkItemRequest);
         } else {
@@ -243,8 +247,8 @@ public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequ
         switch (itemRequest.opType()) {
             case CREATE:
             case INDEX:
-                responseHolder = executeIndexRequest((IndexRequest) itemRequest, 
-                        request.items()[requestIndex], primary, mappingUpdater, metaData, clusterService);
+                responseHolder = executeIndexRequest((IndexRequest) itemRequest,
+                        request, requestIndex, primary, mappingUpdater, metaData, clusterService);
                 break;
             case UPDATE:
                 responseHolder = executeUpdateRequest((UpdateRequest) itemRequest, primary, metaData, request,
@@ -553,6 +557,18 @@ public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequ
     static Engine.IndexResult executeIndexRequestOnPrimary(IndexRequest request, IndexMetaData metaData, IndexShard primary,
                                                            MappingUpdatePerformer mappingUpdater,
                                                            ClusterService clusterService) throws Exception {
+        return executeIndexRequestOnPrimary(request, metaData, primary, mappingUpdater, clusterService, null, -1);
+    }
+
+    /**
+     * Executes index operation on primary shard after updates mapping if dynamic mappings are found.
+     * When the bulk request is provided, dynamic mapping updates of the following index items are merged into the same
+     * mapping update, so that a bulk of heterogeneous documents triggers one cassandra schema change and one metadata update.
+     */
+    static Engine.IndexResult executeIndexRequestOnPrimary(IndexRequest request, IndexMetaData metaData, IndexShard primary,
+                                                           MappingUpdatePerformer mappingUpdater,
+                                                           ClusterService clusterService,
+                                                           BulkShardRequest bulkRequest, int requestIndex) throws Exception {
         /*
         final SourceToParse sourceToParse =
             SourceToParse.source(request.index(), request.type(), request.id(), request.source(), request.getContentType())
@@ -576,7 +592,9 @@ public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequ
             return clusterService.getQueryManager().insertDocument(request, metaData, update -> {
                 if (update != null) {
                     // blocking Elasticsearch mapping update (required to update cassandra schema before inserting a row, this is the cost of dynamic mapping)
-                    clusterService.blockingMappingUpdate(clusterService.indexService(metaData.getIndex()), request.type(), update.toString());
+                    final IndexService indexService = clusterService.indexService(metaData.getIndex());
+                    final Mapping mergedUpdate = (bulkRequest == null) ? update : mergeDynamicMappingUpdates(indexService, request.type(), update, bulkRequest, requestIndex);
+                    clusterService.blockingMappingUpdate(indexService, request.type(), mergedUpdate.toString());
                 }
                 throw new ReplicationOperation.RetryOnPrimaryException(primary.shardId(), "Mapping update");
             });
@@ -589,6 +607,35 @@ public class TransportShardBulkAction extends TransportWriteAction<BulkShardRequ
         }
     }
 
+    /**
+     * Merge the dynamic mapping updates of the remaining index items of the same type into the update of the current item.
+     * Items failing to parse or introducing conflicting fields are ignored here, and fail or update the mapping when executed.
+     */
+    static Mapping mergeDynamicMappingUpdates(IndexService indexService, String type, Mapping update, BulkShardRequest bulkRequest, int requestIndex) {
+        Mapping merged = update;
+        final DocumentMapper docMapper = indexService.mapperService().documentMapperWithAutoCreate(type).getDocumentMapper();
+        int merges = 0;
+        for (int i = requestIndex + 1; i < bulkRequest.items().length; i++) {
+            final DocWriteRequest item = bulkRequest.items()[i].request();
+            if (!(item instanceof IndexRequest) || !type.equals(item.type()) || isAborted(bulkRequest.items()[i].getPrimaryResponse()))
+                continue;
+            final IndexRequest indexRequest = (IndexRequest) item;
+            try {
+                final ParsedDocument doc = docMapper.parse(SourceToParse.source(indexRequest.index(), type, indexRequest.id(), indexRequest.source(), indexRequest.getContentType()));
+                if (doc.dynamicMappingsUpdate() != null) {
+                    merged = merged.merge(doc.dynamicMappingsUpdate(), false);
+                    merges++;
+                }
+            } catch (Exception e) {
+                logger.trace((Supplier<?>) () -> new ParameterizedMessage("{} ignoring dynamic mapping update of bulk item [{}] id [{}]",
+                        indexService.index(), type, indexRequest.id()), e);
+            }
+        }
+        if (merges > 0 && logger.isDebugEnabled())
+            logger.debug("{} merged {} dynamic mapping updates of type [{}] from bulk item [{}]", indexService.index(), merges, type, requestIndex);
+        return merged;
+    }
+
     private static Engine.DeleteResult executeDeleteRequestOnPrimary(DeleteRequest request, IndexShard primary,
                                                                      MappingUpdatePerformer mappingUpdater, ClusterService clusterService) throws Exception {
         /*
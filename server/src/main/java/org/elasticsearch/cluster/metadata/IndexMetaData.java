@@ -411,6 +411,18 @@ public class IndexMetaData implements Diffable<IndexMetaData>, ToXContentFragmen
     public static final Setting<Boolean> INDEX_INDEX_OPAQUE_STORAGE_SETTING =
             Setting.boolSetting(SETTING_INDEX_OPAQUE_STORAGE, Boolean.getBoolean(ClusterService.SETTING_SYSTEM_INDEX_OPAQUE_STORAGE), Property.Final, Property.IndexScope);
 
+    public static final String SETTING_INDEX_EXPIRATION = INDEX_SETTING_PREFIX+ClusterService.INDEX_EXPIRATION;
+    public static final Setting<Boolean> INDEX_INDEX_EXPIRATION_SETTING =
+            Setting.boolSetting(SETTING_INDEX_EXPIRATION, Boolean.getBoolean(ClusterService.SETTING_SYSTEM_INDEX_EXPIRATION), Property.Dynamic, Property.IndexScope);
+
+    public static final String SETTING_INDEX_DOC_VALUES_UPDATE = INDEX_SETTING_PREFIX+ClusterService.INDEX_DOC_VALUES_UPDATE;
+    public static final Setting<Boolean> INDEX_INDEX_DOC_VALUES_UPDATE_SETTING =
+            Setting.boolSetting(SETTING_INDEX_DOC_VALUES_UPDATE, Boolean.getBoolean(ClusterService.SETTING_SYSTEM_INDEX_DOC_VALUES_UPDATE), Property.Final, Property.IndexScope);
+
+    public static final String SETTING_INDEX_ASYNC_FLUSH = INDEX_SETTING_PREFIX+ClusterService.ASYNC_FLUSH;
+    public static final Setting<Boolean> INDEX_ASYNC_FLUSH_SETTING =
+            Setting.boolSetting(SETTING_INDEX_ASYNC_FLUSH, Boolean.getBoolean(ClusterService.SETTING_SYSTEM_ASYNC_FLUSH), Property.Dynamic, Property.IndexScope);
+
     // hard-coded hash function as of 2.0
     // older indices will read which hash function to use in their index settings
     //private static final HashFunction MURMUR3_HASH_FUNCTION = new Murmur3HashFunction();
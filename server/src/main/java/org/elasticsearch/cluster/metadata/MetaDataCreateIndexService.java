@@ -700,7 +700,7 @@ public class MetaDataCreateIndexService extends AbstractComponent {
                     if (imd.getMappings() != null) {
                         for(ObjectCursor<MappingMetaData> mmd : imd.getMappings().values()) {
                             if (mmd.value.type() != null && !MapperService.DEFAULT_MAPPING.equals(mmd.value.type())) {
-                                clusterService.getSchemaManager().updateTableSchema(ksm, mmd.value.type(), indiceMap, mutations, events);
+                                ksm = clusterService.getSchemaManager().updateTableSchema(ksm, mmd.value.type(), indiceMap, mutations, events);
                             }
                         }
                     }
@@ -443,10 +443,7 @@ public class MetaDataMappingService extends AbstractComponent {
 
                 IndexMetaData.Builder indexMetaDataBuilder = IndexMetaData.builder(indexMetaData);
                 // Mapping updates on a single type may have side-effects on other types so we need to
-                // update mapping metadata on all types
-                KeyspaceMetadata ksm = clusterService.getSchemaManager().createOrUpdateKeyspace(mapperService.keyspace(), 
-                        settings().getAsInt(SETTING_NUMBER_OF_REPLICAS, 0) +1, 
-                        mapperService.getIndexSettings().getIndexMetaData().replication(), mutations, events);
+                // update mapping metadata on all types, the CQL schema is planned once per keyspace below.
                 for (DocumentMapper mapper : mapperService.docMappers(true)) {
                     MappingMetaData mappingMd = new MappingMetaData(mapper.mappingSource());
                     indexMetaDataBuilder.putMapping(mappingMd);
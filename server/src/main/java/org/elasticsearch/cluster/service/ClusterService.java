@@ -27,6 +27,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Multimap;
 
+import org.apache.cassandra.concurrent.DebuggableThreadPoolExecutor;
 import org.apache.cassandra.config.CFMetaData;
 import org.apache.cassandra.config.DatabaseDescriptor;
 import org.apache.cassandra.config.Schema;
@@ -78,6 +79,8 @@ import org.elassandra.cluster.Serializer;
 import org.elassandra.cluster.routing.AbstractSearchStrategy;
 import org.elassandra.cluster.routing.PrimaryFirstSearchStrategy;
 import org.elassandra.discovery.CassandraDiscovery;
+import org.elassandra.gateway.CassandraGatewayService;
+import org.elassandra.index.ElasticSecondaryIndex;
 import org.elassandra.index.ExtendedElasticSecondaryIndex;
 import org.elassandra.index.search.TokenRangesService;
 import org.elassandra.shard.CassandraShardStartedBarrier;
@@ -103,6 +106,8 @@ import org.elasticsearch.cluster.routing.ShardRoutingState;
 import org.elasticsearch.common.SuppressForbidden;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.metrics.CounterMetric;
+import org.elasticsearch.common.metrics.MeanMetric;
 import org.elasticsearch.common.settings.ClusterSettings;
 import org.elasticsearch.common.settings.Setting;
 import org.elasticsearch.common.settings.Setting.Property;
@@ -136,6 +141,8 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
@@ -143,6 +150,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import javax.management.JMX;
 import javax.management.MalformedObjectNameException;
@@ -174,6 +182,11 @@ public class ClusterService extends BaseClusterService {
 
     public static final String COMPRESS_INDEXES_IN_GOSSIP = "compress_x1";
 
+    /**
+     * When true, publish shards states in gossip with the compact binary encoding (requires all nodes to support it).
+     */
+    public static final String BINARY_INDEXES_IN_GOSSIP = "binary_x1";
+
     /**
      * Dynamic mapping update timeout
      */
@@ -246,6 +259,7 @@ public class ClusterService extends BaseClusterService {
 
     /**
      * Index static document (document containing only static columns + partion keys).
+     * Row documents can be searched on static columns with a static_join query, without copying static columns into rows.
      */
     public static final String INDEX_STATIC_DOCUMENT = "index_static_document";
 
@@ -259,8 +273,76 @@ public class ClusterService extends BaseClusterService {
      */
     public static final String INDEX_OPAQUE_STORAGE = "index_opaque_storage";
 
+    /**
+     * Store the expiration time of rows entirely written with a TTL, and periodically remove the expired documents.
+     */
+    public static final String INDEX_EXPIRATION = "index_expiration";
+
+    /**
+     * Index single-valued numeric and date columns mapped with doc values only as updatable numeric doc values, and
+     * apply updates of these columns in place without read-before-write nor re-indexing the document.
+     */
+    public static final String INDEX_DOC_VALUES_UPDATE = "index_doc_values_update";
+
+    /**
+     * Interval in seconds between two removals of expired documents (0 disables the removal).
+     */
+    public static final String EXPIRATION_INTERVAL = "expiration_interval";
+
+    /**
+     * Maximum number of documents parsed on the REST write path waiting to be reused by the local secondary index (0 disables the handoff).
+     */
+    public static final String PARSED_DOCUMENT_HANDOFF_SIZE = "parsed_document_handoff_size";
+
+    /**
+     * Delay in milliseconds to coalesce the refreshes following delete-by-query operations (0 refreshes after each delete-by-query).
+     */
+    public static final String DELETE_BY_QUERY_REFRESH_DELAY = "delete_by_query_refresh_delay";
+
+    /**
+     * Commit the lucene index asynchronously after memtable flushes, the index being rebuilt if the node crashes before the commit.
+     */
+    public static final String ASYNC_FLUSH = "async_flush";
+
+    /**
+     * Delay in milliseconds to coalesce the asynchronous lucene commits following memtable flushes.
+     */
+    public static final String ASYNC_FLUSH_DELAY = "async_flush_delay";
+
+    /**
+     * Size in bytes of indexed rows triggering the asynchronous lucene commit without waiting for the delay.
+     */
+    public static final String ASYNC_FLUSH_SIZE = "async_flush_size";
+
+    /**
+     * Import lucene segments filtered to the streamed token ranges from a source replica rather than indexing the
+     * SSTables streamed on bootstrap or rebuild.
+     */
+    public static final String STREAM_SEGMENTS = "stream_segments";
+
+    /**
+     * Seconds a filtered segments copy is kept on the source node without any chunk request before being removed.
+     */
+    public static final String STREAM_SEGMENTS_SESSION_TIMEOUT = "stream_segments_session_timeout";
+
+    /**
+     * Number of threads indexing the partitions of SSTables streamed by a repair in parallel batches (0 indexes them sequentially).
+     */
+    public static final String REPAIR_INDEXING_THREADS = "repair_indexing_threads";
+
+    /**
+     * Number of partitions of a batch indexed by a repair indexing thread.
+     */
+    public static final String REPAIR_INDEXING_BATCH_SIZE = "repair_indexing_batch_size";
+
+    /**
+     * Maximum number of prepared CQL fetch statements cached on the node (0 to disable).
+     */
+    public static final String FETCH_STATEMENT_CACHE_SIZE = "fetch_statement_cache_size";
+
     // system property settings
     public static final String SETTING_SYSTEM_COMPRESS_INDEXES_IN_GOSSIP = SYSTEM_PREFIX+COMPRESS_INDEXES_IN_GOSSIP;
+    public static final String SETTING_SYSTEM_BINARY_INDEXES_IN_GOSSIP = SYSTEM_PREFIX+BINARY_INDEXES_IN_GOSSIP;
     public static final String SETTING_SYSTEM_MAPPING_UPDATE_TIMEOUT = SYSTEM_PREFIX+MAPPING_UPDATE_TIMEOUT;
     public static final String SETTING_SYSTEM_SECONDARY_INDEX_CLASS = SYSTEM_PREFIX+SECONDARY_INDEX_CLASS;
     public static final String SETTING_SYSTEM_SEARCH_STRATEGY_CLASS = SYSTEM_PREFIX+SEARCH_STRATEGY_CLASS;
@@ -275,6 +357,19 @@ public class ClusterService extends BaseClusterService {
     public static final String SETTING_SYSTEM_TOKEN_RANGES_QUERY_EXPIRE = SYSTEM_PREFIX+TOKEN_RANGES_QUERY_EXPIRE;
     public static final String SETTING_SYSTEM_INDEX_INSERT_ONLY = SYSTEM_PREFIX+INDEX_INSERT_ONLY;
     public static final String SETTING_SYSTEM_INDEX_OPAQUE_STORAGE = SYSTEM_PREFIX+INDEX_OPAQUE_STORAGE;
+    public static final String SETTING_SYSTEM_PARSED_DOCUMENT_HANDOFF_SIZE = SYSTEM_PREFIX+PARSED_DOCUMENT_HANDOFF_SIZE;
+    public static final String SETTING_SYSTEM_DELETE_BY_QUERY_REFRESH_DELAY = SYSTEM_PREFIX+DELETE_BY_QUERY_REFRESH_DELAY;
+    public static final String SETTING_SYSTEM_INDEX_EXPIRATION = SYSTEM_PREFIX+INDEX_EXPIRATION;
+    public static final String SETTING_SYSTEM_INDEX_DOC_VALUES_UPDATE = SYSTEM_PREFIX+INDEX_DOC_VALUES_UPDATE;
+    public static final String SETTING_SYSTEM_EXPIRATION_INTERVAL = SYSTEM_PREFIX+EXPIRATION_INTERVAL;
+    public static final String SETTING_SYSTEM_ASYNC_FLUSH = SYSTEM_PREFIX+ASYNC_FLUSH;
+    public static final String SETTING_SYSTEM_ASYNC_FLUSH_DELAY = SYSTEM_PREFIX+ASYNC_FLUSH_DELAY;
+    public static final String SETTING_SYSTEM_ASYNC_FLUSH_SIZE = SYSTEM_PREFIX+ASYNC_FLUSH_SIZE;
+    public static final String SETTING_SYSTEM_STREAM_SEGMENTS = SYSTEM_PREFIX+STREAM_SEGMENTS;
+    public static final String SETTING_SYSTEM_STREAM_SEGMENTS_SESSION_TIMEOUT = SYSTEM_PREFIX+STREAM_SEGMENTS_SESSION_TIMEOUT;
+    public static final String SETTING_SYSTEM_REPAIR_INDEXING_THREADS = SYSTEM_PREFIX+REPAIR_INDEXING_THREADS;
+    public static final String SETTING_SYSTEM_REPAIR_INDEXING_BATCH_SIZE = SYSTEM_PREFIX+REPAIR_INDEXING_BATCH_SIZE;
+    public static final String SETTING_SYSTEM_FETCH_STATEMENT_CACHE_SIZE = SYSTEM_PREFIX+FETCH_STATEMENT_CACHE_SIZE;
 
     public static final String SETTING_CLUSTER_INCLUDE_NODE_ID = CLUSTER_PREFIX+INCLUDE_NODE_ID;
 
@@ -349,6 +444,26 @@ public class ClusterService extends BaseClusterService {
     protected final PrimaryFirstSearchStrategy primaryFirstSearchStrategy = new PrimaryFirstSearchStrategy();
     protected final Map<String, AbstractSearchStrategy> strategies = new ConcurrentHashMap<String, AbstractSearchStrategy>();
     protected final Map<String, AbstractSearchStrategy.Router> routers = new ConcurrentHashMap<String, AbstractSearchStrategy.Router>();
+    protected final Map<String, RouterEntry> routerEntries = new ConcurrentHashMap<String, RouterEntry>();
+
+    private final CounterMetric routerRebuilds = new CounterMetric();
+    private final CounterMetric routerReuses = new CounterMetric();
+    private final MeanMetric routerRebuildTimeInNanos = new MeanMetric();
+
+    /**
+     * Routers built for an index with the inputs they depend on, so that unchanged routers are not rebuilt.
+     */
+    protected static class RouterEntry {
+        final org.elasticsearch.index.Index index;
+        final List<Object> fingerprint;
+        final PrimaryFirstSearchStrategy.PrimaryFirstRouter primaryFirstRouter;
+
+        RouterEntry(org.elasticsearch.index.Index index, List<Object> fingerprint, PrimaryFirstSearchStrategy.PrimaryFirstRouter primaryFirstRouter) {
+            this.index = index;
+            this.fingerprint = fingerprint;
+            this.primaryFirstRouter = primaryFirstRouter;
+        }
+    }
 
     private final ConsistencyLevel metadataWriteCL = consistencyLevelFromString(System.getProperty("elassandra.metadata.write.cl", "QUORUM"));
     private final ConsistencyLevel metadataReadCL = consistencyLevelFromString(System.getProperty("elassandra.metadata.read.cl", "QUORUM"));
@@ -365,10 +480,19 @@ public class ClusterService extends BaseClusterService {
 
     private final CassandraShardStartedBarrier cassandraShardStartedBarrier;
 
+    private final ThreadPool threadPool;
+    private volatile ThreadPool.Cancellable expirationTask;
+    private volatile DebuggableThreadPoolExecutor repairIndexingExecutor;  // null when repaired sstables are indexed sequentially
+
+    // per index serialized (resp. deserialized) table extensions, to only serialize (resp. parse) modified index metadata.
+    private final Map<String, Pair<IndexMetaData, ByteBuffer>> serializedIndexMetaDataExtensions = new ConcurrentHashMap<>();
+    private final Map<String, Pair<ByteBuffer, IndexMetaData>> parsedIndexMetaDataExtensions = new ConcurrentHashMap<>();
+
     @Inject
     public ClusterService(Settings settings, ClusterSettings clusterSettings, ThreadPool threadPool,
             Map<String, java.util.function.Supplier<ClusterState.Custom>> initialClusterStateCustoms) {
         super(settings, clusterSettings, threadPool, initialClusterStateCustoms);
+        this.threadPool = threadPool;
         this.operationRouting = new OperationRouting(settings, clusterSettings, this);
         this.mappingUpdatedAction = null;
         this.tokenRangeService = new TokenRangesService(settings);
@@ -406,10 +530,28 @@ public class ClusterService extends BaseClusterService {
     protected synchronized void doStart() {
         super.doStart();
         MigrationManager.instance.register(schemaManager.getSchemaListener());
+
+        // remove expired documents of indices having index_expiration.
+        int expirationInterval = Integer.getInteger(SETTING_SYSTEM_EXPIRATION_INTERVAL, 60);
+        if (expirationInterval > 0)
+            expirationTask = threadPool.scheduleWithFixedDelay(ElasticSecondaryIndex::expireDocuments, TimeValue.timeValueSeconds(expirationInterval), ThreadPool.Names.GENERIC);
+
+        // index the partitions of the sstables streamed by a repair in parallel batches.
+        int repairIndexingThreads = Integer.getInteger(SETTING_SYSTEM_REPAIR_INDEXING_THREADS, 0);
+        if (repairIndexingThreads > 0)
+            repairIndexingExecutor = DebuggableThreadPoolExecutor.createWithFixedPoolSize("ElasticRepairIndexer", repairIndexingThreads);
     }
 
     @Override
     protected synchronized void doStop() {
+        if (expirationTask != null) {
+            expirationTask.cancel();
+            expirationTask = null;
+        }
+        if (repairIndexingExecutor != null) {
+            repairIndexingExecutor.shutdown();
+            repairIndexingExecutor = null;
+        }
         MigrationManager.instance.unregister(schemaManager.getSchemaListener());
         super.doStop();
     }
@@ -439,6 +581,13 @@ public class ClusterService extends BaseClusterService {
         return this.schemaManager;
     }
 
+    /**
+     * @return the executor indexing the sstables streamed by a repair, or null when they are indexed sequentially.
+     */
+    public DebuggableThreadPoolExecutor getRepairIndexingExecutor() {
+        return this.repairIndexingExecutor;
+    }
+
     public void setDiscovery(Discovery discovery) {
         this.discovery = (CassandraDiscovery)discovery;
     }
@@ -480,7 +629,43 @@ public class ClusterService extends BaseClusterService {
     }
 
 
+    /**
+     * Inputs of the index routers: index state, keyspace replication, cassandra ring version and status, nodes and their shard state.
+     */
+    private List<Object> routerFingerprint(IndexMetaData indexMetaData, ClusterState state) {
+        KeyspaceMetadata ksm = Schema.instance.getKSMetaData(indexMetaData.keyspace());
+        List<Object> fingerprint = new ArrayList<Object>(9 + 4 * state.nodes().getSize());
+        fingerprint.add(indexMetaData.getIndex()); // index name and UUID, a recreated index gets new routers.
+        fingerprint.add(indexMetaData.getState());
+        fingerprint.add(indexMetaData.keyspace());
+        fingerprint.add(searchStrategyClass(indexMetaData, state));
+        fingerprint.add(ksm == null ? null : ksm.params.replication);
+        fingerprint.add(StorageService.instance.getTokenMetadata().getRingVersion());
+        fingerprint.add(StorageService.instance.getOperationMode());
+        fingerprint.add(state.blocks().hasGlobalBlock(CassandraGatewayService.NO_CASSANDRA_RING_BLOCK));
+        fingerprint.add(state.nodes().getLocalNodeId());
+        TreeMap<String, DiscoveryNode> sortedNodes = new TreeMap<String, DiscoveryNode>();
+        for(DiscoveryNode node : state.nodes())
+            sortedNodes.put(node.getId(), node);
+        for(DiscoveryNode node : sortedNodes.values()) {
+            fingerprint.add(node.getId());
+            fingerprint.add(node.getAddress());
+            fingerprint.add(node.status());
+            fingerprint.add(getShardRoutingStates(indexMetaData.getIndex(), node.uuid()));
+        }
+        return fingerprint;
+    }
+
     public PrimaryFirstSearchStrategy.PrimaryFirstRouter updateRouter(IndexMetaData indexMetaData, ClusterState state) {
+        // reuse routers if none of their inputs has changed.
+        List<Object> fingerprint = routerFingerprint(indexMetaData, state);
+        RouterEntry entry = this.routerEntries.get(indexMetaData.getIndex().getName());
+        if (entry != null && entry.fingerprint.equals(fingerprint) && this.routers.containsKey(indexMetaData.getIndex().getName())) {
+            routerReuses.inc();
+            return entry.primaryFirstRouter;
+        }
+
+        long start = System.nanoTime();
         // update and returns a PrimaryFirstRouter for the build table.
         PrimaryFirstSearchStrategy.PrimaryFirstRouter router = (PrimaryFirstSearchStrategy.PrimaryFirstRouter)this.primaryFirstSearchStrategy.newRouter(indexMetaData.getIndex(), indexMetaData.keyspace(), this::getShardRoutingStates, state);
 
@@ -492,10 +677,41 @@ public class ClusterService extends BaseClusterService {
         } else {
             this.routers.put(indexMetaData.getIndex().getName(), router);
         }
-
+        this.routerEntries.put(indexMetaData.getIndex().getName(), new RouterEntry(indexMetaData.getIndex(), fingerprint, router));
+        routerRebuilds.inc();
+        routerRebuildTimeInNanos.inc(System.nanoTime() - start);
         return router;
     }
 
+    /**
+     * Remove the routers of a deleted index, unless they were already rebuilt for a new index with the same name.
+     */
+    public void removeRouter(org.elasticsearch.index.Index index) {
+        RouterEntry entry = this.routerEntries.get(index.getName());
+        if (entry != null && index.equals(entry.index)) {
+            this.routerEntries.remove(index.getName(), entry);
+            this.routers.remove(index.getName());
+        }
+    }
+
+    /**
+     * Number of index routers rebuilt.
+     */
+    public CounterMetric routerRebuilds() {
+        return this.routerRebuilds;
+    }
+
+    /**
+     * Number of index routers reused because their inputs had not changed.
+     */
+    public CounterMetric routerReuses() {
+        return this.routerReuses;
+    }
+
+    public MeanMetric routerRebuildTimeInNanos() {
+        return this.routerRebuildTimeInNanos;
+    }
+
     public AbstractSearchStrategy.Router getRouter(IndexMetaData indexMetaData, ClusterState state) {
         AbstractSearchStrategy.Router router = this.routers.get(indexMetaData.getIndex().getName());
         return router;
@@ -890,16 +1106,42 @@ public class ClusterService extends BaseClusterService {
                 null;
     }
 
+    /**
+     * Put the serialized IndexMetaData in the table extensions. An unchanged (immutable) IndexMetaData is not serialized again,
+     * so that a mapping update only serializes the affected index.
+     */
     public void putIndexMetaDataExtension(IndexMetaData indexMetaData, Map<String, ByteBuffer> extensions) {
-        try {
-            XContentBuilder builder = XContentFactory.contentBuilder(XContentType.SMILE);
-            builder.startObject();
-            IndexMetaData.Builder.toXContent(indexMetaData, builder, MetaData.CASSANDRA_FORMAT_PARAMS);
-            builder.endObject();
-            extensions.put(getExtensionKey(indexMetaData), ByteBuffer.wrap( BytesReference.toBytes(builder.bytes()) ));
-        } catch (IOException e) {
-            throw new ElasticsearchException("Failed to serialize index metadata", e);
+        String extensionKey = getExtensionKey(indexMetaData);
+        Pair<IndexMetaData, ByteBuffer> serialized = this.serializedIndexMetaDataExtensions.get(extensionKey);
+        if (serialized == null || serialized.left != indexMetaData) {
+            try {
+                XContentBuilder builder = XContentFactory.contentBuilder(XContentType.SMILE);
+                builder.startObject();
+                IndexMetaData.Builder.toXContent(indexMetaData, builder, MetaData.CASSANDRA_FORMAT_PARAMS);
+                builder.endObject();
+                serialized = Pair.create(indexMetaData, ByteBuffer.wrap( BytesReference.toBytes(builder.bytes()) ));
+                this.serializedIndexMetaDataExtensions.put(extensionKey, serialized);
+            } catch (IOException e) {
+                throw new ElasticsearchException("Failed to serialize index metadata", e);
+            }
         }
+        extensions.put(extensionKey, serialized.right.duplicate());
+    }
+
+    /**
+     * Evict the serialized and parsed extension of an index removed from its table.
+     */
+    public void removeIndexMetaDataExtension(IndexMetaData indexMetaData) {
+        final String extensionKey = getExtensionKey(indexMetaData);
+        this.serializedIndexMetaDataExtensions.remove(extensionKey);
+        this.parsedIndexMetaDataExtensions.keySet().removeIf(k -> k.endsWith("/" + extensionKey));
+    }
+
+    /**
+     * Evict the parsed extensions of the tables of a dropped keyspace.
+     */
+    public void removeIndexMetaDataExtensions(String ksName) {
+        this.parsedIndexMetaDataExtensions.keySet().removeIf(k -> k.startsWith(ksName + "."));
     }
 
     public String getExtensionKey(IndexMetaData indexMetaData) {
@@ -914,6 +1156,24 @@ public class ClusterService extends BaseClusterService {
         }
     }
 
+    public static String extensionCacheKey(CFMetaData cfm, String extensionName) {
+        return cfm.ksName + "." + cfm.cfName + "/" + extensionName;
+    }
+
+    /**
+     * Deserialize the IndexMetaData of a table extension, or return the cached one if the extension is unchanged.
+     * @param cacheKey see {@link #extensionCacheKey(CFMetaData, String)}
+     */
+    public IndexMetaData getIndexMetaDataFromExtension(String cacheKey, ByteBuffer value) {
+        Pair<ByteBuffer, IndexMetaData> parsed = this.parsedIndexMetaDataExtensions.get(cacheKey);
+        if (parsed != null && parsed.left.equals(value))
+            return parsed.right;
+
+        IndexMetaData indexMetaData = getIndexMetaDataFromExtension(value);
+        this.parsedIndexMetaDataExtensions.put(cacheKey, Pair.create(value.duplicate(), indexMetaData));
+        return indexMetaData;
+    }
+
     public boolean hasMetaDataTable() {
         KeyspaceMetadata ksm = Schema.instance.getKSMetaData(this.elasticAdminKeyspaceName);
         return ksm != null && ksm.getTableOrViewNullable(ELASTIC_ADMIN_METADATA_TABLE) != null;
@@ -942,33 +1202,7 @@ public class ClusterService extends BaseClusterService {
                 logger.trace("metadata.version={}", metaData.version());
 
                 // load table extensions for tables having an elastic 2i index and having a valid table extension.
-                ListMultimap<String, IndexMetaData> indexMetaDataExtensions = ArrayListMultimap.create();
-                for(String keyspace : Schema.instance.getUserKeyspaces()) {
-                    KeyspaceMetadata ksmx = Schema.instance.getKSMetaData(keyspace);
-                    if (ksmx != null) {
-                        logger.trace("ksmx={} indices={}", ksmx.name, ksmx.existingIndexNames(null));
-                        for(String indexName : ksmx.existingIndexNames(null)) {
-                            Optional<CFMetaData> cfmOption = ksmx.findIndexedTable(indexName);
-                            if (indexName.startsWith("elastic_") && cfmOption.isPresent()) {
-                                CFMetaData cfmx = cfmOption.get();
-                                if (cfmx.params.extensions != null) {
-                                    logger.trace("ks.cf={}.{} metadata.version={} extensions={}", ksmx.name, cfmx.cfName, metaData.version(), cfmx.params.extensions);
-                                    for(Map.Entry<String, ByteBuffer> entry : cfmx.params.extensions.entrySet()) {
-                                        if (isValidTypeExtension(entry.getKey())) {
-                                            IndexMetaData indexMetaData = getIndexMetaDataFromExtension(entry.getValue());
-                                            indexMetaDataExtensions.put(indexMetaData.getIndex().getName(), indexMetaData);
-
-                                            // initialize typeToCfName map for later reverse lookup in ElasticSecondaryIndex
-                                            schemaManager.typeToCfName(cfmx, keyspace, false);
-                                        }
-                                    }
-                                } else {
-                                    logger.warn("No extentions for index.type={}.{}", keyspace, cfmx.cfName);
-                                }
-                            }
-                        }
-                    }
-                }
+                ListMultimap<String, IndexMetaData> indexMetaDataExtensions = readIndexMetaDataExtensions();
 
                 // merge all IndexMetadata for single type to a multi-typed IndexMetaData (for backward compatibility with version 5)
                 MetaData.Builder metaDataBuilder = MetaData.builder(metaData);
@@ -1029,9 +1263,13 @@ public class ClusterService extends BaseClusterService {
         return metaDataBuilder;
     }
 
-    // merge IndexMetaData from table extensions into the provided MetaData.
-    public MetaData.Builder mergeWithTableExtensions(final MetaData.Builder metaDataBuilder)  {
-        final ListMultimap<String, IndexMetaData> indexMetaDataExtensions = ArrayListMultimap.create();
+    /**
+     * Read the IndexMetaData from the table extensions of tables having an elastic 2i index.
+     * Modified extensions are deserialized in parallel, unchanged ones are reused from the cache.
+     */
+    private ListMultimap<String, IndexMetaData> readIndexMetaDataExtensions() {
+        long start = System.nanoTime();
+        List<Pair<String, ByteBuffer>> extensions = new ArrayList<>();
         for(String keyspace : Schema.instance.getUserKeyspaces()) {
             KeyspaceMetadata ksmx = Schema.instance.getKSMetaData(keyspace);
             if (ksmx != null) {
@@ -1043,11 +1281,10 @@ public class ClusterService extends BaseClusterService {
                         CFMetaData cfmx = cfmOption.get();
                         if (cfmx.params.extensions != null) {
                             if (logger.isTraceEnabled())
-                                logger.trace("ks.cf={} extensions={}", ksmx.name, cfmx.cfName,cfmx.params.extensions);
+                                logger.trace("ks.cf={}.{} extensions={}", ksmx.name, cfmx.cfName, cfmx.params.extensions);
                             for(Map.Entry<String, ByteBuffer> entry : cfmx.params.extensions.entrySet()) {
                                 if (isValidTypeExtension(entry.getKey())) {
-                                    IndexMetaData indexMetaData = getIndexMetaDataFromExtension(entry.getValue());
-                                    indexMetaDataExtensions.put(indexMetaData.getIndex().getName(), indexMetaData);
+                                    extensions.add(Pair.create(extensionCacheKey(cfmx, entry.getKey()), entry.getValue()));
 
                                     // initialize typeToCfName map for later reverse lookup in ElasticSecondaryIndex
                                     schemaManager.typeToCfName(cfmx, keyspace, false);
@@ -1060,6 +1297,23 @@ public class ClusterService extends BaseClusterService {
                 }
             }
         }
+
+        // evict the extensions of dropped tables or indices.
+        final Set<String> extensionKeys = extensions.stream().map(p -> p.left).collect(Collectors.toSet());
+        this.parsedIndexMetaDataExtensions.keySet().retainAll(extensionKeys);
+
+        final ListMultimap<String, IndexMetaData> indexMetaDataExtensions = ArrayListMultimap.create();
+        extensions.parallelStream()
+            .map(p -> getIndexMetaDataFromExtension(p.left, p.right))
+            .collect(Collectors.toList())
+            .forEach(imd -> indexMetaDataExtensions.put(imd.getIndex().getName(), imd));
+        logger.debug("{} index metadata extensions read in {} ms", extensions.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return indexMetaDataExtensions;
+    }
+
+    // merge IndexMetaData from table extensions into the provided MetaData.
+    public MetaData.Builder mergeWithTableExtensions(final MetaData.Builder metaDataBuilder)  {
+        final ListMultimap<String, IndexMetaData> indexMetaDataExtensions = readIndexMetaDataExtensions();
         if (indexMetaDataExtensions.size() > 0) {
             for(String indexName : indexMetaDataExtensions.keySet()) {
                 // merge all IndexMetadata for single type to a multi-typed IndexMetaData (for backward compatibility with version 5)
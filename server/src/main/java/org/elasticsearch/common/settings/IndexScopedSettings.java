@@ -99,6 +99,9 @@ public final class IndexScopedSettings extends AbstractScopedSettings {
         IndexMetaData.INDEX_INDEX_STATIC_DOCUMENT_SETTING,
         IndexMetaData.INDEX_INDEX_INSERT_ONLY_SETTING,
         IndexMetaData.INDEX_INDEX_OPAQUE_STORAGE_SETTING,
+        IndexMetaData.INDEX_INDEX_EXPIRATION_SETTING,
+        IndexMetaData.INDEX_INDEX_DOC_VALUES_UPDATE_SETTING,
+        IndexMetaData.INDEX_ASYNC_FLUSH_SETTING,
 
         IndexMetaData.INDEX_FORMAT_SETTING,
         SearchSlowLog.INDEX_SEARCH_SLOWLOG_THRESHOLD_FETCH_DEBUG_SETTING,
@@ -22,6 +22,7 @@ package org.elasticsearch.index.engine;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.message.ParameterizedMessage;
 import org.apache.logging.log4j.util.Supplier;
+import org.apache.lucene.document.Field;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexCommit;
 import org.apache.lucene.index.IndexFileNames;
@@ -301,6 +302,31 @@ public abstract class Engine implements Closeable {
     public  void delete(DeleteByQuery delete) throws EngineException {
         
     }
+
+    /**
+     * Remove all documents by dropping all the segments at once.
+     * @return false if the engine does not support truncate.
+     */
+    public boolean truncate() throws EngineException {
+        return false;
+    }
+
+    /**
+     * Add the segments of a committed lucene index, skipping the documents already indexed under the same uid.
+     * @return false if the engine does not support adding indexes.
+     */
+    public boolean addIndexes(Directory directory, String uidField) throws EngineException {
+        return false;
+    }
+
+    /**
+     * Update in place the numeric doc values of the live document having the uid, when the timestamp is more recent
+     * than the timestamp doc values of the document and than its writes not visible yet.
+     * @return false if the engine does not support doc values updates, or the document must be re-indexed.
+     */
+    public boolean updateNumericDocValues(Term uid, String timestampField, long timestamp, Field... fields) throws EngineException {
+        return false;
+    }
     
     public static class DeleteByQuery {
         private final Query query;
@@ -313,6 +339,7 @@ public abstract class Engine implements Closeable {
 
         private final long startTime;
         private long endTime;
+        private boolean deferredRefresh = false;
 
         public DeleteByQuery(Query query, BytesReference source, @Nullable String[] filteringAliases, @Nullable Query aliasFilter, BitSetProducer parentFilter, Operation.Origin origin, long startTime, String... types) {
             this.query = query;
@@ -375,6 +402,18 @@ public abstract class Engine implements Closeable {
         public long endTime() {
             return this.endTime;
         }
+
+        /**
+         * Allow the engine to coalesce the refresh following this delete-by-query with the ones of the next delete-by-queries.
+         */
+        public DeleteByQuery deferredRefresh(boolean deferredRefresh) {
+            this.deferredRefresh = deferredRefresh;
+            return this;
+        }
+
+        public boolean deferredRefresh() {
+            return this.deferredRefresh;
+        }
     }
     
     /**
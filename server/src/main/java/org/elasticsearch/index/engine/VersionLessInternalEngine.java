@@ -20,6 +20,7 @@
 package org.elasticsearch.index.engine;
 
 import org.apache.logging.log4j.Logger;
+import org.apache.lucene.document.Field;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexCommit;
 import org.apache.lucene.index.IndexFormatTooOldException;
@@ -28,13 +29,19 @@ import org.apache.lucene.index.IndexWriter;
 import org.apache.lucene.index.IndexWriterConfig;
 import org.apache.lucene.index.KeepOnlyLastCommitDeletionPolicy;
 import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.LiveIndexWriterConfig;
 import org.apache.lucene.index.MergePolicy;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.PostingsEnum;
 import org.apache.lucene.index.SegmentCommitInfo;
 import org.apache.lucene.index.SegmentInfos;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ReferenceManager;
@@ -44,6 +51,8 @@ import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.store.AlreadyClosedException;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.LockObtainFailedException;
+import org.apache.lucene.util.Bits;
+import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.InfoStream;
 import org.elasticsearch.ExceptionsHelper;
@@ -51,6 +60,8 @@ import org.elasticsearch.Version;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.SuppressForbidden;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.UUIDs;
 import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.common.lucene.LoggerInfoStream;
@@ -61,7 +72,9 @@ import org.elasticsearch.common.lucene.uid.VersionsAndSeqNoResolver;
 import org.elasticsearch.common.lucene.uid.VersionsAndSeqNoResolver.DocIdAndSeqNo;
 import org.elasticsearch.common.metrics.CounterMetric;
 import org.elasticsearch.common.metrics.MeanMetric;
+import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.concurrent.AbstractRunnable;
+import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
 import org.elasticsearch.common.util.concurrent.ReleasableLock;
 import org.elasticsearch.index.IndexSettings;
 import org.elasticsearch.index.VersionType;
@@ -91,6 +104,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -138,6 +152,9 @@ public class VersionLessInternalEngine extends Engine {
     private final AtomicInteger throttleRequestCount = new AtomicInteger();
     private final EngineConfig.OpenMode openMode;
     private final AtomicBoolean pendingTranslogRecovery = new AtomicBoolean(false);
+    private static final long DELETE_BY_QUERY_REFRESH_DELAY = Long.getLong(ClusterService.SETTING_SYSTEM_DELETE_BY_QUERY_REFRESH_DELAY, 100);
+    private final AtomicBoolean pendingDeleteByQueryRefresh = new AtomicBoolean(false);
+    private final PendingWrites pendingWrites; // null when doc values are not updated in place
     public static final String MAX_UNSAFE_AUTO_ID_TIMESTAMP_COMMIT_ID = "max_unsafe_auto_id_timestamp";
     private final AtomicLong maxUnsafeAutoIdTimestamp = new AtomicLong(-1);
     private final CounterMetric numVersionLookups = new CounterMetric();
@@ -165,6 +182,7 @@ public class VersionLessInternalEngine extends Engine {
             maxUnsafeAutoIdTimestamp.set(Long.MAX_VALUE);
         }
         this.uidField = engineConfig.getIndexSettings().isSingleType() ? IdFieldMapper.NAME : UidFieldMapper.NAME;
+        this.pendingWrites = engineConfig.getIndexSettings().getValue(IndexMetaData.INDEX_INDEX_DOC_VALUES_UPDATE_SETTING) ? new PendingWrites() : null;
         final TranslogDeletionPolicy translogDeletionPolicy = new TranslogDeletionPolicy(
                 engineConfig.getIndexSettings().getTranslogRetentionSize().getBytes(),
                 engineConfig.getIndexSettings().getTranslogRetentionAge().getMillis()
@@ -221,6 +239,8 @@ public class VersionLessInternalEngine extends Engine {
             this.internalSearcherManager = internalSearcherManager;
             this.externalSearcherManager = externalSearcherManager;
             //internalSearcherManager.addListener(versionMap);
+            if (pendingWrites != null)
+                internalSearcherManager.addListener(pendingWrites);
             assert pendingTranslogRecovery.get() == false : "translog recovery can't be pending before we set it";
             // don't allow commits until we are done with recovering
             pendingTranslogRecovery.set(openMode == EngineConfig.OpenMode.OPEN_INDEX_AND_TRANSLOG);
@@ -1021,6 +1041,8 @@ public class VersionLessInternalEngine extends Engine {
                 //assert assertDocDoesNotExist(index, canOptimizeAddDocument(index) == false);
                 index(index.docs(), indexWriter);
             }
+            if (pendingWrites != null)
+                pendingWrites.onWrite(index.uid().bytes(), Long.MAX_VALUE);
             /*
             versionMap.maybePutUnderLock(index.uid().bytes(),
                 new VersionValue(plan.versionForIndexing, plan.seqNoForIndexing, index.primaryTerm()));
@@ -1301,6 +1323,8 @@ public class VersionLessInternalEngine extends Engine {
                 // any exception that comes from this is a either an ACE or a fatal exception there
                 // can't be any document failures  coming from this
                 indexWriter.deleteDocuments(delete.uid());
+                if (pendingWrites != null)
+                    pendingWrites.onWrite(delete.uid().bytes(), Long.MAX_VALUE);
             }
             /*
             versionMap.putUnderLock(delete.uid().bytes(),
@@ -2362,6 +2386,201 @@ public class VersionLessInternalEngine extends Engine {
         }
     }
 
+    /**
+     * Switch to an empty index rather than marking every document as deleted. The commit releases the files
+     * of the dropped segments, removed from disk once no more referenced by a searcher.
+     */
+    @Override
+    public boolean truncate() throws EngineException {
+        try (ReleasableLock lock = writeLock.acquire()) {
+            ensureOpen();
+            indexWriter.deleteAll();
+            if (pendingWrites != null)
+                pendingWrites.onDeleteByQuery();
+        } catch (IOException e) {
+            maybeFailEngine("truncate", e);
+            throw new EngineException(shardId, "failed to truncate", e);
+        }
+        // commit and refresh outside of the write lock
+        flush(true, true);
+        refresh("truncate");
+        return true;
+    }
+
+    /**
+     * Add the segments of a committed index, the documents with a uid already indexed locally being deleted from the added
+     * index before copying its files. Indexing is blocked until the segments are added so that no document indexed in the
+     * meantime is duplicated.
+     */
+    @Override
+    public boolean addIndexes(Directory directory, String uidField) throws EngineException {
+        try (ReleasableLock lock = writeLock.acquire()) {
+            ensureOpen();
+            int duplicates = 0;
+            try (DirectoryReader local = DirectoryReader.open(indexWriter);
+                 DirectoryReader incoming = DirectoryReader.open(directory)) {
+                IndexWriter writer = null;
+                try {
+                    for (LeafReaderContext ctx : incoming.leaves()) {
+                        Terms terms = ctx.reader().terms(uidField);
+                        if (terms == null)
+                            continue;
+                        TermsEnum termsEnum = terms.iterator();
+                        for (BytesRef uid = termsEnum.next(); uid != null; uid = termsEnum.next()) {
+                            if (isLive(local, uidField, uid)) {
+                                if (writer == null)
+                                    writer = new IndexWriter(directory, new IndexWriterConfig(null)
+                                        .setOpenMode(IndexWriterConfig.OpenMode.APPEND)
+                                        .setCodec(engineConfig.getCodec()));
+                                writer.deleteDocuments(new Term(uidField, BytesRef.deepCopyOf(uid)));
+                                duplicates++;
+                            }
+                        }
+                    }
+                    if (writer != null)
+                        writer.commit();
+                } finally {
+                    IOUtils.close(writer);
+                }
+            }
+            logger.debug("adding indexes from [{}], skipping [{}] documents already indexed", directory, duplicates);
+            indexWriter.addIndexes(directory);
+        } catch (IOException e) {
+            maybeFailEngine("add_indexes", e);
+            throw new EngineException(shardId, "failed to add indexes", e);
+        }
+        // commit and refresh outside of the write lock
+        flush(true, true);
+        refresh("add_indexes");
+        return true;
+    }
+
+    /**
+     * Numeric doc values are updated in place for the documents live in the last internal refresh and already having a
+     * value for the updated fields, the conflicts with writes not visible yet being checked with {@link PendingWrites}.
+     */
+    @Override
+    public boolean updateNumericDocValues(Term uid, String timestampField, long timestamp, Field... fields) throws EngineException {
+        if (pendingWrites == null)
+            return false;
+        try (ReleasableLock lock = readLock.acquire()) {
+            ensureOpen();
+            if (pendingWrites.timestamp(uid.bytes()) >= timestamp)
+                return false;
+            final IndexSearcher searcher = internalSearcherManager.acquire();
+            try {
+                if (!hasOlderNumericDocValues(searcher.getIndexReader(), uid, timestampField, timestamp, fields))
+                    return false;
+            } finally {
+                internalSearcherManager.release(searcher);
+            }
+            indexWriter.updateDocValues(uid, fields);
+            pendingWrites.onWrite(uid.bytes(), timestamp);
+            return true;
+        } catch (IOException e) {
+            maybeFailEngine("update_doc_values", e);
+            throw new EngineException(shardId, "failed to update doc values", e);
+        }
+    }
+
+    /**
+     * @return true if the live document having the uid has a timestamp older than the timestamp, and a numeric doc value
+     * for all fields, so that the _field_names of the document remain accurate.
+     */
+    private static boolean hasOlderNumericDocValues(IndexReader reader, Term uid, String timestampField, long timestamp, Field... fields) throws IOException {
+        for (LeafReaderContext ctx : reader.leaves()) {
+            Terms terms = ctx.reader().terms(uid.field());
+            if (terms == null)
+                continue;
+            TermsEnum termsEnum = terms.iterator();
+            if (termsEnum.seekExact(uid.bytes())) {
+                Bits liveDocs = ctx.reader().getLiveDocs();
+                NumericDocValues timestamps = ctx.reader().getNumericDocValues(timestampField);
+                if (timestamps == null)
+                    continue;
+                PostingsEnum postings = termsEnum.postings(null, PostingsEnum.NONE);
+                for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+                    // nested documents share the uid of their root document, but have no timestamp.
+                    if ((liveDocs == null || liveDocs.get(doc)) && timestamps.advanceExact(doc)) {
+                        if (timestamps.longValue() >= timestamp)
+                            return false;
+                        for (Field field : fields) {
+                            NumericDocValues values = ctx.reader().getNumericDocValues(field.name());
+                            if (values == null || !values.advanceExact(doc))
+                                return false;
+                        }
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Uids written since the last internal refresh, for which the refreshed reader is not up to date. Indexed or deleted
+     * documents are re-indexed on the next update, while in-place updates must be more recent than the previous ones.
+     * Writes are recorded with the refresh generation read after the lucene operation, so that a write recorded
+     * before a refresh started is visible once the refresh completes.
+     */
+    private static final class PendingWrites implements ReferenceManager.RefreshListener {
+        private final ConcurrentMap<BytesRef, long[]> writes = ConcurrentCollections.newConcurrentMap(); // uid -> { generation, timestamp }
+        private final AtomicLong generation = new AtomicLong();
+        private volatile long refreshing = -1;
+        private volatile long refreshed = -1;
+        private volatile long deleteByQuery = -1;
+
+        void onWrite(BytesRef uid, long timestamp) {
+            writes.merge(BytesRef.deepCopyOf(uid), new long[] { generation.get(), timestamp },
+                    (a, b) -> new long[] { Math.max(a[0], b[0]), Math.max(a[1], b[1]) });
+        }
+
+        void onDeleteByQuery() {
+            deleteByQuery = generation.get();
+        }
+
+        /**
+         * @return the timestamp of the writes of the uid not visible in the refreshed reader, Long.MIN_VALUE if none.
+         */
+        long timestamp(BytesRef uid) {
+            final long visible = refreshed;
+            if (deleteByQuery > visible)
+                return Long.MAX_VALUE;
+            final long[] write = writes.get(uid);
+            return (write == null || write[0] <= visible) ? Long.MIN_VALUE : write[1];
+        }
+
+        @Override
+        public void beforeRefresh() throws IOException {
+            refreshing = generation.getAndIncrement();
+        }
+
+        @Override
+        public void afterRefresh(boolean didRefresh) throws IOException {
+            final long visible = refreshing;
+            refreshed = visible;
+            writes.values().removeIf(write -> write[0] <= visible);
+        }
+    }
+
+    private static boolean isLive(DirectoryReader reader, String field, BytesRef term) throws IOException {
+        for (LeafReaderContext ctx : reader.leaves()) {
+            Terms terms = ctx.reader().terms(field);
+            if (terms == null)
+                continue;
+            TermsEnum termsEnum = terms.iterator();
+            if (termsEnum.seekExact(term)) {
+                Bits liveDocs = ctx.reader().getLiveDocs();
+                PostingsEnum postings = termsEnum.postings(null, PostingsEnum.NONE);
+                for (int doc = postings.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = postings.nextDoc()) {
+                    if (liveDocs == null || liveDocs.get(doc))
+                        return true;
+                }
+            }
+        }
+        return false;
+    }
+
     private void innerDelete(DeleteByQuery delete) throws EngineException {
         try {
             Query query = delete.query();
@@ -2376,6 +2595,8 @@ public class VersionLessInternalEngine extends Engine {
             }
 
             indexWriter.deleteDocuments(query);
+            if (pendingWrites != null)
+                pendingWrites.onDeleteByQuery();
             //translog.add(20L);  // arbitrary delete sizeInBytes=20 
         } catch (Exception t) {
             maybeFailEngine("delete_by_query", t);
@@ -2384,6 +2605,35 @@ public class VersionLessInternalEngine extends Engine {
 
         // TODO: This is heavy, since we refresh, but we must do this because we don't know which documents were in fact deleted (i.e., our
         // versionMap isn't updated), so we must force a cutover to a new reader to "see" the deletions:
-        refresh("delete_by_query");
+        if (delete.deferredRefresh() && DELETE_BY_QUERY_REFRESH_DELAY > 0)
+            scheduleRefreshAfterDeleteByQuery();
+        else
+            refresh("delete_by_query");
+    }
+
+    /**
+     * Schedule one refresh for all the deferred delete-by-queries of the next {@link ClusterService#DELETE_BY_QUERY_REFRESH_DELAY}
+     * milliseconds. Buffered deletes are applied in order by the IndexWriter, so deferring the refresh only delays their visibility.
+     */
+    private void scheduleRefreshAfterDeleteByQuery() {
+        if (pendingDeleteByQueryRefresh.compareAndSet(false, true)) {
+            engineConfig.getThreadPool().schedule(TimeValue.timeValueMillis(DELETE_BY_QUERY_REFRESH_DELAY), ThreadPool.Names.REFRESH, new AbstractRunnable() {
+                @Override
+                public void onFailure(Exception e) {
+                    if (isClosed.get() == false) {
+                        logger.warn("failed to refresh after delete_by_query", e);
+                    }
+                }
+
+                @Override
+                protected void doRun() throws Exception {
+                    // clear before refreshing, so that a delete-by-query during the refresh schedules another one.
+                    pendingDeleteByQueryRefresh.set(false);
+                    if (isClosed.get() == false) {
+                        refresh("delete_by_query");
+                    }
+                }
+            });
+        }
     }
 }
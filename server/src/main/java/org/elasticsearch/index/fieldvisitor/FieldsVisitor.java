@@ -65,6 +65,7 @@ public class FieldsVisitor extends StoredFieldVisitor {
     private final boolean loadSource;
     private final Set<String> requiredFields;
     protected BytesReference source;
+    protected boolean sourceFiltered; // true when the _source was filtered by the fetch source context while rendered
     protected String type, id;
     protected Map<String, List<Object>> fieldsValues;
     protected List<ByteBuffer> values;
@@ -198,6 +199,16 @@ public class FieldsVisitor extends StoredFieldVisitor {
         return this;
     }
 
+    public FieldsVisitor source(BytesReference _source, boolean filtered) {
+        this.source = _source;
+        this.sourceFiltered = filtered;
+        return this;
+    }
+
+    public boolean sourceFiltered() {
+        return this.sourceFiltered;
+    }
+
     public Uid uid() {
         if (id == null) {
             return null;
@@ -226,6 +237,7 @@ public class FieldsVisitor extends StoredFieldVisitor {
     public void reset() {
         if (fieldsValues != null) fieldsValues.clear();
         source = null;
+        sourceFiltered = false;
         type = null;
         id = null;
 
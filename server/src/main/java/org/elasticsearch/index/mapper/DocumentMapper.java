@@ -211,14 +211,13 @@ public class DocumentMapper implements ToXContentFragment {
         this.type = mapping.root().name();
         this.typeText = new Text(this.type);
         final IndexSettings indexSettings = mapperService.getIndexSettings();
+        if (mapping.metadataMapper(ParentFieldMapper.class).active()) {
+            // mark the routing field mapper as required, on a copy because the mapping may be shared by several indices
+            mapping = mapping.withMetadataMapper(mapping.metadataMapper(RoutingFieldMapper.class).asRequired());
+        }
         this.mapping = mapping;
         this.documentParser = new DocumentParser(indexSettings, mapperService.documentMapperParser(), this);
 
-        if (metadataMapper(ParentFieldMapper.class).active()) {
-            // mark the routing field mapper as required
-            metadataMapper(RoutingFieldMapper.class).markAsRequired();
-        }
-
         // collect all the mappers for this type
         List<ObjectMapper> newObjectMappers = new ArrayList<>();
         List<FieldMapper> newFieldMappers = new ArrayList<>();
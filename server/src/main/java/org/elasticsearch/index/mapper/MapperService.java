@@ -49,6 +49,7 @@ import org.apache.lucene.analysis.DelegatingAnalyzerWrapper;
 import org.apache.lucene.index.Term;
 import org.elassandra.cluster.SchemaManager;
 import org.elassandra.index.ElasticSecondaryIndex;
+import org.elassandra.index.VirtualIndexMappings;
 import org.elasticsearch.ElasticsearchGenerationException;
 import org.elasticsearch.Version;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
@@ -163,6 +164,8 @@ public class MapperService extends AbstractIndexComponent implements Closeable {
 
     final MapperRegistry mapperRegistry;
 
+    private volatile VirtualIndexMappings virtualIndexMappings;
+
     public MapperService(IndexSettings indexSettings, IndexAnalyzers indexAnalyzers, NamedXContentRegistry xContentRegistry,
                          SimilarityService similarityService, MapperRegistry mapperRegistry,
                          Supplier<QueryShardContext> queryShardContextSupplier) {
@@ -197,6 +200,13 @@ public class MapperService extends AbstractIndexComponent implements Closeable {
         return getIndexSettings().getKeyspace();
     }
 
+    /**
+     * Share parsed mappings with other indices of the same virtual index.
+     */
+    public void setVirtualIndexMappings(@Nullable VirtualIndexMappings virtualIndexMappings) {
+        this.virtualIndexMappings = virtualIndexMappings;
+    }
+
     public String table() {
         return getIndexSettings().getTable();
     }
@@ -511,8 +521,9 @@ public class MapperService extends AbstractIndexComponent implements Closeable {
                     && mappers.containsKey(type) == false;
 
             try {
-                DocumentMapper documentMapper =
-                    documentParser.parse(type, entry.getValue(), applyDefault ? defaultMappingSourceOrLastStored : null);
+                DocumentMapper documentMapper = applyDefault ?
+                    documentParser.parse(type, entry.getValue(), defaultMappingSourceOrLastStored) :
+                    parseOrShare(type, entry.getValue());
                 documentMappers.add(documentMapper);
             } catch (Exception e) {
                 throw new MapperParsingException("Failed to parse mapping [{}]: {}", e, entry.getKey(), e.getMessage());
@@ -522,6 +533,25 @@ public class MapperService extends AbstractIndexComponent implements Closeable {
         return internalMerge(defaultMapper, defaultMappingSource, documentMappers, reason, updateAllTypes);
     }
 
+    /**
+     * Parse the mapping, or reuse the mapper tree already parsed for another index of the same virtual index.
+     */
+    private DocumentMapper parseOrShare(String type, CompressedXContent mappingSource) throws MapperParsingException {
+        final VirtualIndexMappings virtualIndexMappings = this.virtualIndexMappings;
+        final String virtualIndex = indexSettings.getIndexMetaData().virtualIndex();
+        if (virtualIndexMappings == null || virtualIndex == null || !VirtualIndexMappings.isShareable(indexSettings))
+            return documentParser.parse(type, mappingSource, null);
+
+        Mapping mapping = virtualIndexMappings.get(virtualIndex, type, mappingSource, indexSettings);
+        if (mapping != null) {
+            logger.debug("[{}] sharing mapping of type [{}] from virtual index [{}]", index().getName(), type, virtualIndex);
+            return new DocumentMapper(this, mapping);
+        }
+        DocumentMapper documentMapper = documentParser.parse(type, mappingSource, null);
+        virtualIndexMappings.put(virtualIndex, type, mappingSource, indexSettings, documentMapper.mapping());
+        return documentMapper;
+    }
+
     static void validateTypeName(String type) {
         if (type.length() == 0) {
             throw new InvalidTypeNameException("mapping type name is empty");
@@ -88,6 +88,20 @@ public final class Mapping implements ToXContentFragment {
         return this.metadataMappers;
     }
     
+    /**
+     * @return this mapping if it already contains the metadata mapper, otherwise a copy replacing the metadata mapper of the same class.
+     */
+    public Mapping withMetadataMapper(MetadataFieldMapper metadataMapper) {
+        if (metadataMappersMap.get(metadataMapper.getClass()) == metadataMapper)
+            return this;
+        MetadataFieldMapper[] updatedMeta = Arrays.copyOf(metadataMappers, metadataMappers.length);
+        for (int i = 0; i < updatedMeta.length; ++i) {
+            if (updatedMeta[i].getClass() == metadataMapper.getClass())
+                updatedMeta[i] = metadataMapper;
+        }
+        return new Mapping(indexCreated, root, updatedMeta, meta);
+    }
+
     /** @see DocumentMapper#merge(Mapping, boolean) */
     public Mapping merge(Mapping mergeWith, boolean updateAllTypes) {
         RootObjectMapper mergedRoot = root.merge(mergeWith.root, updateAllTypes);
@@ -149,8 +149,15 @@ public class RoutingFieldMapper extends MetadataFieldMapper {
         this.required = required;
     }
 
-    public void markAsRequired() {
-        this.required = true;
+    /**
+     * @return this mapper if the routing is already required, otherwise a copy requiring the routing.
+     */
+    public RoutingFieldMapper asRequired() {
+        if (required)
+            return this;
+        RoutingFieldMapper copy = (RoutingFieldMapper) clone();
+        copy.required = true;
+        return copy;
     }
 
     public boolean required() {
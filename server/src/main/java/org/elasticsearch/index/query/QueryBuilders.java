@@ -384,6 +384,15 @@ public final class QueryBuilders {
         return new ConstantScoreQueryBuilder(queryBuilder);
     }
 
+    /**
+     * A query matching the documents of the partitions having a static document matching the query.
+     *
+     * @param queryBuilder The query to apply on static documents
+     */
+    public static StaticJoinQueryBuilder staticJoinQuery(QueryBuilder queryBuilder) {
+        return new StaticJoinQueryBuilder(queryBuilder);
+    }
+
     /**
      * A function_score query with no functions.
      *
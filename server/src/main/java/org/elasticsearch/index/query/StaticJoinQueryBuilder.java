@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.index.query;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.search.join.JoinUtil;
+import org.apache.lucene.search.join.ScoreMode;
+import org.elassandra.index.mapper.internal.TokenFieldMapper;
+import org.elasticsearch.common.ParseField;
+import org.elasticsearch.common.ParsingException;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentParser;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Match the documents of the partitions having a document matching the inner query, joined on the partition token.
+ * <p>
+ * With index_static_document=true and index_static_columns=false, static columns are only indexed in the static
+ * document of each partition, so updating a static column touches one document whatever the number of rows in the
+ * partition. This query matches the row documents on conditions on static columns at search time, the static
+ * document of the partition matching too.
+ */
+public class StaticJoinQueryBuilder extends AbstractQueryBuilder<StaticJoinQueryBuilder> {
+    public static final String NAME = "static_join";
+
+    private static final ParseField QUERY_FIELD = new ParseField("query");
+
+    private final QueryBuilder query;
+
+    /**
+     * @param query The query matching the static documents of the joined partitions.
+     */
+    public StaticJoinQueryBuilder(QueryBuilder query) {
+        if (query == null) {
+            throw new IllegalArgumentException("inner clause [query] cannot be null.");
+        }
+        this.query = query;
+    }
+
+    /**
+     * Read from a stream.
+     */
+    public StaticJoinQueryBuilder(StreamInput in) throws IOException {
+        super(in);
+        query = in.readNamedWriteable(QueryBuilder.class);
+    }
+
+    @Override
+    protected void doWriteTo(StreamOutput out) throws IOException {
+        out.writeNamedWriteable(query);
+    }
+
+    /**
+     * @return the query matching the static documents.
+     */
+    public QueryBuilder query() {
+        return this.query;
+    }
+
+    @Override
+    protected void doXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject(NAME);
+        builder.field(QUERY_FIELD.getPreferredName());
+        query.toXContent(builder, params);
+        printBoostAndQueryName(builder);
+        builder.endObject();
+    }
+
+    public static StaticJoinQueryBuilder fromXContent(XContentParser parser) throws IOException {
+        QueryBuilder query = null;
+        String queryName = null;
+        float boost = AbstractQueryBuilder.DEFAULT_BOOST;
+
+        String currentFieldName = null;
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if (token == XContentParser.Token.START_OBJECT) {
+                if (QUERY_FIELD.match(currentFieldName)) {
+                    if (query != null) {
+                        throw new ParsingException(parser.getTokenLocation(), "[" + NAME + "] accepts only one 'query' element.");
+                    }
+                    query = parseInnerQueryBuilder(parser);
+                } else {
+                    throw new ParsingException(parser.getTokenLocation(), "[" + NAME + "] query does not support [" + currentFieldName + "]");
+                }
+            } else if (token.isValue()) {
+                if (AbstractQueryBuilder.NAME_FIELD.match(currentFieldName)) {
+                    queryName = parser.text();
+                } else if (AbstractQueryBuilder.BOOST_FIELD.match(currentFieldName)) {
+                    boost = parser.floatValue();
+                } else {
+                    throw new ParsingException(parser.getTokenLocation(), "[" + NAME + "] query does not support [" + currentFieldName + "]");
+                }
+            } else {
+                throw new ParsingException(parser.getTokenLocation(), "unexpected token [" + token + "]");
+            }
+        }
+        if (query == null) {
+            throw new ParsingException(parser.getTokenLocation(), "[" + NAME + "] requires a 'query' element");
+        }
+
+        StaticJoinQueryBuilder staticJoinQueryBuilder = new StaticJoinQueryBuilder(query);
+        staticJoinQueryBuilder.boost(boost);
+        staticJoinQueryBuilder.queryName(queryName);
+        return staticJoinQueryBuilder;
+    }
+
+    @Override
+    protected Query doToQuery(QueryShardContext context) throws IOException {
+        return new StaticJoinQuery(query.toFilter(context));
+    }
+
+    @Override
+    public String getWriteableName() {
+        return NAME;
+    }
+
+    @Override
+    protected int doHashCode() {
+        return Objects.hash(query);
+    }
+
+    @Override
+    protected boolean doEquals(StaticJoinQueryBuilder other) {
+        return Objects.equals(query, other.query);
+    }
+
+    @Override
+    protected QueryBuilder doRewrite(QueryRewriteContext queryRewriteContext) throws IOException {
+        QueryBuilder rewrite = query.rewrite(queryRewriteContext);
+        if (rewrite instanceof MatchNoneQueryBuilder) {
+            return rewrite; // no partition to join
+        }
+        if (rewrite != query) {
+            return new StaticJoinQueryBuilder(rewrite);
+        }
+        return this;
+    }
+
+    @Override
+    protected void extractInnerHitBuilders(Map<String, InnerHitContextBuilder> innerHits) {
+        InnerHitContextBuilder.extractInnerHits(query, innerHits);
+    }
+
+    /**
+     * Collect the tokens of the documents matching the static query on the whole searcher, and match the documents
+     * having one of these tokens. The returned weight is built on the resolved token set, so that the query cache
+     * never reuses a per-segment result computed from other segments.
+     */
+    static final class StaticJoinQuery extends Query {
+        final Query staticQuery;
+
+        StaticJoinQuery(Query staticQuery) {
+            this.staticQuery = staticQuery;
+        }
+
+        @Override
+        public Query rewrite(IndexReader reader) throws IOException {
+            Query rewritten = staticQuery.rewrite(reader);
+            if (rewritten != staticQuery)
+                return new StaticJoinQuery(rewritten);
+            return super.rewrite(reader);
+        }
+
+        @Override
+        public Weight createWeight(IndexSearcher searcher, boolean needsScores, float boost) throws IOException {
+            Query joinQuery = JoinUtil.createJoinQuery(TokenFieldMapper.NAME, true, TokenFieldMapper.NAME, Long.class,
+                    staticQuery, searcher, ScoreMode.None);
+            return searcher.rewrite(new ConstantScoreQuery(joinQuery)).createWeight(searcher, needsScores, boost);
+        }
+
+        @Override
+        public String toString(String field) {
+            return NAME + "(" + staticQuery.toString(field) + ")";
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return sameClassAs(other) && staticQuery.equals(((StaticJoinQuery) other).staticQuery);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * classHash() + staticQuery.hashCode();
+        }
+    }
+}
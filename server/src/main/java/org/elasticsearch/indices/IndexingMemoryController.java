@@ -19,6 +19,10 @@
 
 package org.elasticsearch.indices;
 
+import org.apache.cassandra.config.Schema;
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.db.Memtable;
 import org.apache.logging.log4j.message.ParameterizedMessage;
 import org.apache.logging.log4j.util.Supplier;
 import org.apache.lucene.store.AlreadyClosedException;
@@ -46,6 +50,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -75,12 +80,26 @@ public class IndexingMemoryController extends AbstractComponent implements Index
     /** How frequently we check indexing memory usage (default: 5 seconds). */
     public static final Setting<TimeValue> SHARD_MEMORY_INTERVAL_TIME_SETTING = Setting.positiveTimeSetting("indices.memory.interval", TimeValue.timeValueSeconds(5), Property.NodeScope);
 
+    /**
+     * Share one heap budget between the indexing buffers and the Cassandra memtables, the indexing buffer size plus the memtable heap space
+     * (default: false). Indexing buffers get the part of the budget not used by memtables, and the largest memtable is flushed when both
+     * exceed the budget.
+     */
+    public static final Setting<Boolean> SHARE_WITH_MEMTABLES_SETTING = Setting.boolSetting("indices.memory.share_with_memtables", false, Property.NodeScope);
+
     private final ThreadPool threadPool;
 
     private final Iterable<IndexShard> indexShards;
 
     private final ByteSizeValue indexingBuffer;
 
+    private final boolean shareWithMemtables;
+
+    /** Floor of the indexing buffers budget when shared with memtables */
+    private final long minSharedIndexingBuffer;
+
+    private Future<?> pendingMemtableFlush;
+
     private final TimeValue inactiveTime;
     private final TimeValue interval;
 
@@ -114,6 +133,8 @@ public class IndexingMemoryController extends AbstractComponent implements Index
             }
         }
         this.indexingBuffer = indexingBuffer;
+        this.shareWithMemtables = SHARE_WITH_MEMTABLES_SETTING.get(this.settings);
+        this.minSharedIndexingBuffer = Math.min(indexingBuffer.getBytes(), MIN_INDEX_BUFFER_SIZE_SETTING.get(this.settings).getBytes());
 
         this.inactiveTime = SHARD_INACTIVE_TIME_SETTING.get(this.settings);
         // we need to have this relatively small to free up heap quickly enough
@@ -121,10 +142,11 @@ public class IndexingMemoryController extends AbstractComponent implements Index
 
         this.statusChecker = new ShardsIndicesStatusChecker();
 
-        logger.debug("using indexing buffer size [{}] with {} [{}], {} [{}]",
+        logger.debug("using indexing buffer size [{}] with {} [{}], {} [{}], {} [{}]",
                      this.indexingBuffer,
                      SHARD_INACTIVE_TIME_SETTING.getKey(), this.inactiveTime,
-                     SHARD_MEMORY_INTERVAL_TIME_SETTING.getKey(), this.interval);
+                     SHARD_MEMORY_INTERVAL_TIME_SETTING.getKey(), this.interval,
+                     SHARE_WITH_MEMTABLES_SETTING.getKey(), this.shareWithMemtables);
         this.scheduler = scheduleTask(threadPool);
 
         // Need to save this so we can later launch async "write indexing buffer to disk" on shards:
@@ -169,6 +191,38 @@ public class IndexingMemoryController extends AbstractComponent implements Index
         return shard.getWritingBytes();
     }
 
+    /** returns the heap limit of the Cassandra memtables */
+    protected long getMemtableHeapLimit() {
+        return Memtable.MEMORY_POOL.onHeap.limit;
+    }
+
+    /** returns how much heap the Cassandra memtables are using */
+    protected long getMemtableHeapBytesUsed() {
+        return Memtable.MEMORY_POOL.onHeap.used();
+    }
+
+    /** ask Cassandra to flush the user table memtable owning the most on-heap memory, unless a previous flush is still running */
+    protected void flushLargestMemtable() {
+        if (pendingMemtableFlush != null && pendingMemtableFlush.isDone() == false) {
+            return;
+        }
+        ColumnFamilyStore largest = null;
+        long largestSize = 0;
+        for (String ksName : Schema.instance.getNonSystemKeyspaces()) {
+            for (ColumnFamilyStore cfs : Keyspace.open(ksName).getColumnFamilyStores()) {
+                long size = cfs.getTracker().getView().getCurrentMemtable().getAllocator().onHeap().owns();
+                if (size > largestSize) {
+                    largest = cfs;
+                    largestSize = size;
+                }
+            }
+        }
+        if (largest != null) {
+            logger.debug("flush memtable of [{}.{}] to free up its [{}] heap", largest.keyspace.getName(), largest.name, new ByteSizeValue(largestSize));
+            pendingMemtableFlush = largest.forceFlush();
+        }
+    }
+
     /** ask this shard to refresh, in the background, to free up heap */
     protected void writeIndexingBufferAsync(IndexShard shard) {
         threadPool.executor(ThreadPool.Names.REFRESH).execute(new AbstractRunnable() {
@@ -310,16 +364,23 @@ public class IndexingMemoryController extends AbstractComponent implements Index
                 totalBytesUsed += shardBytesUsed;
             }
 
+            // When shared with memtables, the indexing buffers get the part of the budget not used by memtables:
+            final long sharedBudget = shareWithMemtables ? indexingBuffer.getBytes() + getMemtableHeapLimit() : 0;
+            final long memtableBytesUsed = shareWithMemtables ? getMemtableHeapBytesUsed() : 0;
+            final long indexingBudget = shareWithMemtables ?
+                Math.max(minSharedIndexingBuffer, sharedBudget - memtableBytesUsed) : indexingBuffer.getBytes();
+
             if (logger.isTraceEnabled()) {
-                logger.trace("total indexing heap bytes used [{}] vs {} [{}], currently writing bytes [{}]",
-                             new ByteSizeValue(totalBytesUsed), INDEX_BUFFER_SIZE_SETTING.getKey(), indexingBuffer, new ByteSizeValue(totalBytesWriting));
+                logger.trace("total indexing heap bytes used [{}] vs {} [{}], currently writing bytes [{}], memtable heap bytes used [{}]",
+                             new ByteSizeValue(totalBytesUsed), INDEX_BUFFER_SIZE_SETTING.getKey(), new ByteSizeValue(indexingBudget),
+                             new ByteSizeValue(totalBytesWriting), new ByteSizeValue(memtableBytesUsed));
             }
 
             // If we are using more than 50% of our budget across both indexing buffer and bytes we are still moving to disk, then we now
             // throttle the top shards to send back-pressure to ongoing indexing:
-            boolean doThrottle = (totalBytesWriting + totalBytesUsed) > 1.5 * indexingBuffer.getBytes();
+            boolean doThrottle = (totalBytesWriting + totalBytesUsed) > 1.5 * indexingBudget;
 
-            if (totalBytesUsed > indexingBuffer.getBytes()) {
+            if (totalBytesUsed > indexingBudget) {
                 // OK we are now over-budget; fill the priority queue and ask largest shard(s) to refresh:
                 PriorityQueue<ShardAndBytesUsed> queue = new PriorityQueue<>();
 
@@ -352,9 +413,9 @@ public class IndexingMemoryController extends AbstractComponent implements Index
                 }
 
                 logger.debug("now write some indexing buffers: total indexing heap bytes used [{}] vs {} [{}], currently writing bytes [{}], [{}] shards with non-zero indexing buffer",
-                             new ByteSizeValue(totalBytesUsed), INDEX_BUFFER_SIZE_SETTING.getKey(), indexingBuffer, new ByteSizeValue(totalBytesWriting), queue.size());
+                             new ByteSizeValue(totalBytesUsed), INDEX_BUFFER_SIZE_SETTING.getKey(), new ByteSizeValue(indexingBudget), new ByteSizeValue(totalBytesWriting), queue.size());
 
-                while (totalBytesUsed > indexingBuffer.getBytes() && queue.isEmpty() == false) {
+                while (totalBytesUsed > indexingBudget && queue.isEmpty() == false) {
                     ShardAndBytesUsed largest = queue.poll();
                     logger.debug("write indexing buffer to disk for shard [{}] to free up its [{}] indexing buffer", largest.shard.shardId(), new ByteSizeValue(largest.bytesUsed));
                     writeIndexingBufferAsync(largest.shard);
@@ -367,6 +428,12 @@ public class IndexingMemoryController extends AbstractComponent implements Index
                 }
             }
 
+            // Indexing buffers were asked to write down to their part of the budget (at least the minimum indexing buffer),
+            // flush a memtable when the memtables still push the total over the shared budget:
+            if (shareWithMemtables && totalBytesUsed + memtableBytesUsed > sharedBudget) {
+                flushLargestMemtable();
+            }
+
             if (doThrottle == false) {
                 for(IndexShard shard : throttled) {
                     logger.info("stop throttling indexing for shard [{}]", shard.shardId());
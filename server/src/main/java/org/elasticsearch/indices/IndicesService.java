@@ -27,6 +27,7 @@ import org.apache.lucene.store.LockObtainFailedException;
 import org.apache.lucene.util.CollectionUtil;
 import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.RamUsageEstimator;
+import org.elassandra.index.VirtualIndexMappings;
 import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.ResourceAlreadyExistsException;
 import org.elasticsearch.action.admin.indices.stats.CommonStats;
@@ -155,6 +156,7 @@ public class IndicesService extends AbstractLifecycleComponent
     private final IndexNameExpressionResolver indexNameExpressionResolver;
     private final IndexScopedSettings indexScopedSettings;
     private final IndicesFieldDataCache indicesFieldDataCache;
+    private final VirtualIndexMappings virtualIndexMappings = new VirtualIndexMappings();
     private final CacheCleaner cacheCleaner;
     private final ThreadPool threadPool;
     private final CircuitBreakerService circuitBreakerService;
@@ -453,7 +455,7 @@ public class IndicesService extends AbstractLifecycleComponent
         for (IndexEventListener listener : builtInListeners) {
             indexModule.addIndexEventListener(listener);
         }
-        return indexModule.newIndexService(
+        final IndexService indexService = indexModule.newIndexService(
                 nodeEnv,
                 xContentRegistry,
                 this,
@@ -468,6 +470,8 @@ public class IndicesService extends AbstractLifecycleComponent
                 indicesFieldDataCache,
                 namedWriteableRegistry
         );
+        indexService.mapperService().setVirtualIndexMappings(virtualIndexMappings);
+        return indexService;
     }
 
     /**
@@ -558,6 +562,9 @@ public class IndicesService extends AbstractLifecycleComponent
             logger.debug("{} closed... (reason [{}][{}])", index, reason, extraInfo);
             final IndexSettings indexSettings = indexService.getIndexSettings();
             listener.afterIndexRemoved(indexService.index(), indexSettings, reason);
+            if (indexSettings.getIndexMetaData().isVirtual()) {
+                virtualIndexMappings.remove(indexName);
+            }
             if (reason == IndexRemovalReason.DELETED) {
                 // now we are done - try to wipe data on disk if possible
                 deleteIndexStore(extraInfo, indexService.index(), indexSettings);
@@ -567,6 +574,10 @@ public class IndicesService extends AbstractLifecycleComponent
         }
     }
 
+    public VirtualIndexMappings getVirtualIndexMappings() {
+        return virtualIndexMappings;
+    }
+
     public IndicesFieldDataCache getIndicesFieldDataCache() {
         return indicesFieldDataCache;
     }
@@ -51,10 +51,13 @@ import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.component.AbstractLifecycleComponent;
 import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Setting;
+import org.elasticsearch.common.settings.Setting.Property;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.concurrent.AbstractRunnable;
 import org.elasticsearch.common.util.concurrent.ConcurrentCollections;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
 import org.elasticsearch.env.ShardLockObtainFailedException;
 import org.elasticsearch.gateway.GatewayService;
 import org.elasticsearch.index.Index;
@@ -78,10 +81,15 @@ import org.elasticsearch.search.SearchService;
 import org.elasticsearch.threadpool.ThreadPool;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
@@ -109,7 +117,15 @@ public class IndicesClusterStateService extends AbstractLifecycleComponent imple
 
     private final FailedShardHandler failedShardHandler = new FailedShardHandler();
 
+    /**
+     * Maximum number of indices whose mappings are parsed and shards created concurrently when many indices are applied at once (startup).
+     */
+    public static final Setting<Integer> INDICES_CLUSTER_STARTUP_CONCURRENCY_SETTING =
+            new Setting<>("indices.cluster.startup_concurrency", s -> Integer.toString(Math.max(1, EsExecutors.numberOfProcessors(s) / 2)),
+                    s -> Setting.parseInt(s, 1, "indices.cluster.startup_concurrency"), Property.NodeScope);
+
     private final boolean sendRefreshMapping;
+    private final int startupConcurrency;
     private final List<IndexEventListener> buildInIndexListener;
     //private final PrimaryReplicaSyncer primaryReplicaSyncer;
     //private final Consumer<ShardId> globalCheckpointSyncer;
@@ -164,6 +180,7 @@ public class IndicesClusterStateService extends AbstractLifecycleComponent imple
         //this.primaryReplicaSyncer = primaryReplicaSyncer;
         //this.globalCheckpointSyncer = globalCheckpointSyncer;
         this.sendRefreshMapping = this.settings.getAsBoolean("indices.cluster.send_refresh_mapping", true);
+        this.startupConcurrency = INDICES_CLUSTER_STARTUP_CONCURRENCY_SETTING.get(settings);
     }
 
     @Override
@@ -238,6 +255,7 @@ public class IndicesClusterStateService extends AbstractLifecycleComponent imple
             if (logger.isDebugEnabled()) {
                 logger.debug("[{}] cleaning index, no longer part of the metadata", index);
             }
+            clusterService.removeRouter(index);
             AllocatedIndex<? extends Shard> indexService = indicesService.indexService(index);
             final IndexSettings indexSettings;
             if (indexService != null) {
@@ -350,57 +368,138 @@ public class IndicesClusterStateService extends AbstractLifecycleComponent imple
 
     /**
      * In Elassandra, new index creation involve a new INITIALIZING shardRouting attached to the index and recovered.
+     * When many indices are created at once (on startup), mappings are parsed concurrently with a bounded parallelism,
+     * and the most recently created indices (for time-partitioned indices, the most recently written) are started first.
      * @param event
      */
     private void applyNewIndices(final ClusterChangedEvent event) {
         ClusterState state = event.state();
+        long startNanos = System.nanoTime();
+
+        List<IndexMetaData> newIndices = new ArrayList<>();
         for (IndexMetaData indexMetaData : event.state().metaData()) {
+            if (indicesService.indexService(indexMetaData.getIndex()) == null && indexMetaData.getState() == State.OPEN)
+                newIndices.add(indexMetaData);
+        }
+        newIndices.sort(Comparator.comparingLong(IndexMetaData::getCreationDate).reversed());
+
+        // IndicesService.createIndex() is synchronized, so create index services sequentially.
+        List<AllocatedIndex<? extends Shard>> createdIndices = new ArrayList<>(newIndices.size());
+        for (IndexMetaData indexMetaData : newIndices) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("[{}] creating index", indexMetaData.getIndex());
+            }
+            try {
+                createdIndices.add(indicesService.createIndex(indexMetaData, buildInIndexListener));
+            } catch (Throwable e) {
+                if (logger.isWarnEnabled()) {
+                    logger.warn("[{}][{}] failed to create index", indexMetaData.getIndex(),  indexMetaData.getIndexUUID(), e);
+                }
+            }
+        }
+        long createdNanos = System.nanoTime();
+
+        // parse mappings
+        final Set<Index> failedIndices = ConcurrentCollections.newConcurrentSet();
+        final Consumer<AllocatedIndex<? extends Shard>> updateMapping = indexService -> {
+            IndexMetaData indexMetaData = state.metaData().index(indexService.index());
+            try {
+                indexService.updateMapping(indexMetaData);
+            } catch (Throwable e) {
+                logger.error((Supplier<?>) () -> new ParameterizedMessage("[{}] failed to update mapping", indexMetaData.getIndex()), e);
+                failedIndices.add(indexMetaData.getIndex());
+            }
+        };
+        runConcurrently(createdIndices, updateMapping, "updating mappings of new indices");
+        for (Index index : failedIndices)
+            indicesService.removeIndex(index, FAILURE, "removing index (mapping update failed)");
+        long mappedNanos = System.nanoTime();
+
+        DiscoveryNodes nodes = event.state().nodes();
+        RoutingTable routingTable = event.state().routingTable();
+
+        // create shards in priority order, then the remaining ones (shards of existing indices).
+        final Set<Index> newIndexSet = new HashSet<>(newIndices.size());
+        for (IndexMetaData indexMetaData : newIndices)
+            newIndexSet.add(indexMetaData.getIndex());
+        final List<IndexMetaData> shardsToCreate = new ArrayList<>();
+        for (IndexMetaData indexMetaData : newIndices) {
             AllocatedIndex<? extends Shard> indexService = indicesService.indexService(indexMetaData.getIndex());
-            if (indexService == null && indexMetaData.getState() == State.OPEN) {
+            if (indexService != null && indexService.getShardOrNull(0) == null)
+                shardsToCreate.add(indexMetaData);
+        }
+        for (IndexMetaData indexMetaData : event.state().metaData()) {
+            if (indexMetaData.getState() == State.OPEN && !newIndexSet.contains(indexMetaData.getIndex())) {
+                AllocatedIndex<? extends Shard> indexService = indicesService.indexService(indexMetaData.getIndex());
+                if (indexService != null && indexService.getShardOrNull(0) == null)
+                    shardsToCreate.add(indexMetaData);
+            }
+        }
+        // IndexService.createShard() is synchronized per index, so shards of distinct indices are created concurrently,
+        // the work queue keeping the priority order.
+        final Set<Index> failedShards = ConcurrentCollections.newConcurrentSet();
+        runConcurrently(shardsToCreate, indexMetaData -> {
+            try {
                 if (logger.isDebugEnabled()) {
-                    logger.debug("[{}] creating index", indexMetaData.getIndex());
-                }
-                try {
-                    indexService = indicesService.createIndex(indexMetaData, buildInIndexListener);
-                    indexService.updateMapping(indexMetaData);
-                } catch (Throwable e) {
-                    if (logger.isWarnEnabled()) {
-                        logger.warn("[{}][{}] failed to create index", indexMetaData.getIndex(),  indexMetaData.getIndexUUID(), e);
-                    }
+                    logger.debug("[{}][{}] creating new shard INITIALIZING", indexMetaData.getIndex(), 0);
                 }
+                ShardRouting shardRouting = new ShardRouting(new ShardId(indexMetaData.getIndex(), 0), clusterService.localNode().getId(), null, true,
+                        ShardRoutingState.INITIALIZING,
+                        RecoverySource.StoreRecoverySource.EMPTY_STORE_INSTANCE,
+                        IndexRoutingTable.UNASSIGNED_INFO_INDEX_CREATED,
+                        ShardRouting.DUMMY_ALLOCATION_ID, 0,
+                        AbstractSearchStrategy.EMPTY_RANGE_TOKEN_LIST);
+                createShard(nodes, routingTable, shardRouting, state);
+
+                //IndexShard indexShard = indexService.createShard(shardRouting);
+                //indexShard.shardRouting(shardRouting);
+                //indexShard.addFailedEngineListener(failedEngineHandler);
+                //this.clusterService.recoverShard(indexMetaData.getIndex());  // post-applied shard recovery by CassandraIndicesClusterStateService
+            } catch (Throwable e) {
+                logger.error((Supplier<?>) () -> new ParameterizedMessage("[{}] failed to create shard", indexMetaData.getIndex()), e);
+                failedShards.add(indexMetaData.getIndex());
             }
+        }, "creating shards of new indices");
+        for (Index index : failedShards)
+            indicesService.removeIndex(index, FAILURE, "removing index (shard creation failed)");
+
+        final int newShards = shardsToCreate.size();
+        if (newIndices.size() > 0 || newShards > 0) {
+            long endNanos = System.nanoTime();
+            logger.info("Created [{}] indices in {} ms, mappings in {} ms (concurrency={}), [{}] shards in {} ms",
+                    createdIndices.size(), TimeUnit.NANOSECONDS.toMillis(createdNanos - startNanos),
+                    TimeUnit.NANOSECONDS.toMillis(mappedNanos - createdNanos), startupConcurrency,
+                    newShards, TimeUnit.NANOSECONDS.toMillis(endNanos - mappedNanos));
+        }
+    }
 
-            DiscoveryNodes nodes = event.state().nodes();
-            RoutingTable routingTable = event.state().routingTable();
-
-            if (indexService != null && indexService.getShardOrNull(0) == null && indexMetaData.getState() == State.OPEN) {
-                try {
-                    if (logger.isDebugEnabled()) {
-                        logger.debug("[{}][{}] creating new shard INITIALIZING", indexMetaData.getIndex(), 0);
-                    }
-                    ShardRouting shardRouting = new ShardRouting(new ShardId(indexMetaData.getIndex(), 0), clusterService.localNode().getId(), null, true,
-                            ShardRoutingState.INITIALIZING,
-                            RecoverySource.StoreRecoverySource.EMPTY_STORE_INSTANCE,
-                            IndexRoutingTable.UNASSIGNED_INFO_INDEX_CREATED,
-                            ShardRouting.DUMMY_ALLOCATION_ID, 0,
-                            AbstractSearchStrategy.EMPTY_RANGE_TOKEN_LIST);
-                    createShard(nodes, routingTable, shardRouting, state);
-
-                    //IndexShard indexShard = indexService.createShard(shardRouting);
-                    //indexShard.shardRouting(shardRouting);
-                    //indexShard.addFailedEngineListener(failedEngineHandler);
-                    //this.clusterService.recoverShard(indexMetaData.getIndex());  // post-applied shard recovery by CassandraIndicesClusterStateService
-                } catch (Throwable e) {
-                    logger.error("Unexpected error", e);
-                    final String failShardReason;
-                    if (indexService == null) {
-                        failShardReason = "failed to create index";
-                    } else {
-                        failShardReason = "failed to update mapping for index";
-                        indicesService.removeIndex(indexMetaData.getIndex(), FAILURE, "removing index (mapping update failed)");
+    /**
+     * Apply the action to each item with at most startupConcurrency generic pool workers, items being polled in the list order.
+     */
+    private <T> void runConcurrently(List<T> items, Consumer<T> action, String description) {
+        if (items.size() > 1 && startupConcurrency > 1) {
+            final ConcurrentLinkedQueue<T> queue = new ConcurrentLinkedQueue<>(items);
+            final int workers = Math.min(startupConcurrency, items.size());
+            final CountDownLatch latch = new CountDownLatch(workers);
+            for (int i = 0; i < workers; i++) {
+                threadPool.generic().execute(() -> {
+                    try {
+                        T item;
+                        while ((item = queue.poll()) != null)
+                            action.accept(item);
+                    } finally {
+                        latch.countDown();
                     }
-                }
+                });
+            }
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warn("Interrupted while {}", description);
             }
+        } else {
+            items.forEach(action);
         }
     }
 
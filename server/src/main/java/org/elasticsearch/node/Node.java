@@ -28,6 +28,7 @@ import org.apache.lucene.util.IOUtils;
 import org.apache.lucene.util.SetOnce;
 import org.elassandra.discovery.CassandraDiscovery;
 import org.elassandra.gateway.CassandraGatewayService;
+import org.elassandra.index.SegmentStreamingService;
 import org.elasticsearch.Build;
 import org.elasticsearch.ElasticsearchException;
 import org.elasticsearch.Version;
@@ -501,6 +502,7 @@ public class Node implements Closeable {
                     b.bind(ClusterInfoService.class).toInstance(clusterInfoService);
                     b.bind(GatewayMetaState.class).toInstance(gatewayMetaState);
                     b.bind(Discovery.class).toInstance(discoveryModule.getDiscovery());
+                    b.bind(SegmentStreamingService.class).toInstance(new SegmentStreamingService(settings, transportService, indicesService));
                     {
                         RecoverySettings recoverySettings = new RecoverySettings(settings, settingsModule.getClusterSettings());
                         processRecoverySettings(settingsModule.getClusterSettings(), recoverySettings);
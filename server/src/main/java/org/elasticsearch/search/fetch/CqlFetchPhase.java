@@ -102,6 +102,11 @@ public class CqlFetchPhase extends FetchPhase {
         return cqlStatement;
     }
 
+    @Override
+    protected boolean canCacheSource(SearchContext searchContext) {
+        return projection(searchContext) == null;
+    }
+
     @Override
     protected void processCqlResultSet(final SearchContext searchContext, final IndexService indexService, FieldsVisitor fieldVisitor, ResultSet resultSet) throws IOException {
         UntypedResultSet rs = UntypedResultSet.create(resultSet);
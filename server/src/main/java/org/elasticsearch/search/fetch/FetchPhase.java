@@ -20,7 +20,6 @@
 package org.elasticsearch.search.fetch;
 
 import org.apache.cassandra.cql3.QueryOptions;
-import org.apache.cassandra.cql3.QueryProcessor;
 import org.apache.cassandra.cql3.ResultSet;
 import org.apache.cassandra.cql3.UntypedResultSet;
 import org.apache.cassandra.cql3.UntypedResultSet.Row;
@@ -29,7 +28,6 @@ import org.apache.cassandra.db.ConsistencyLevel;
 import org.apache.cassandra.service.ClientState;
 import org.apache.cassandra.service.QueryState;
 import org.apache.cassandra.transport.messages.ResultMessage;
-import org.apache.logging.log4j.Logger;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.ReaderUtil;
 import org.apache.lucene.search.DocIdSetIterator;
@@ -243,6 +241,7 @@ public class FetchPhase implements SearchPhase {
         sourceLookup.setSegmentAndDocument(subReaderContext, subDocId);
         if (fieldsVisitor.source() != null) {
             sourceLookup.setSource(fieldsVisitor.source());
+            sourceLookup.setSourceFiltered(fieldsVisitor.sourceFiltered());
         }
         return searchHit;
     }
@@ -425,13 +424,7 @@ public class FetchPhase implements SearchPhase {
                     requiredColumns.add(SourceFieldMapper.NAME);
                 }
                 if (requiredColumns.size() > 0) {
-                    String query = clusterService.getQueryManager().buildFetchQuery(
-                            indexService, fieldVisitor.uid().type(),
-                            requiredColumns.toArray(new String[requiredColumns.size()]), staticDocument, docMapper.getColumnDefinitions());
-                    Logger logger = Loggers.getLogger(FetchPhase.class);
-                    if (logger.isTraceEnabled())
-                        logger.trace("new statement={}",query);
-                    cqlStatement = QueryProcessor.prepareInternal(query);
+                    cqlStatement = clusterService.getQueryManager().getFetchStatement(indexService, fieldVisitor.uid().type(), requiredColumns, staticDocument);
                     searchContext.putCqlPreparedStatement(typeKey, cqlStatement);
                 }
             }
@@ -443,6 +436,23 @@ public class FetchPhase implements SearchPhase {
         UntypedResultSet rs = UntypedResultSet.create(resultSet);
         if (!rs.isEmpty()) {
             Row row = rs.one();
+            final DocumentMapper docMapper = searchContext.mapperService().documentMapper(fieldVisitor.uid().type());
+            if (fieldVisitor.requestedFields() == null || fieldVisitor.requestedFields().isEmpty()) {
+                // render the _source from the row, without building a map of the row.
+                if (fieldVisitor.loadSource()) {
+                    final FetchSourceContext fetchSourceContext = searchContext.fetchSourceContext();
+                    if (fetchSourceContext != null && canFilterSourceOnFetch(searchContext, docMapper)) {
+                        fieldVisitor.source(clusterService.getQueryManager().source(indexService, docMapper, row, fieldVisitor.uid(),
+                                fetchSourceContext.includes(), fetchSourceContext.excludes()), true);
+                    } else {
+                        BytesReference source = clusterService.getQueryManager().source(indexService, docMapper, row, fieldVisitor.uid(), null, null);
+                        if (canCacheSource(searchContext))
+                            searchContext.putCachedSource(fieldVisitor.uid().toString(), source);
+                        fieldVisitor.source(source);
+                    }
+                }
+                return;
+            }
             Map<String, Object> mapObject = clusterService.getQueryManager().rowAsMap(indexService, fieldVisitor.uid().type(), row);
             if (searchContext.includeNode()) {
                 mapObject.put(NodeFieldMapper.NAME, clusterService.state().nodes().getLocalNodeId());
@@ -456,11 +466,30 @@ public class FetchPhase implements SearchPhase {
                 }
             }
             if (fieldVisitor.loadSource()) {
-                fieldVisitor.source( clusterService.getQueryManager().source(indexService, searchContext.mapperService().documentMapper(fieldVisitor.uid().type()), mapObject, fieldVisitor.uid()) );
+                fieldVisitor.source( clusterService.getQueryManager().source(indexService, docMapper, mapObject, fieldVisitor.uid()) );
             }
         }
     }
+
+    /**
+     * Source includes and excludes are applied when rendering the _source if no other fetch sub-phase reads the _source of the hit,
+     * and if no top_hits aggregation may reuse the _source.
+     */
+    protected boolean canFilterSourceOnFetch(SearchContext searchContext, DocumentMapper docMapper) {
+        return searchContext.highlight() == null
+                && searchContext.aggregations() == null
+                && !searchContext.hasScriptFields()
+                && searchContext.innerHits().getInnerHits().isEmpty()
+                && !docMapper.hasNestedObjects();
+    }
     
+    /**
+     * Unfiltered _source fetched from cassandra are cached in the search context for the other fetch phases of the search.
+     */
+    protected boolean canCacheSource(SearchContext searchContext) {
+        return true;
+    }
+
     private void loadStoredFields(SearchContext searchContext, LeafReaderContext readerContext, FieldsVisitor fieldVisitor, int docId) {
         fieldVisitor.reset();
         try {
@@ -473,6 +502,15 @@ public class FetchPhase implements SearchPhase {
         IndexService indexService = searchContext.indexShard().indexService();
         try {
             fieldVisitor.postProcess(indexService.mapperService());
+            if (fieldVisitor.loadSource() && (fieldVisitor.requestedFields() == null || fieldVisitor.requestedFields().isEmpty()) && canCacheSource(searchContext)) {
+                // reuse the _source already fetched by this search.
+                BytesReference source = searchContext.getCachedSource(fieldVisitor.uid().toString());
+                if (source != null) {
+                    clusterService.getQueryManager().onCachedSourceHit();
+                    fieldVisitor.source(source);
+                    return;
+                }
+            }
             DocPrimaryKey docPk = clusterService.getQueryManager().parseElasticId(indexService, fieldVisitor.uid().type(), fieldVisitor.uid().id());
             String typeKey = fieldVisitor.uid().type();
             if (docPk.isStaticDocument) 
@@ -480,6 +518,7 @@ public class FetchPhase implements SearchPhase {
             
             ParsedStatement.Prepared cqlStatement = getCqlPreparedStatement(searchContext, indexService, fieldVisitor, typeKey, docPk.isStaticDocument);
             if (cqlStatement != null) {
+                clusterService.getQueryManager().onSourceFetch();
                 ResultMessage result = cqlStatement.statement.executeInternal(new QueryState(ClientState.forInternalCalls()), QueryOptions.forInternalCalls(ConsistencyLevel.ONE, docPk.serialize(cqlStatement)));
                 if (result instanceof ResultMessage.Rows) {
                     processCqlResultSet(searchContext, indexService, fieldVisitor, ((ResultMessage.Rows)result).result);
@@ -42,7 +42,7 @@ public final class FetchSourceSubPhase implements FetchSubPhase {
         FetchSourceContext fetchSourceContext = context.fetchSourceContext();
         assert fetchSourceContext.fetchSource();
         if (nestedHit == false) {
-            if (fetchSourceContext.includes().length == 0 && fetchSourceContext.excludes().length == 0) {
+            if ((fetchSourceContext.includes().length == 0 && fetchSourceContext.excludes().length == 0) || source.isSourceFiltered()) {
                 hitContext.hit().sourceRef(source.internalSourceRef());
                 return;
             }
@@ -27,6 +27,7 @@ import org.elasticsearch.action.search.SearchTask;
 import org.elasticsearch.action.search.SearchType;
 import org.elasticsearch.cluster.ClusterState;
 import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.unit.TimeValue;
 import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.index.cache.bitset.BitsetFilterCache;
@@ -268,6 +269,16 @@ public abstract class FilteredSearchContext extends SearchContext {
         return in.bigArrays();
     }
 
+    @Override
+    public BytesReference getCachedSource(String uid) {
+        return in.getCachedSource(uid);
+    }
+
+    @Override
+    public void putCachedSource(String uid, BytesReference source) {
+        in.putCachedSource(uid, source);
+    }
+
     @Override
     public BitsetFilterCache bitsetFilterCache() {
         return in.bitsetFilterCache();
@@ -30,6 +30,9 @@ import org.elasticsearch.action.search.SearchType;
 import org.elasticsearch.cluster.ClusterState;
 import org.elasticsearch.cluster.service.ClusterService;
 import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.lease.Releasable;
 import org.elasticsearch.common.lease.Releasables;
 import org.elasticsearch.common.unit.TimeValue;
@@ -107,6 +110,7 @@ public abstract class SearchContext extends AbstractRefCounted implements Releas
     protected SearchProcessor processor = null;
     protected boolean includeNode;
     protected ConcurrentMap<String, ParsedStatement.Prepared> cqlStatementCache = new ConcurrentHashMap<String, ParsedStatement.Prepared>();
+    private volatile ConcurrentMap<String, BytesReference> sourceCache = null; // created by the first cached source
     
     @Override
     public final void close() {
@@ -173,6 +177,51 @@ public abstract class SearchContext extends AbstractRefCounted implements Releas
     public void putCqlPreparedStatement(String key, ParsedStatement.Prepared query) {
         cqlStatementCache.put(key, query);
     }
+
+    /**
+     * Return the _source of a document already fetched from cassandra by this search, or null.
+     */
+    public BytesReference getCachedSource(String uid) {
+        return sourceCache == null ? null : sourceCache.get(uid);
+    }
+
+    /**
+     * Keep the unfiltered _source of a document fetched from cassandra for the other fetch phases of this search
+     * (top_hits, inner hits), accounted to the request circuit breaker until the context is released.
+     * Sources are not cached when the search context has no circuit breaker.
+     */
+    public void putCachedSource(String uid, BytesReference source) {
+        final BigArrays bigArrays = bigArrays();
+        if (bigArrays == null || bigArrays.breakerService() == null)
+            return;
+        final CircuitBreaker breaker = bigArrays.breakerService().getBreaker(CircuitBreaker.REQUEST);
+        try {
+            breaker.addEstimateBytesAndMaybeBreak(source.length(), "<fetch_source_cache>");
+        } catch (CircuitBreakingException e) {
+            return; // not cached, the document will be fetched again if needed.
+        }
+        ConcurrentMap<String, BytesReference> cache = sourceCache;
+        if (cache == null) {
+            // fetch phases of the search (top_hits, inner hits) may run concurrently.
+            synchronized (this) {
+                cache = sourceCache;
+                if (cache == null) {
+                    final ConcurrentMap<String, BytesReference> newCache = new ConcurrentHashMap<String, BytesReference>();
+                    addReleasable(() -> {
+                        long bytes = 0;
+                        for (BytesReference cachedSource : newCache.values())
+                            bytes += cachedSource.length();
+                        newCache.clear();
+                        breaker.addWithoutBreaking(-bytes);
+                    }, Lifetime.CONTEXT);
+                    sourceCache = cache = newCache;
+                }
+            }
+        }
+        BytesReference previous = cache.put(uid, source);
+        if (previous != null)
+            breaker.addWithoutBreaking(-previous.length());
+    }
     
     /** Automatically apply all required filters to the given query such as
      *  alias filters, types filters, etc. */
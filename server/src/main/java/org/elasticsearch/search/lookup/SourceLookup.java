@@ -45,6 +45,7 @@ public class SourceLookup implements Map {
     private BytesReference sourceAsBytes;
     private Map<String, Object> source;
     private XContentType sourceContentType;
+    private boolean sourceFiltered;
 
     public Map<String, Object> source() {
         return source;
@@ -98,6 +99,7 @@ public class SourceLookup implements Map {
         this.reader = context.reader();
         this.source = null;
         this.sourceAsBytes = null;
+        this.sourceFiltered = false;
         this.docId = docId;
     }
 
@@ -105,6 +107,17 @@ public class SourceLookup implements Map {
         this.sourceAsBytes = source;
     }
 
+    /**
+     * Set when the _source bytes were already filtered by the fetch source context.
+     */
+    public void setSourceFiltered(boolean sourceFiltered) {
+        this.sourceFiltered = sourceFiltered;
+    }
+
+    public boolean isSourceFiltered() {
+        return sourceFiltered;
+    }
+
     public void setSourceContentType(XContentType sourceContentType) {
         this.sourceContentType = sourceContentType;
     }
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra;
+
+import org.apache.cassandra.db.ConsistencyLevel;
+import org.apache.cassandra.db.SystemKeyspace;
+import org.apache.cassandra.service.StorageService;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Locale;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * Lucene commit decoupled from memtable flushes, a pending marker is kept until the asynchronous commit.
+ */
+//gradle :server:test -Dtests.seed=65E2CF27F286CC89 -Dtests.class=org.elassandra.AsyncFlushTests -Dtests.security.manager=false -Dtests.locale=en-PH -Dtests.timezone=America/Coral_Harbour
+public class AsyncFlushTests extends ESSingleNodeTestCase {
+
+    @Test
+    public void testAsyncFlush() throws Exception {
+        process(ConsistencyLevel.ONE, "CREATE KEYSPACE IF NOT EXISTS test WITH replication={ 'class':'NetworkTopologyStrategy', 'DC1':'1' }");
+        process(ConsistencyLevel.ONE, "CREATE TABLE test.t1 (id text PRIMARY KEY, name text)");
+        assertAcked(client().admin().indices().prepareCreate("test")
+                .setSettings(Settings.builder().put(IndexMetaData.SETTING_INDEX_ASYNC_FLUSH, true))
+                .addMapping("t1", discoverMapping("t1")));
+        ensureGreen("test");
+
+        for (int i = 0; i < 10; i++)
+            process(ConsistencyLevel.ONE, String.format(Locale.ROOT, "INSERT INTO test.t1 (id, name) VALUES ('%d', 'n%d')", i, i));
+        StorageService.instance.forceKeyspaceFlush("test", "t1");
+
+        IndexShard indexShard = getInstanceFromNode(IndicesService.class).indexServiceSafe(resolveIndex("test")).getShard(0);
+        Path marker = indexShard.shardPath().getDataPath().resolve("async_flush.test.t1.pending");
+        assertTrue(Files.exists(marker));
+        assertThat(client().prepareSearch().setIndices("test").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(10L));
+
+        // a clean close commits the pending flush and removes the marker.
+        assertAcked(client().admin().indices().prepareClose("test").get());
+        assertFalse(Files.exists(marker));
+
+        // rows written while the index is closed are only indexed by a rebuild, which a clean close must not trigger.
+        for (int i = 10; i < 20; i++)
+            process(ConsistencyLevel.ONE, String.format(Locale.ROOT, "INSERT INTO test.t1 (id, name) VALUES ('%d', 'n%d')", i, i));
+        StorageService.instance.forceKeyspaceFlush("test", "t1");
+        assertAcked(client().admin().indices().prepareOpen("test").get());
+        ensureGreen("test");
+        assertTrue(SystemKeyspace.isIndexBuilt("test", "elastic_t1_idx"));
+        client().admin().indices().prepareRefresh("test").get();
+        assertThat(client().prepareSearch().setIndices("test").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(10L));
+    }
+
+    @Test
+    public void testUncommittedFlushRebuild() throws Exception {
+        process(ConsistencyLevel.ONE, "CREATE KEYSPACE IF NOT EXISTS test WITH replication={ 'class':'NetworkTopologyStrategy', 'DC1':'1' }");
+        process(ConsistencyLevel.ONE, "CREATE TABLE test.t1 (id text PRIMARY KEY, name text)");
+        assertAcked(client().admin().indices().prepareCreate("test")
+                .setSettings(Settings.builder().put(IndexMetaData.SETTING_INDEX_ASYNC_FLUSH, true))
+                .addMapping("t1", discoverMapping("t1")));
+        ensureGreen("test");
+
+        for (int i = 0; i < 10; i++)
+            process(ConsistencyLevel.ONE, String.format(Locale.ROOT, "INSERT INTO test.t1 (id, name) VALUES ('%d', 'n%d')", i, i));
+        StorageService.instance.forceKeyspaceFlush("test", "t1");
+
+        IndexShard indexShard = getInstanceFromNode(IndicesService.class).indexServiceSafe(resolveIndex("test")).getShard(0);
+        Path marker = indexShard.shardPath().getDataPath().resolve("async_flush.test.t1.pending");
+        assertThat(new String(Files.readAllBytes(marker), StandardCharsets.UTF_8), equalTo("1 0"));
+
+        // simulate a node stopped before the commit covering the second memtable flush.
+        assertAcked(client().admin().indices().prepareClose("test").get());
+        Files.write(marker, "2 1".getBytes(StandardCharsets.UTF_8));
+
+        // rows written while the index is closed are not indexed, only a rebuild can index them.
+        for (int i = 10; i < 20; i++)
+            process(ConsistencyLevel.ONE, String.format(Locale.ROOT, "INSERT INTO test.t1 (id, name) VALUES ('%d', 'n%d')", i, i));
+        StorageService.instance.forceKeyspaceFlush("test", "t1");
+
+        // the marker flush generation is newer than the committed one, the secondary index is rebuilt when the shard starts.
+        assertAcked(client().admin().indices().prepareOpen("test").get());
+        ensureGreen("test");
+        assertFalse(Files.exists(marker));
+        assertTrue(waitIndexRebuilt("test", Collections.singletonList("t1"), 15000));
+        assertBusy(() -> assertThat(client().prepareSearch().setIndices("test").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(20L)));
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra;
+
+import org.elasticsearch.action.bulk.BulkRequestBuilder;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.cluster.metadata.MappingMetaData;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Map;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+/**
+ * Dynamic mapping updates of a bulk request are merged into one mapping update.
+ */
+//gradle :server:test -Dtests.seed=65E2CF27F286CC89 -Dtests.class=org.elassandra.BulkMappingTests -Dtests.security.manager=false -Dtests.locale=en-PH -Dtests.timezone=America/Coral_Harbour
+public class BulkMappingTests extends ESSingleNodeTestCase {
+
+    @Test
+    public void testBulkDynamicMapping() throws Exception {
+        assertAcked(client().admin().indices().prepareCreate("test"));
+        ensureGreen("test");
+        client().prepareIndex("test", "t1", "0").setSource("{ \"f0\":0 }", XContentType.JSON).get();
+
+        long version = clusterService().state().metaData().version();
+        BulkRequestBuilder bulk = client().prepareBulk();
+        for (int i = 1; i <= 10; i++)
+            bulk.add(client().prepareIndex("test", "t1", Integer.toString(i)).setSource(String.format(Locale.ROOT, "{ \"f0\":%d, \"f%d\":\"v%d\" }", i, i, i), XContentType.JSON));
+        // conflicting dynamic field, failed when executed.
+        bulk.add(client().prepareIndex("test", "t1", "11").setSource("{ \"f1\":{ \"x\":1 } }", XContentType.JSON));
+        BulkResponse resp = bulk.get();
+        for (int i = 0; i < 10; i++)
+            assertFalse(resp.getItems()[i].getFailureMessage(), resp.getItems()[i].isFailed());
+        assertTrue(resp.getItems()[10].isFailed());
+
+        // one merged mapping update, the conflicting item fails without updating the mapping.
+        assertThat(clusterService().state().metaData().version() - version, greaterThanOrEqualTo(1L));
+        assertThat(clusterService().state().metaData().version() - version, lessThanOrEqualTo(2L));
+        MappingMetaData mapping = clusterService().state().metaData().index("test").mapping("t1");
+        Map<String, Object> properties = (Map<String, Object>) mapping.sourceAsMap().get("properties");
+        for (int i = 0; i <= 10; i++)
+            assertTrue("f" + i, properties.containsKey("f" + i));
+
+        assertThat(client().prepareSearch().setIndices("test").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(11L));
+        assertThat(client().prepareSearch().setIndices("test").setQuery(QueryBuilders.termQuery("f7", "v7")).get().getHits().getTotalHits(), equalTo(1L));
+    }
+}
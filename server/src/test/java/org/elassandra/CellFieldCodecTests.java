@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra;
+
+import org.apache.cassandra.db.marshal.AbstractType;
+import org.apache.cassandra.db.marshal.DoubleType;
+import org.apache.cassandra.db.marshal.Int32Type;
+import org.apache.cassandra.db.marshal.LongType;
+import org.apache.cassandra.db.marshal.TimestampType;
+import org.apache.cassandra.db.marshal.UTF8Type;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexableField;
+import org.elassandra.index.mapper.CellFieldCodec;
+import org.elasticsearch.common.compress.CompressedXContent;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.mapper.DocumentMapper;
+import org.elasticsearch.index.mapper.NumberFieldMapper.NumberType;
+import org.elasticsearch.index.mapper.ParseContext;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Check the CellFieldCodec produces the same lucene fields as the field mappers.
+ */
+public class CellFieldCodecTests extends ESSingleNodeTestCase {
+
+    @Test
+    public void testSameFieldsAsMappers() throws Exception {
+        String mapping = XContentFactory.jsonBuilder().startObject().startObject("t1").startObject("properties")
+                .startObject("i").field("type", "integer").endObject()
+                .startObject("l").field("type", "long").field("store", true).endObject()
+                .startObject("d").field("type", "double").endObject()
+                .startObject("ts").field("type", "date").endObject()
+                .startObject("c").field("type", "long").field("copy_to", "l").endObject()
+                .endObject().endObject().endObject().string();
+        DocumentMapper docMapper = createIndex("test").mapperService().documentMapperParser().parse("t1", new CompressedXContent(mapping));
+
+        ParseContext.Document doc = new ParseContext.Document();
+        encode(doc, docMapper, "i", Int32Type.instance, Int32Type.instance.decompose(42));
+        encode(doc, docMapper, "l", LongType.instance, LongType.instance.decompose(1234567890123L));
+        encode(doc, docMapper, "d", DoubleType.instance, DoubleType.instance.decompose(3.14d));
+        encode(doc, docMapper, "ts", TimestampType.instance, TimestampType.instance.decompose(new Date(1469968740000L)));
+
+        assertSameFields(doc.getFields("i"), NumberType.INTEGER.createFields("i", 42, true, true, false));
+        assertSameFields(doc.getFields("l"), NumberType.LONG.createFields("l", 1234567890123L, true, true, true));
+        assertSameFields(doc.getFields("d"), NumberType.DOUBLE.createFields("d", 3.14d, true, true, false));
+        assertSameFields(doc.getFields("ts"), NumberType.LONG.createFields("ts", 1469968740000L, true, true, false));
+
+        // no codec for copy_to or mismatching CQL types
+        assertNull(CellFieldCodec.of(LongType.instance, docMapper.mappers().getMapper("c"), docMapper));
+        assertNull(CellFieldCodec.of(UTF8Type.instance, docMapper.mappers().getMapper("l"), docMapper));
+        assertNull(CellFieldCodec.of(LongType.instance, docMapper.mappers().getMapper("i"), docMapper));
+    }
+
+    private void encode(ParseContext.Document doc, DocumentMapper docMapper, String field, AbstractType<?> cqlType, ByteBuffer value) {
+        CellFieldCodec codec = CellFieldCodec.of(cqlType, docMapper.mappers().getMapper(field), docMapper);
+        assertNotNull(field, codec);
+        codec.createFields(doc, value);
+    }
+
+    private void assertSameFields(IndexableField[] actual, List<Field> expected) {
+        assertEquals(expected.size(), actual.length);
+        for (int i = 0; i < actual.length; i++) {
+            assertEquals(expected.get(i).name(), actual[i].name());
+            assertEquals(expected.get(i).fieldType(), actual[i].fieldType());
+            assertEquals(expected.get(i).numericValue(), actual[i].numericValue());
+            assertEquals(expected.get(i).binaryValue(), actual[i].binaryValue());
+        }
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra;
+
+import org.apache.cassandra.db.ConsistencyLevel;
+import org.apache.cassandra.dht.Murmur3Partitioner.LongToken;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.elassandra.index.ElasticSecondaryIndex;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.Collections;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+
+/**
+ * Documents of the token ranges no longer owned by the node are removed with one delete-by-query per index.
+ */
+//gradle :server:test -Dtests.seed=65E2CF27F286CC89 -Dtests.class=org.elassandra.CleanupTests -Dtests.security.manager=false -Dtests.locale=en-PH -Dtests.timezone=America/Coral_Harbour
+public class CleanupTests extends ESSingleNodeTestCase {
+
+    @Test
+    public void testCleanupTokenRanges() throws Exception {
+        process(ConsistencyLevel.ONE,"CREATE KEYSPACE IF NOT EXISTS test WITH replication={ 'class':'NetworkTopologyStrategy', 'DC1':'1' }");
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test.t1 ( a int, b text, primary key (a) )");
+        XContentBuilder mapping = XContentFactory.jsonBuilder().startObject().startObject("t1").field("discover", ".*").endObject().endObject();
+        createIndex("test", "t1", mapping);
+        ensureGreen("test");
+
+        int N = 1000;
+        for (int i = 0; i < N; i++)
+            process(ConsistencyLevel.ONE,"insert into test.t1 (a,b) VALUES (?,?)", i, "x" + i);
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo((long) N));
+
+        // keep the upper half of the ring.
+        Collection<Range<Token>> localRanges = Collections.singleton(new Range<Token>(new LongToken(0), new LongToken(Long.MIN_VALUE)));
+        long kept = client().prepareSearch().setIndices("test").setTypes("t1")
+                .setQuery(QueryBuilders.matchAllQuery())
+                .setTokenRanges(localRanges)
+                .get().getHits().getTotalHits();
+        assertThat(kept, greaterThan(0L));
+        assertThat(kept, lessThan((long) N));
+
+        ElasticSecondaryIndex esi = ElasticSecondaryIndex.elasticSecondayIndices.get("test.t1");
+        long ringVersion = esi.getCleanupRingVersion() + 1;
+        esi.cleanupTokenRanges(localRanges, ringVersion);
+        assertBusy(() -> assertThat(esi.getCleanupRingVersion(), equalTo(ringVersion)));
+        client().admin().indices().prepareRefresh("test").get();
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(kept));
+
+        // the cassandra rows are still there until a cleanup compaction.
+        assertThat(rowCount("test.t1"), equalTo((long) N));
+    }
+
+    @Test
+    public void testCleanupAllTokenRanges() throws Exception {
+        process(ConsistencyLevel.ONE,"CREATE KEYSPACE IF NOT EXISTS test2 WITH replication={ 'class':'NetworkTopologyStrategy', 'DC1':'1' }");
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test2.t1 ( a int, b text, primary key (a) )");
+        XContentBuilder mapping = XContentFactory.jsonBuilder().startObject().startObject("t1").field("discover", ".*").endObject().endObject();
+        createIndex("test2", "t1", mapping);
+        ensureGreen("test2");
+
+        int N = 100;
+        for (int i = 0; i < N; i++)
+            process(ConsistencyLevel.ONE,"insert into test2.t1 (a,b) VALUES (?,?)", i, "x" + i);
+        assertThat(client().prepareSearch().setIndices("test2").setTypes("t1").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo((long) N));
+
+        ElasticSecondaryIndex esi = ElasticSecondaryIndex.elasticSecondayIndices.get("test2.t1");
+        long ringVersion = esi.getCleanupRingVersion() + 1;
+
+        // the node owns the whole ring, nothing removed.
+        esi.cleanupTokenRanges(Collections.singleton(new Range<Token>(new LongToken(Long.MIN_VALUE), new LongToken(Long.MIN_VALUE))), ringVersion);
+        assertBusy(() -> assertThat(esi.getCleanupRingVersion(), equalTo(ringVersion)));
+        client().admin().indices().prepareRefresh("test2").get();
+        assertThat(client().prepareSearch().setIndices("test2").setTypes("t1").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo((long) N));
+
+        // the node gives up all its token ranges within the same ring version, all documents are removed.
+        esi.cleanupTokenRanges(Collections.emptyList(), ringVersion);
+        assertBusy(() -> {
+            client().admin().indices().prepareRefresh("test2").get();
+            assertThat(client().prepareSearch().setIndices("test2").setTypes("t1").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(0L));
+        });
+        assertThat(rowCount("test2.t1"), equalTo((long) N));
+    }
+
+    long rowCount(String table) throws Exception {
+        return process(ConsistencyLevel.ONE, "SELECT count(*) FROM " + table).one().getLong("count");
+    }
+}
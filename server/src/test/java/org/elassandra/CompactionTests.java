@@ -23,6 +23,8 @@ import org.apache.cassandra.cql3.UntypedResultSet;
 import org.apache.cassandra.db.ConsistencyLevel;
 import org.apache.cassandra.metrics.CassandraMetricsRegistry;
 import org.apache.cassandra.service.StorageService;
+import org.apache.cassandra.utils.FBUtilities;
+import org.elassandra.index.ElasticSecondaryIndex;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentBuilder;
@@ -327,4 +329,55 @@ public class CompactionTests extends ESSingleNodeTestCase {
         assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.wildcardQuery("c","*")).get().getHits().getTotalHits(), equalTo(N));
         assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.wildcardQuery("b","*")).get().getHits().getTotalHits(), equalTo(N));
     }
+
+    @Test
+    public void expiredTtlWithoutCompactionTest() throws Exception {
+        createIndex("test", Settings.builder().put(IndexMetaData.SETTING_INDEX_EXPIRATION, true).build());
+        ensureGreen("test");
+
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test.t1 ( a int,b text, primary key (a) )");
+        assertAcked(client().admin().indices().preparePutMapping("test").setType("t1")
+                .setSource("{ \"t1\" : { \"discover\" : \".*\" }}", XContentType.JSON).get());
+
+        process(ConsistencyLevel.ONE,"insert into test.t1 (a,b) VALUES (?,?) USING TTL 2", 1, "y");
+        process(ConsistencyLevel.ONE,"insert into test.t1 (a,b) VALUES (?,?)", 2, "x");
+        // row marker expires, but not the updated cell.
+        process(ConsistencyLevel.ONE,"insert into test.t1 (a,b) VALUES (?,?) USING TTL 2", 3, "y");
+        process(ConsistencyLevel.ONE,"update test.t1 set b = ? WHERE a = ?", "x", 3);
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(3L));
+
+        // expire documents as if the TTL had elapsed.
+        ElasticSecondaryIndex.expireDocuments(FBUtilities.nowInSeconds() + 3);
+        assertBusy(() -> assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(2L)));
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.queryStringQuery("b:y")).get().getHits().getTotalHits(), equalTo(0L));
+    }
+
+    @Test
+    public void unchangedRowsCompactionTest() throws Exception {
+        createIndex("test", Settings.builder().put(IndexMetaData.SETTING_INDEX_ON_COMPACTION, true).build());
+        ensureGreen("test");
+
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test.t1 ( a int,b text, primary key (a) )");
+        assertAcked(client().admin().indices().preparePutMapping("test").setType("t1")
+                .setSource("{ \"t1\" : { \"discover\" : \".*\" }}", XContentType.JSON).get());
+
+        for (int i = 0; i < 10; i++)
+            process(ConsistencyLevel.ONE,"insert into test.t1 (a,b) VALUES (?,?) USING TIMESTAMP 1000", i, "x");
+        StorageService.instance.forceKeyspaceFlush("test","t1");
+        // overwrite half of the rows, and one row with a TTL.
+        for (int i = 0; i < 5; i++)
+            process(ConsistencyLevel.ONE,"insert into test.t1 (a,b) VALUES (?,?) USING TIMESTAMP 2000", i, "y");
+        process(ConsistencyLevel.ONE,"update test.t1 USING TTL 1 AND TIMESTAMP 2000 set b = ? WHERE a = ?", "z", 9);
+        StorageService.instance.forceKeyspaceFlush("test","t1");
+        client().admin().indices().prepareRefresh("test").get();
+
+        long indexCount = client().admin().indices().prepareStats("test").get().getTotal().getIndexing().getTotal().getIndexCount();
+        // compact until the TTL expired, only the row with an expired cell is then indexed again.
+        assertBusy(() -> {
+            StorageService.instance.forceKeyspaceCompaction(true, "test");
+            assertThat(client().admin().indices().prepareStats("test").get().getTotal().getIndexing().getTotal().getIndexCount(), equalTo(indexCount + 1));
+        });
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.queryStringQuery("b:y")).get().getHits().getTotalHits(), equalTo(5L));
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.queryStringQuery("b:z")).get().getHits().getTotalHits(), equalTo(0L));
+    }
 }
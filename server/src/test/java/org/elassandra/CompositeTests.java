@@ -322,6 +322,52 @@ curl -XGET "http://$NODE:9200/test/timeseries/_search?pretty=true&q=meta.region:
         assertThat(((Map)source.get("meta")).get("region"), equalTo("west"));
     }
 
+    @Test
+    public void testTimeserieStaticJoinTest() throws Exception {
+        XContentBuilder mapping = XContentFactory.jsonBuilder()
+                .startObject()
+                    .startObject("properties")
+                        .startObject("m").field("type", "keyword").field("cql_collection", "singleton").field("cql_primary_key_order", 0).field("cql_partition_key", true).endObject()
+                        .startObject("t").field("type", "date").field("cql_collection", "singleton").field("cql_primary_key_order", 1).endObject()
+                        .startObject("v").field("type", "double").field("cql_collection", "singleton").endObject()
+                        .startObject("meta").field("type", "nested").field("cql_collection", "singleton").field("cql_struct", "map").field("cql_static_column", true).field("include_in_parent", true)
+                            .startObject("properties")
+                                .startObject("region").field("type", "keyword").endObject()
+                            .endObject()
+                        .endObject()
+                    .endObject()
+                    .startObject("_meta").field("index_static_document",true).endObject()
+                .endObject();
+        assertAcked(client().admin().indices().prepareCreate("test").addMapping("timeseries", mapping));
+        ensureGreen("test");
+
+        for (int i = 0; i < 10; i++) {
+            process(ConsistencyLevel.ONE, String.format(Locale.ROOT, "INSERT INTO test.timeseries (m, t, v) VALUES ('server1-cpu', '2016-04-10 13:%02d', %d);", i, i));
+            process(ConsistencyLevel.ONE, String.format(Locale.ROOT, "INSERT INTO test.timeseries (m, t, v) VALUES ('server2-cpu', '2016-04-10 13:%02d', %d);", i, i));
+        }
+        process(ConsistencyLevel.ONE,"INSERT INTO test.timeseries (m, meta) VALUES ('server1-cpu', { 'region':'west' } );");
+        process(ConsistencyLevel.ONE,"INSERT INTO test.timeseries (m, meta) VALUES ('server2-cpu', { 'region':'east' } );");
+
+        // static columns are only indexed in the static document, rows are joined on the partition token.
+        assertThat(client().prepareSearch().setIndices("test").setTypes("timeseries")
+                .setQuery(QueryBuilders.termQuery("meta.region", "west")).get().getHits().getTotalHits(), equalTo(1L));
+        assertThat(client().prepareSearch().setIndices("test").setTypes("timeseries")
+                .setQuery(QueryBuilders.boolQuery()
+                        .filter(QueryBuilders.staticJoinQuery(QueryBuilders.termQuery("meta.region", "west")))
+                        .filter(QueryBuilders.existsQuery("t")))
+                .get().getHits().getTotalHits(), equalTo(10L));
+
+        // a static update only re-indexes the static document.
+        long indexCount = client().admin().indices().prepareStats("test").get().getTotal().getIndexing().getTotal().getIndexCount();
+        process(ConsistencyLevel.ONE,"INSERT INTO test.timeseries (m, meta) VALUES ('server2-cpu', { 'region':'west' } );");
+        assertThat(client().admin().indices().prepareStats("test").get().getTotal().getIndexing().getTotal().getIndexCount(), equalTo(indexCount + 1));
+        assertThat(client().prepareSearch().setIndices("test").setTypes("timeseries")
+                .setQuery(QueryBuilders.boolQuery()
+                        .filter(QueryBuilders.staticJoinQuery(QueryBuilders.termQuery("meta.region", "west")))
+                        .filter(QueryBuilders.existsQuery("t")))
+                .get().getHits().getTotalHits(), equalTo(20L));
+    }
+
     @Test
     public void testTimeserieIndexStaticColumnsTest() throws Exception {
         XContentBuilder mapping = XContentFactory.jsonBuilder()
@@ -459,4 +505,46 @@ curl -XGET "http://$NODE:9200/test/timeseries/_search?pretty=true&q=meta.region:
         assertThat(hits.getTotalHits(), equalTo(0L));
     }
 
+    @Test
+    public void testBatchedRangeDeletesTest() throws Exception {
+        createIndex("ks");
+        ensureGreen("ks");
+
+        process(ConsistencyLevel.ONE,"CREATE TABLE ks.t1 (a text, b int, c int, d int, PRIMARY KEY (a, b, c))");
+        assertAcked(client().admin().indices().preparePutMapping("ks").setType("t1").setSource("{ \"t1\" : { \"discover\" : \".*\" }}", XContentType.JSON).get());
+        for (int b = 0; b < 10; b++)
+            for (int c = 0; c < 2; c++)
+                process(ConsistencyLevel.ONE, String.format(Locale.ROOT, "INSERT INTO ks.t1 (a,b,c,d) VALUES ('a',%d,%d,%d)", b, c, b));
+        assertThat(client().prepareSearch().setIndices("ks").setTypes("t1").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(20L));
+
+        // several range tombstones in one partition update, including single row slices.
+        process(ConsistencyLevel.ONE,"BEGIN UNLOGGED BATCH " +
+            "DELETE FROM ks.t1 WHERE a='a' AND b=1; " +
+            "DELETE FROM ks.t1 WHERE a='a' AND b >= 3 AND b < 5; " +
+            "DELETE FROM ks.t1 WHERE a='a' AND b=6 AND c >= 0 AND c <= 0; " +
+            "DELETE FROM ks.t1 WHERE a='a' AND (b,c) >= (8,1) AND (b,c) <= (8,1); " +
+            "APPLY BATCH");
+        // the refresh following the batched delete-by-query is deferred.
+        assertBusy(() -> {
+            assertThat(client().prepareSearch().setIndices("ks").setTypes("t1").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(12L));
+            assertThat(client().prepareSearch().setIndices("ks").setTypes("t1").setQuery(QueryBuilders.termQuery("d", 6)).get().getHits().getTotalHits(), equalTo(1L));
+            assertThat(client().prepareSearch().setIndices("ks").setTypes("t1").setQuery(QueryBuilders.termQuery("d", 8)).get().getHits().getTotalHits(), equalTo(1L));
+            assertThat(client().prepareSearch().setIndices("ks").setTypes("t1").setQuery(QueryBuilders.termQuery("d", 3)).get().getHits().getTotalHits(), equalTo(0L));
+        });
+
+        // a partition delete batched with range tombstones, then a new row in the partition.
+        for (int b = 0; b < 10; b++)
+            process(ConsistencyLevel.ONE, String.format(Locale.ROOT, "INSERT INTO ks.t1 (a,b,c,d) VALUES ('b',%d,0,%d)", b, b));
+        assertThat(client().prepareSearch().setIndices("ks").setTypes("t1").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(22L));
+        process(ConsistencyLevel.ONE,"BEGIN UNLOGGED BATCH " +
+            "DELETE FROM ks.t1 WHERE a='b'; " +
+            "DELETE FROM ks.t1 WHERE a='b' AND b >= 3 AND b < 5; " +
+            "APPLY BATCH");
+        process(ConsistencyLevel.ONE,"INSERT INTO ks.t1 (a,b,c,d) VALUES ('b',20,0,20)");
+        assertBusy(() -> {
+            assertThat(client().prepareSearch().setIndices("ks").setTypes("t1").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(13L));
+            assertThat(client().prepareSearch().setIndices("ks").setTypes("t1").setQuery(QueryBuilders.termQuery("d", 20)).get().getHits().getTotalHits(), equalTo(1L));
+        });
+    }
+
 }
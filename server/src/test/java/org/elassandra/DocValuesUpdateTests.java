@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra;
+
+import org.apache.cassandra.db.ConsistencyLevel;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.metrics.sum.Sum;
+import org.elasticsearch.search.sort.SortOrder;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.Locale;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * Partial updates of doc values only columns update the numeric doc values in place, without re-indexing the document.
+ */
+//gradle :server:test -Dtests.seed=65E2CF27F286CC89 -Dtests.class=org.elassandra.DocValuesUpdateTests -Dtests.security.manager=false -Dtests.locale=en-PH -Dtests.timezone=America/Coral_Harbour
+public class DocValuesUpdateTests extends ESSingleNodeTestCase {
+
+    private long indexCount() {
+        return client().admin().indices().prepareStats("test").get().getTotal().getIndexing().getTotal().getIndexCount();
+    }
+
+    private double sum(String field) {
+        client().admin().indices().prepareRefresh("test").get();
+        SearchResponse resp = client().prepareSearch().setIndices("test").setQuery(QueryBuilders.matchAllQuery())
+                .addAggregation(AggregationBuilders.sum("sum").field(field)).get();
+        return ((Sum) resp.getAggregations().get("sum")).getValue();
+    }
+
+    @Test
+    public void testDocValuesUpdate() throws Exception {
+        XContentBuilder mapping = XContentFactory.jsonBuilder()
+                .startObject()
+                    .startObject("properties")
+                        .startObject("id").field("type", "keyword").field("cql_collection", "singleton").field("cql_primary_key_order", 0).field("cql_partition_key", true).endObject()
+                        .startObject("name").field("type", "keyword").field("cql_collection", "singleton").endObject()
+                        .startObject("views").field("type", "long").field("index", false).field("cql_collection", "singleton").endObject()
+                        .startObject("score").field("type", "double").field("index", false).field("cql_collection", "singleton").endObject()
+                    .endObject()
+                .endObject();
+        assertAcked(client().admin().indices().prepareCreate("test")
+                .setSettings(Settings.builder().put(IndexMetaData.SETTING_INDEX_DOC_VALUES_UPDATE, true))
+                .addMapping("t1", mapping));
+        ensureGreen("test");
+
+        long now = new Date().getTime() * 1000;
+        for (int i = 0; i < 10; i++)
+            process(ConsistencyLevel.ONE, String.format(Locale.ROOT, "INSERT INTO test.t1 (id, name, views, score) VALUES ('%d', 'n%d', %d, 0.5) USING TIMESTAMP %d", i, i, i, now));
+        assertThat(sum("views"), equalTo(45.0));
+
+        // partial updates of doc values only columns are applied in place.
+        long indexCount = indexCount();
+        for (int i = 0; i < 10; i++)
+            process(ConsistencyLevel.ONE, String.format(Locale.ROOT, "UPDATE test.t1 USING TIMESTAMP %d SET views = %d, score = 1.5 WHERE id = '%d'", now + 10, i + 1, i));
+        assertThat(indexCount(), equalTo(indexCount));
+        assertThat(sum("views"), equalTo(55.0));
+        assertThat(sum("score"), equalTo(15.0));
+        assertThat(client().prepareSearch().setIndices("test").setQuery(QueryBuilders.matchAllQuery())
+                .addSort("views", SortOrder.DESC).get().getHits().getHits()[0].getId(), equalTo("9"));
+        assertThat(client().prepareSearch().setIndices("test").setQuery(QueryBuilders.existsQuery("views")).get().getHits().getTotalHits(), equalTo(10L));
+
+        // an out-of-order update is re-indexed with the read-before-write.
+        process(ConsistencyLevel.ONE, String.format(Locale.ROOT, "UPDATE test.t1 USING TIMESTAMP %d SET views = 100 WHERE id = '0'", now + 5));
+        assertThat(indexCount(), equalTo(indexCount + 1));
+        assertThat(sum("views"), equalTo(55.0));
+
+        // updates of indexed columns or of missing documents are re-indexed.
+        process(ConsistencyLevel.ONE, String.format(Locale.ROOT, "UPDATE test.t1 USING TIMESTAMP %d SET name = 'm0', views = 0 WHERE id = '0'", now + 20));
+        process(ConsistencyLevel.ONE, String.format(Locale.ROOT, "UPDATE test.t1 USING TIMESTAMP %d SET views = 10 WHERE id = '10'", now + 20));
+        assertThat(indexCount(), equalTo(indexCount + 3));
+        assertThat(sum("views"), equalTo(64.0));
+        assertThat(client().prepareSearch().setIndices("test").setQuery(QueryBuilders.termQuery("name", "m0")).get().getHits().getTotalHits(), equalTo(1L));
+    }
+}
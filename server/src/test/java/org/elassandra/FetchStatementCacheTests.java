@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra;
+
+import org.apache.cassandra.db.ConsistencyLevel;
+import org.elassandra.cluster.QueryManager;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * Prepared fetch statements are cached on the node and prepared again when the mapping or the CQL schema changes.
+ */
+//gradle :server:test -Dtests.seed=65E2CF27F286CC89 -Dtests.class=org.elassandra.FetchStatementCacheTests -Dtests.security.manager=false -Dtests.locale=en-PH -Dtests.timezone=America/Coral_Harbour
+public class FetchStatementCacheTests extends ESSingleNodeTestCase {
+
+    private Map<String, Object> source(String id) {
+        SearchResponse resp = client().prepareSearch().setIndices("test").setQuery(QueryBuilders.termQuery("_id", id)).get();
+        assertThat(resp.getHits().getTotalHits(), equalTo(1L));
+        return resp.getHits().getAt(0).getSourceAsMap();
+    }
+
+    @Test
+    public void testFetchStatementCache() throws Exception {
+        process(ConsistencyLevel.ONE, "CREATE KEYSPACE IF NOT EXISTS test WITH replication={ 'class':'NetworkTopologyStrategy', 'DC1':'1' }");
+        process(ConsistencyLevel.ONE, "CREATE TABLE test.t1 (id text PRIMARY KEY, a text)");
+        assertAcked(client().admin().indices().prepareCreate("test").addMapping("t1", discoverMapping("t1")));
+        ensureGreen("test");
+
+        process(ConsistencyLevel.ONE, "INSERT INTO test.t1 (id, a) VALUES ('1', 'a1')");
+        QueryManager queryManager = clusterService().getQueryManager();
+        long hits = queryManager.getFetchStatementHits();
+        long misses = queryManager.getFetchStatementMisses();
+        assertThat(source("1").get("a"), equalTo("a1"));
+        assertThat(queryManager.getFetchStatementMisses() - misses, equalTo(1L));
+        assertThat(queryManager.getFetchStatementHits() - hits, equalTo(0L));
+
+        // the prepared statement is reused by the next searches.
+        assertThat(source("1").get("a"), equalTo("a1"));
+        assertThat(source("1").get("a"), equalTo("a1"));
+        assertThat(queryManager.getFetchStatementMisses() - misses, equalTo(1L));
+        assertThat(queryManager.getFetchStatementHits() - hits, equalTo(2L));
+
+        // another set of required columns is prepared.
+        SearchResponse resp = client().prepareSearch().setIndices("test").setQuery(QueryBuilders.termQuery("_id", "1")).setStoredFields("a").get();
+        assertThat(resp.getHits().getTotalHits(), equalTo(1L));
+        assertThat(queryManager.getFetchStatementMisses() - misses, equalTo(2L));
+        assertThat(queryManager.getFetchStatementHits() - hits, equalTo(2L));
+
+        // a new column added by a mapping update is fetched.
+        assertAcked(client().admin().indices().preparePutMapping("test").setType("t1")
+                .setSource(XContentFactory.jsonBuilder().startObject().startObject("properties")
+                        .startObject("b").field("type", "keyword").field("cql_collection", "singleton").endObject()
+                        .endObject().endObject()).get());
+        process(ConsistencyLevel.ONE, "INSERT INTO test.t1 (id, a, b) VALUES ('2', 'a2', 'b2')");
+        assertThat(source("2").get("b"), equalTo("b2"));
+        assertThat(queryManager.getFetchStatementMisses() - misses, equalTo(3L));
+        assertThat(queryManager.getFetchStatementHits() - hits, equalTo(2L));
+        assertThat(source("1").get("a"), equalTo("a1"));
+        assertThat(queryManager.getFetchStatementMisses() - misses, equalTo(3L));
+        assertThat(queryManager.getFetchStatementHits() - hits, equalTo(3L));
+    }
+}
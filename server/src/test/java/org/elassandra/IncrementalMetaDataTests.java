@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra;
+
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.Schema;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+
+/**
+ * Index metadata is persisted per index in the table extensions, a mapping update only rewrites the affected index entry.
+ */
+//gradle :server:test -Dtests.seed=65E2CF27F286CC89 -Dtests.class=org.elassandra.IncrementalMetaDataTests -Dtests.security.manager=false -Dtests.locale=en-PH -Dtests.timezone=America/Coral_Harbour
+public class IncrementalMetaDataTests extends ESSingleNodeTestCase {
+
+    private XContentBuilder mapping(String... fields) throws Exception {
+        XContentBuilder mapping = XContentFactory.jsonBuilder().startObject().startObject("properties");
+        mapping.startObject("id").field("type", "keyword").field("cql_collection", "singleton").field("cql_primary_key_order", 0).field("cql_partition_key", true).endObject();
+        for (String field : fields)
+            mapping.startObject(field).field("type", "keyword").field("cql_collection", "singleton").endObject();
+        return mapping.endObject().endObject();
+    }
+
+    private ByteBuffer extension(String index) {
+        IndexMetaData indexMetaData = clusterService().state().metaData().index(index);
+        CFMetaData cfm = Schema.instance.getCFMetaData("test", "t1");
+        return cfm.params.extensions.get(clusterService().getExtensionKey(indexMetaData));
+    }
+
+    @Test
+    public void testIncrementalPersistence() throws Exception {
+        assertAcked(client().admin().indices().prepareCreate("test1")
+                .setSettings(Settings.builder().put("index.keyspace", "test"))
+                .addMapping("t1", mapping("a")));
+        assertAcked(client().admin().indices().prepareCreate("test2")
+                .setSettings(Settings.builder().put("index.keyspace", "test"))
+                .addMapping("t1", mapping("a")));
+        ensureGreen("test1", "test2");
+
+        ByteBuffer extension1 = extension("test1");
+        ByteBuffer extension2 = extension("test2");
+
+        // a mapping update only rewrites the extension of the updated index.
+        assertAcked(client().admin().indices().preparePutMapping("test1").setType("t1").setSource(mapping("a", "b")).get());
+        assertThat(extension("test1"), not(equalTo(extension1)));
+        assertThat(extension("test2"), equalTo(extension2));
+        assertNotNull(clusterService().state().metaData().index("test1").mapping("t1").sourceAsMap().get("properties"));
+
+        // an unchanged mapping does not emit any schema mutation.
+        UUID schemaVersion = Schema.instance.getVersion();
+        assertAcked(client().admin().indices().preparePutMapping("test1").setType("t1").setSource(mapping("a", "b")).get());
+        assertThat(Schema.instance.getVersion(), equalTo(schemaVersion));
+    }
+}
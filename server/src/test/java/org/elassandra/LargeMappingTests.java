@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra;
+
+import com.google.common.collect.Iterables;
+import org.apache.cassandra.config.CFMetaData;
+import org.apache.cassandra.config.Schema;
+import org.elassandra.cluster.SchemaManager;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.mapper.MapperService;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * Track index creation and put mapping time for a 10k fields mapping, with objects stored as UDTs.
+ */
+//gradle :server:test -Dtests.seed=65E2CF27F286CC89 -Dtests.class=org.elassandra.LargeMappingTests -Dtests.security.manager=false -Dtests.locale=en-PH -Dtests.timezone=America/Coral_Harbour
+public class LargeMappingTests extends ESSingleNodeTestCase {
+
+    static final int FIELDS = 9000;
+    static final int OBJECTS = 100;
+    static final int SUB_FIELDS = 10;
+
+    XContentBuilder mapping(int from, int to, int objectsFrom, int objectsTo) throws IOException {
+        XContentBuilder builder = XContentFactory.jsonBuilder().startObject().startObject("properties");
+        for (int i = from; i < to; i++)
+            builder.startObject("f" + i).field("type", (i % 2 == 0) ? "keyword" : "long").endObject();
+        for (int i = objectsFrom; i < objectsTo; i++) {
+            builder.startObject("o" + i).field("type", "object").startObject("properties");
+            for (int j = 0; j < SUB_FIELDS; j++)
+                builder.startObject("s" + j).field("type", "keyword").endObject();
+            builder.endObject().endObject();
+        }
+        return builder.endObject().endObject();
+    }
+
+    @Test
+    public void testLargeMapping() throws Exception {
+        long start = System.nanoTime();
+        assertAcked(client().admin().indices().prepareCreate("test")
+                .setSettings(Settings.builder().put(MapperService.INDEX_MAPPING_TOTAL_FIELDS_LIMIT_SETTING.getKey(), 20000))
+                .addMapping("t1", mapping(0, FIELDS, 0, OBJECTS)));
+        ensureGreen("test");
+        logger.info("index with {} fields created in {}ms", FIELDS + OBJECTS * (SUB_FIELDS + 1), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        CFMetaData cfm = Schema.instance.getCFMetaData("test", "t1");
+        assertThat(Iterables.size(cfm.allColumns()), equalTo(FIELDS + OBJECTS + 1)); // + _id
+        assertThat(Iterables.size(Schema.instance.getKSMetaData("test").types), equalTo(OBJECTS));
+
+        start = System.nanoTime();
+        assertAcked(client().admin().indices().preparePutMapping("test").setType("t1").setSource(mapping(FIELDS, FIELDS + 1000, OBJECTS, OBJECTS + 10)).get());
+        logger.info("put mapping with {} new fields in {}ms", 1000 + 10 * (SUB_FIELDS + 1), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        cfm = Schema.instance.getCFMetaData("test", "t1");
+        assertThat(Iterables.size(cfm.allColumns()), equalTo(FIELDS + 1000 + OBJECTS + 10 + 1));
+        assertThat(Iterables.size(Schema.instance.getKSMetaData("test").types), equalTo(OBJECTS + 10));
+    }
+
+    @Test
+    public void testPutMappingPlan() throws Exception {
+        for (String index : new String[] { "test1", "test2" })
+            assertAcked(client().admin().indices().prepareCreate(index)
+                    .setSettings(Settings.builder().put("index.keyspace", "test"))
+                    .addMapping("t1", mapping(0, 100, 0, 10)));
+        ensureGreen("test1", "test2");
+
+        // the keyspace metadata is built once and announced once for both indices.
+        SchemaManager schemaManager = clusterService().getSchemaManager();
+        long plans = schemaManager.getKeyspacePlans();
+        long announces = schemaManager.getSchemaAnnounces();
+        assertAcked(client().admin().indices().preparePutMapping("test1", "test2").setType("t1").setSource(mapping(100, 200, 10, 20)).get());
+        assertThat(schemaManager.getKeyspacePlans() - plans, equalTo(1L));
+        assertThat(schemaManager.getSchemaAnnounces() - announces, equalTo(1L));
+
+        CFMetaData cfm = Schema.instance.getCFMetaData("test", "t1");
+        assertThat(Iterables.size(cfm.allColumns()), equalTo(200 + 20 + 1));
+        assertThat(Iterables.size(Schema.instance.getKSMetaData("test").types), equalTo(20));
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra;
+
+import org.apache.cassandra.db.ConsistencyLevel;
+import org.elassandra.index.ParsedDocumentHandoff;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.search.sort.SortOrder;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+import org.junit.Test;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+/**
+ * Documents written through the elasticsearch API are indexed from the fields parsed by the write path.
+ */
+//gradle :server:test -Dtests.seed=65E2CF27F286CC89 -Dtests.class=org.elassandra.ParsedDocumentHandoffTests -Dtests.security.manager=false -Dtests.locale=en-PH -Dtests.timezone=America/Coral_Harbour
+public class ParsedDocumentHandoffTests extends ESSingleNodeTestCase {
+
+    @Test
+    public void testHandoff() throws Exception {
+        XContentBuilder mapping = XContentFactory.jsonBuilder()
+                .startObject()
+                    .startObject("properties")
+                        .startObject("name").field("type", "keyword").field("cql_collection", "singleton").endObject()
+                        .startObject("age").field("type", "integer").field("cql_collection", "singleton").endObject()
+                        .startObject("tags").field("type", "keyword").endObject()
+                    .endObject()
+                .endObject();
+        assertAcked(client().admin().indices().prepareCreate("test").addMapping("t1", mapping));
+        ensureGreen("test");
+
+        long reused = ParsedDocumentHandoff.instance.getReused();
+        client().prepareIndex("test", "t1", "1").setSource("{ \"name\":\"alice\", \"age\":30, \"tags\":[\"a\",\"b\"] }", XContentType.JSON).get();
+        client().prepareIndex("test", "t1", "2").setSource("{ \"name\":\"bob\", \"age\":20 }", XContentType.JSON).get();
+        assertThat(ParsedDocumentHandoff.instance.getReused(), greaterThan(reused));
+        assertTrue(ParsedDocumentHandoff.instance.isEmpty());
+
+        // mix with a document indexed from cells
+        process(ConsistencyLevel.ONE, "INSERT INTO test.t1 (\"_id\", name, age, tags) VALUES ('3', 'carol', 40, ['b'])");
+
+        SearchResponse resp = client().prepareSearch().setIndices("test").setQuery(QueryBuilders.termQuery("tags", "b")).addSort("age", SortOrder.ASC).get();
+        assertThat(resp.getHits().getTotalHits(), equalTo(2L));
+        assertThat(resp.getHits().getHits()[0].getId(), equalTo("1"));
+        assertThat(resp.getHits().getHits()[1].getId(), equalTo("3"));
+        assertThat(client().prepareSearch().setIndices("test").setQuery(QueryBuilders.rangeQuery("age").lt(35)).get().getHits().getTotalHits(), equalTo(2L));
+
+        // overwrite, previous fields must be removed
+        client().prepareIndex("test", "t1", "1").setSource("{ \"name\":\"alice\", \"age\":31 }", XContentType.JSON).get();
+        assertThat(client().prepareSearch().setIndices("test").setQuery(QueryBuilders.termQuery("tags", "a")).get().getHits().getTotalHits(), equalTo(0L));
+        assertThat(client().prepareSearch().setIndices("test").setQuery(QueryBuilders.termQuery("age", 31)).get().getHits().getTotalHits(), equalTo(1L));
+    }
+}
@@ -22,16 +22,20 @@ import org.apache.cassandra.db.ConsistencyLevel;
 import org.apache.cassandra.db.marshal.BytesType;
 import org.apache.cassandra.db.marshal.UTF8Type;
 import org.apache.cassandra.utils.ByteBufferUtil;
+import org.elassandra.index.ElasticSecondaryIndex;
 import org.elasticsearch.action.DocWriteResponse;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.cluster.metadata.MappingMetaData;
+import org.elasticsearch.common.compress.CompressedXContent;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.common.xcontent.XContentParser;
 import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.common.xcontent.json.JsonXContent;
+import org.elasticsearch.index.mapper.DocumentMapper;
 import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.indices.IndicesService;
 import org.elasticsearch.test.ESSingleNodeTestCase;
 import org.junit.Test;
 
@@ -169,6 +173,31 @@ public class PartitionedIndexTests extends ESSingleNodeTestCase {
         assertThat(client().prepareSearch().setIndices("fb2").setTypes("messages").get().getHits().getTotalHits(), equalTo(1L));
     }
     
+    @Test
+    public void sameMappingIndicesTest() throws Exception {
+        process(ConsistencyLevel.ONE,String.format(Locale.ROOT, "CREATE KEYSPACE IF NOT EXISTS fb WITH replication = {'class': 'NetworkTopologyStrategy', '%s': '1'}",DatabaseDescriptor.getLocalDataCenter()));
+        process(ConsistencyLevel.ONE,"CREATE TABLE fb.messages ( conversation text, num int, author text, content text, date timestamp, PRIMARY KEY (conversation, num))");
+
+        // documents are built once and indexed in the 3 indices
+        for(String index : new String[] { "fb1", "fb2", "fb3" }) {
+            createIndex(index, Settings.builder().put("index.keyspace","fb").put("index.table","messages").build(),"messages", discoverMapping("messages"));
+            ensureGreen(index);
+        }
+        ElasticSecondaryIndex esi = ElasticSecondaryIndex.elasticSecondayIndices.get("fb.messages");
+        long builtDocuments = esi.getBuiltDocuments();
+        long reusedDocuments = esi.getReusedDocuments();
+        for(int i=0; i < 10; i++)
+            process(ConsistencyLevel.ONE,String.format(Locale.ROOT, "INSERT INTO fb.messages (conversation, num, author, content, date) VALUES ('Lisa', %d, 'Barth', 'ouais', 1469968740000)", i));
+        assertThat(esi.getBuiltDocuments() - builtDocuments, equalTo(10L));
+        assertThat(esi.getReusedDocuments() - reusedDocuments, equalTo(20L));
+
+        for(String index : new String[] { "fb1", "fb2", "fb3" }) {
+            assertThat(client().prepareSearch().setIndices(index).setTypes("messages").get().getHits().getTotalHits(), equalTo(10L));
+            assertThat(client().prepareSearch().setIndices(index).setTypes("messages").setQuery(QueryBuilders.termQuery("num", 5)).get().getHits().getTotalHits(), equalTo(1L));
+            assertThat(client().prepareSearch().setIndices(index).setTypes("messages").setQuery(QueryBuilders.termQuery("author", "Barth")).get().getHits().getTotalHits(), equalTo(10L));
+        }
+    }
+
     @Test
     public void basicVirtualIndexTest() throws Exception {
         process(ConsistencyLevel.ONE,String.format(Locale.ROOT, "CREATE KEYSPACE ks WITH replication = {'class': 'NetworkTopologyStrategy', '%s': '1'}",DatabaseDescriptor.getLocalDataCenter()));
@@ -284,4 +313,48 @@ public class PartitionedIndexTests extends ESSingleNodeTestCase {
         }
     }
 
+    @Test
+    public void sharedVirtualIndexMappingTest() throws Exception {
+        process(ConsistencyLevel.ONE,String.format(Locale.ROOT, "CREATE KEYSPACE ks WITH replication = {'class': 'NetworkTopologyStrategy', '%s': '1'}",DatabaseDescriptor.getLocalDataCenter()));
+        process(ConsistencyLevel.ONE,"CREATE TABLE ks.t1 ( name text, age int, primary key (name))");
+
+        for(long i=20; i < 25; i++) {
+            createIndex("ks_"+i, Settings.builder()
+                    .put("index.keyspace","ks")
+                    .put("index.partition_function", "byage ks_%d age")
+                    .put("index.partition_function_class", "StringPartitionFunction")
+                    .put("index.virtual_index", "ks")
+                    .build(),"t1", discoverMapping("t1"));
+            ensureGreen("ks_"+i);
+        }
+
+        // indices with the same mapping share the same mapper tree
+        IndicesService indicesService = getInstanceFromNode(IndicesService.class);
+        DocumentMapper mapper20 = indicesService.indexServiceSafe(resolveIndex("ks_20")).mapperService().documentMapper("t1");
+        for(long i=21; i < 25; i++) {
+            DocumentMapper mapper = indicesService.indexServiceSafe(resolveIndex("ks_"+i)).mapperService().documentMapper("t1");
+            assertEquals(mapper20.mappingSource(), mapper.mappingSource());
+            assertSame(mapper20.root(), mapper.root());
+        }
+
+        // copy-on-write when a mapping is updated, the previously shared mapper tree is left unchanged
+        CompressedXContent sharedSource = mapper20.mappingSource();
+        assertAcked(client().admin().indices().preparePutMapping("ks_22").setType("t1")
+                .setSource("{\"t1\":{\"properties\":{\"extra\":{\"type\":\"keyword\",\"cql_collection\":\"singleton\"}}}}", XContentType.JSON).get());
+        DocumentMapper mapper22 = indicesService.indexServiceSafe(resolveIndex("ks_22")).mapperService().documentMapper("t1");
+        assertNotNull(mapper22.mappers().getMapper("extra"));
+        assertNotSame(mapper20.root(), mapper22.root());
+        assertNull(mapper20.mappers().getMapper("extra"));
+        assertNull(mapper20.root().getMapper("extra"));
+        assertEquals(sharedSource, mapper20.mappingSource());
+
+        assertEquals(client().prepareIndex("ks_22", "t1","xx")
+                .setSource("{\"age\": 22, \"content\": \"ouais\"}", XContentType.JSON)
+                .get().getResult(), DocWriteResponse.Result.CREATED);
+        for(long i=20; i < 25; i++) {
+            DocumentMapper mapper = indicesService.indexServiceSafe(resolveIndex("ks_"+i)).mapperService().documentMapper("t1");
+            assertNotNull(mapper.mappers().getMapper("content"));
+        }
+        assertThat(client().prepareSearch().setIndices("ks_22").setTypes("t1").setQuery(QueryBuilders.termQuery("content", "ouais")).get().getHits().getTotalHits(), equalTo(1L));
+    }
 }
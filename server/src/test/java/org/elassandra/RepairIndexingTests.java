@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra;
+
+import org.apache.cassandra.db.ColumnFamilyStore;
+import org.apache.cassandra.db.ConsistencyLevel;
+import org.apache.cassandra.db.Keyspace;
+import org.apache.cassandra.index.SecondaryIndexBuilder;
+import org.apache.cassandra.service.StorageService;
+import org.elassandra.index.ElasticSecondaryIndex;
+import org.elasticsearch.cluster.service.ClusterService;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+
+/**
+ * SSTables streamed by a repair indexed in parallel batches, rows already indexed with the same write timestamp being skipped.
+ */
+//gradle :server:test -Dtests.seed=65E2CF27F286CC89 -Dtests.class=org.elassandra.RepairIndexingTests -Dtests.security.manager=false -Dtests.locale=en-PH -Dtests.timezone=America/Coral_Harbour
+public class RepairIndexingTests extends ESSingleNodeTestCase {
+
+    @BeforeClass
+    public static void setRepairIndexingThreads() {
+        // read when the node starts.
+        System.setProperty(ClusterService.SETTING_SYSTEM_REPAIR_INDEXING_THREADS, "2");
+    }
+
+    @AfterClass
+    public static void clearRepairIndexingThreads() {
+        System.clearProperty(ClusterService.SETTING_SYSTEM_REPAIR_INDEXING_THREADS);
+    }
+
+    long indexCount() {
+        return client().admin().indices().prepareStats("test").get().getTotal().getIndexing().getTotal().getIndexCount();
+    }
+
+    long docCount() {
+        return client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits();
+    }
+
+    @Test
+    public void testRepairIndexing() throws Exception {
+        process(ConsistencyLevel.ONE,"CREATE KEYSPACE IF NOT EXISTS test WITH replication={ 'class':'NetworkTopologyStrategy', 'DC1':'1' }");
+        process(ConsistencyLevel.ONE,"CREATE TABLE IF NOT EXISTS test.t1 ( a int, b text, primary key (a) )");
+        XContentBuilder mapping = XContentFactory.jsonBuilder().startObject().startObject("t1").field("discover", ".*").endObject().endObject();
+        createIndex("test", "t1", mapping);
+        ensureGreen("test");
+
+        int N = 100;
+        for (int i = 0; i < N; i++)
+            process(ConsistencyLevel.ONE,"insert into test.t1 (a,b) VALUES (?,?)", i, "x" + i);
+        assertThat(docCount(), equalTo((long) N));
+
+        // rows written while the index is closed are not indexed, as rows received by a repair.
+        int M = 50;
+        assertAcked(client().admin().indices().prepareClose("test").get());
+        for (int i = N; i < N + M; i++)
+            process(ConsistencyLevel.ONE,"insert into test.t1 (a,b) VALUES (?,?)", i, "x" + i);
+        StorageService.instance.forceKeyspaceFlush("test", "t1");
+        assertAcked(client().admin().indices().prepareOpen("test").get());
+        ensureGreen("test");
+        assertThat(docCount(), equalTo((long) N));
+
+        // index all the sstables, only the rows missing in the index are indexed.
+        ColumnFamilyStore cfs = Keyspace.open("test").getColumnFamilyStore("t1");
+        ElasticSecondaryIndex esi = ElasticSecondaryIndex.elasticSecondayIndices.get("test.t1");
+        SecondaryIndexBuilder builder = esi.getBulkIndexBuilder(cfs, cfs.getLiveSSTables());
+        assertThat(builder, notNullValue());
+        long indexCount = indexCount();
+        builder.build();
+        client().admin().indices().prepareRefresh("test").get();
+        assertThat(docCount(), equalTo((long) (N + M)));
+        assertThat(indexCount() - indexCount, equalTo((long) M));
+    }
+}
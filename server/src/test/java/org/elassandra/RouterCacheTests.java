@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra;
+
+import org.apache.cassandra.db.ConsistencyLevel;
+import org.elassandra.cluster.routing.AbstractSearchStrategy;
+import org.elassandra.discovery.CassandraDiscovery;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.cluster.routing.IndexShardRoutingTable;
+import org.elasticsearch.common.Priority;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+import org.junit.Test;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+
+/**
+ * Index routers are reused while their inputs are unchanged, and dropped when the index is deleted.
+ */
+//gradle :server:test -Dtests.seed=65E2CF27F286CC89 -Dtests.class=org.elassandra.RouterCacheTests -Dtests.security.manager=false -Dtests.locale=en-PH -Dtests.timezone=America/Coral_Harbour
+public class RouterCacheTests extends ESSingleNodeTestCase {
+
+    @Override
+    protected Settings nodeSettings() {
+        return Settings.builder().put(CassandraDiscovery.ROUTING_UPDATE_DELAY_SETTING.getKey(), "2s").build();
+    }
+
+    @Test
+    public void testRouterReuseAndInvalidation() throws Exception {
+        process(ConsistencyLevel.ONE, "CREATE KEYSPACE IF NOT EXISTS test WITH replication={ 'class':'NetworkTopologyStrategy', 'DC1':'1' }");
+        process(ConsistencyLevel.ONE, "CREATE TABLE test.t1 (id text PRIMARY KEY, name text)");
+        assertAcked(client().admin().indices().prepareCreate("test").addMapping("t1", discoverMapping("t1")));
+        ensureGreen("test");
+
+        // unchanged inputs reuse the cached router.
+        ClusterState state = clusterService().state();
+        IndexMetaData indexMetaData = state.metaData().index("test");
+        AbstractSearchStrategy.Router router = clusterService().updateRouter(indexMetaData, state);
+        long reuses = clusterService().routerReuses().count();
+        assertSame(router, clusterService().updateRouter(indexMetaData, state));
+        assertThat(clusterService().routerReuses().count(), equalTo(reuses + 1));
+
+        // routers of a deleted index are removed.
+        assertAcked(client().admin().indices().prepareDelete("test").get());
+        assertBusy(() -> assertNull(clusterService().getRouter(indexMetaData, clusterService().state())));
+
+        // a recreated index with the same name and keyspace is routed to its new shards.
+        assertAcked(client().admin().indices().prepareCreate("test").addMapping("t1", discoverMapping("t1")));
+        ensureGreen("test");
+        IndexMetaData newIndexMetaData = clusterService().state().metaData().index("test");
+        assertThat(newIndexMetaData.getIndexUUID(), not(equalTo(indexMetaData.getIndexUUID())));
+        AbstractSearchStrategy.Router newRouter = clusterService().getRouter(newIndexMetaData, clusterService().state());
+        assertNotSame(router, newRouter);
+        for (IndexShardRoutingTable shardRoutingTable : newRouter.newRoute(null, null).getShardRouting())
+            assertThat(shardRoutingTable.getShardId().getIndex(), equalTo(newIndexMetaData.getIndex()));
+    }
+
+    @Test
+    public void testCoalescedRoutingUpdates() throws Exception {
+        process(ConsistencyLevel.ONE, "CREATE KEYSPACE IF NOT EXISTS test WITH replication={ 'class':'NetworkTopologyStrategy', 'DC1':'1' }");
+        process(ConsistencyLevel.ONE, "CREATE TABLE IF NOT EXISTS test.t2 (id text PRIMARY KEY, name text)");
+        assertAcked(client().admin().indices().prepareCreate("test2").setSettings(Settings.builder().put("index.keyspace", "test").build())
+                .addMapping("t2", discoverMapping("t2")));
+        ensureGreen("test2");
+        for (int i = 0; i < 10; i++)
+            process(ConsistencyLevel.ONE, "INSERT INTO test.t2 (id, name) VALUES (?, ?)", Integer.toString(i), "n" + i);
+
+        // wait for the routing updates of the index creation.
+        CassandraDiscovery discovery = clusterService().getCassandraDiscovery();
+        assertBusy(() -> assertFalse(discovery.hasPendingRoutingUpdates()));
+        client().admin().cluster().prepareHealth().setWaitForEvents(Priority.LANGUID).get();
+        IndexMetaData indexMetaData = clusterService().state().metaData().index("test2");
+        AbstractSearchStrategy.Router router = clusterService().getRouter(indexMetaData, clusterService().state());
+        long updates = discovery.routingTableUpdates().count();
+        long rebuilds = clusterService().routerRebuilds().count();
+
+        // routing changes within the update delay are applied by a single routing table update and router rebuild.
+        discovery.setSearchEnabled(false);
+        discovery.setSearchEnabled(true);
+        discovery.setSearchEnabled(false);
+        assertTrue(discovery.hasPendingRoutingUpdates());
+        assertBusy(() -> assertThat(discovery.routingTableUpdates().count(), equalTo(updates + 1)));
+        assertThat(clusterService().routerRebuilds().count(), equalTo(rebuilds + 1));
+        assertNotSame(router, clusterService().getRouter(indexMetaData, clusterService().state()));
+
+        // search enabled again, the rebuilt router routes to the started local shard.
+        discovery.setSearchEnabled(true);
+        assertBusy(() -> assertThat(discovery.routingTableUpdates().count(), equalTo(updates + 2)));
+        assertThat(clusterService().routerRebuilds().count(), equalTo(rebuilds + 2));
+        AbstractSearchStrategy.Router newRouter = clusterService().getRouter(indexMetaData, clusterService().state());
+        for (IndexShardRoutingTable shardRoutingTable : newRouter.newRoute(null, null).getShardRouting()) {
+            assertThat(shardRoutingTable.getShardId().getIndex(), equalTo(indexMetaData.getIndex()));
+            assertFalse(shardRoutingTable.activeShards().isEmpty());
+        }
+        assertThat(client().prepareSearch().setIndices("test2").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(10L));
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra;
+
+import org.apache.cassandra.db.ConsistencyLevel;
+import org.apache.cassandra.dht.Murmur3Partitioner.LongToken;
+import org.apache.cassandra.dht.Range;
+import org.apache.cassandra.dht.Token;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.search.join.ScoreMode;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.FixedBitSet;
+import org.elassandra.index.ElasticSecondaryIndex;
+import org.elassandra.index.SegmentStreamingService;
+import org.elasticsearch.common.lucene.search.Queries;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.mapper.IdFieldMapper;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+
+/**
+ * Filtered copy of the lucene segments streamed on bootstrap or rebuild, and import of the copy in the target shard.
+ */
+//gradle :server:test -Dtests.seed=65E2CF27F286CC89 -Dtests.class=org.elassandra.SegmentStreamingTests -Dtests.security.manager=false -Dtests.locale=en-PH -Dtests.timezone=America/Coral_Harbour
+public class SegmentStreamingTests extends ESSingleNodeTestCase {
+    static final int N = 200;
+    static final int ITEMS = 2;   // nested documents by root document
+
+    // keep the upper half of the ring.
+    static final Collection<Range<Token>> RANGES = Collections.singleton(new Range<Token>(new LongToken(0), new LongToken(Long.MIN_VALUE)));
+
+    IndexShard createNestedIndex() throws Exception {
+        XContentBuilder mapping = XContentFactory.jsonBuilder()
+                .startObject()
+                    .startObject("t1")
+                        .startObject("properties")
+                            .startObject("name").field("type", "keyword").field("cql_collection", "singleton").endObject()
+                            .startObject("items")
+                                .field("type", "nested")
+                                .field("cql_collection", "list")
+                                .startObject("properties")
+                                    .startObject("x").field("type", "integer").field("cql_collection", "singleton").endObject()
+                                .endObject()
+                            .endObject()
+                        .endObject()
+                    .endObject()
+                .endObject();
+        createIndex("test", "t1", mapping);
+        ensureGreen("test");
+
+        for (int i = 0; i < N; i++) {
+            XContentBuilder source = XContentFactory.jsonBuilder().startObject().field("name", "n" + i).startArray("items");
+            for (int j = 0; j < ITEMS; j++)
+                source.startObject().field("x", j).endObject();
+            client().prepareIndex("test", "t1", Integer.toString(i)).setSource(source.endArray().endObject()).get();
+        }
+        assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo((long) N));
+        return getInstanceFromNode(IndicesService.class).indexServiceSafe(resolveIndex("test")).getShard(0);
+    }
+
+    Directory filteredCopy(IndexShard indexShard, Collection<Range<Token>> ranges) throws Exception {
+        Directory target = FSDirectory.open(createTempDir());
+        try (Engine.IndexCommitRef commitRef = indexShard.acquireIndexCommit(false, true);
+             DirectoryReader reader = DirectoryReader.open(commitRef.getIndexCommit())) {
+            IndexWriterConfig iwc = new IndexWriterConfig(null)
+                    .setOpenMode(IndexWriterConfig.OpenMode.CREATE)
+                    .setCodec(indexShard.getEngine().config().getCodec());
+            SegmentStreamingService.filteredCopy(reader, ranges, nonNestedFilter(indexShard), target, iwc);
+        }
+        return target;
+    }
+
+    Query nonNestedFilter(IndexShard indexShard) {
+        return Queries.newNonNestedFilter(indexShard.indexSettings().getIndexVersionCreated());
+    }
+
+    @Test
+    public void testFilteredCopy() throws Exception {
+        IndexShard indexShard = createNestedIndex();
+        long kept = client().prepareSearch().setIndices("test").setTypes("t1")
+                .setQuery(QueryBuilders.matchAllQuery())
+                .setTokenRanges(RANGES)
+                .get().getHits().getTotalHits();
+        assertThat(kept, greaterThan(0L));
+        assertThat(kept, lessThan((long) N));
+
+        try (Directory copy = filteredCopy(indexShard, RANGES);
+             DirectoryReader reader = DirectoryReader.open(copy)) {
+            IndexSearcher searcher = new IndexSearcher(reader);
+            Query rootQuery = nonNestedFilter(indexShard);
+            Query tokenQuery = new BooleanQuery.Builder()
+                    .add(rootQuery, Occur.FILTER)
+                    .add(ElasticSecondaryIndex.tokenRangesQuery(RANGES), Occur.FILTER)
+                    .build();
+
+            // root documents of the token ranges only, each one with its nested documents.
+            assertThat((long) searcher.count(rootQuery), equalTo(kept));
+            assertThat((long) searcher.count(tokenQuery), equalTo(kept));
+            assertThat((long) reader.numDocs(), equalTo(kept * (ITEMS + 1)));
+
+            // nested documents are kept in the same block, before their root document.
+            Weight rootWeight = searcher.createNormalizedWeight(rootQuery, false);
+            for (LeafReaderContext ctx : reader.leaves()) {
+                FixedBitSet roots = new FixedBitSet(ctx.reader().maxDoc());
+                Scorer scorer = rootWeight.scorer(ctx);
+                if (scorer != null)
+                    roots.or(scorer.iterator());
+                assertThat(ctx.reader().maxDoc() % (ITEMS + 1), equalTo(0));
+                for (int doc = 0; doc < ctx.reader().maxDoc(); doc++)
+                    assertThat(String.format(Locale.ROOT, "doc %d", doc), roots.get(doc), equalTo(doc % (ITEMS + 1) == ITEMS));
+            }
+        }
+    }
+
+    @Test
+    public void testAddIndexesSkipsLiveDocuments() throws Exception {
+        IndexShard indexShard = createNestedIndex();
+        try (Directory copy = filteredCopy(indexShard, RANGES)) {
+            long copied;
+            try (DirectoryReader reader = DirectoryReader.open(copy)) {
+                copied = new IndexSearcher(reader).count(nonNestedFilter(indexShard));
+            }
+            assertThat(copied, greaterThan(0L));
+
+            // remove some documents of the copied token ranges, only these ones are imported.
+            long removed = 0;
+            for (int i = 0; i < N; i++) {
+                if (client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.idsQuery().addIds(Integer.toString(i)))
+                        .setTokenRanges(RANGES).get().getHits().getTotalHits() == 1 && removed < copied / 2) {
+                    client().prepareDelete("test", "t1", Integer.toString(i)).get();
+                    removed++;
+                }
+            }
+            assertThat(removed, greaterThan(0L));
+            client().admin().indices().prepareRefresh("test").get();
+            assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(N - removed));
+
+            assertTrue(indexShard.getEngine().addIndexes(copy, IdFieldMapper.NAME));
+            assertThat(client().prepareSearch().setIndices("test").setTypes("t1").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo((long) N));
+            assertThat(client().prepareSearch().setIndices("test").setTypes("t1")
+                    .setQuery(QueryBuilders.nestedQuery("items", QueryBuilders.termQuery("items.x", 0), ScoreMode.None))
+                    .get().getHits().getTotalHits(), equalTo((long) N));
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra;
+
+import org.elassandra.discovery.ShardRoutingStateCodec;
+import org.elasticsearch.cluster.routing.ShardRoutingState;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+
+public class ShardRoutingStateCodecTests extends ESSingleNodeTestCase {
+
+    @Test
+    public void testEncodeDecode() throws Exception {
+        Map<String, ShardRoutingState> states = new HashMap<>();
+        for(int i = 1; i <= 500; i++)
+            states.put(String.format(Locale.ROOT, "logs-%04d", i), ShardRoutingState.values()[i % ShardRoutingState.values().length]);
+        states.put("été", ShardRoutingState.STARTED);
+
+        String value = ShardRoutingStateCodec.encode(1234567L, states);
+        assertTrue(ShardRoutingStateCodec.isBinary(value));
+        assertThat(ShardRoutingStateCodec.version(value), equalTo(1234567L));
+        assertThat(ShardRoutingStateCodec.decode(value), equalTo(states));
+
+        // front-coding should be far smaller than the JSON encoding
+        assertThat(value.length(), lessThan(500 * "\"logs-0001\":3,".length() / 2));
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        String value = ShardRoutingStateCodec.encode(System.currentTimeMillis(), new HashMap<>());
+        assertThat(ShardRoutingStateCodec.decode(value).size(), equalTo(0));
+        assertFalse(ShardRoutingStateCodec.isBinary("{}"));
+    }
+}
@@ -20,22 +20,28 @@ import org.apache.cassandra.config.Schema;
 import org.apache.cassandra.cql3.UntypedResultSet;
 import org.apache.cassandra.db.ConsistencyLevel;
 import org.apache.cassandra.service.StorageService;
+import org.elassandra.index.ElasticSecondaryIndex;
 import org.elasticsearch.common.io.PathUtils;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.index.Index;
 import org.elasticsearch.index.query.QueryBuilders;
 import org.elasticsearch.test.ESSingleNodeTestCase;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.UUID;
 
 import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
@@ -176,6 +182,49 @@ public class SnapshotTests extends ESSingleNodeTestCase {
         assertThat(client().prepareSearch().setIndices("ks").setTypes("t1").setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(1000L));
     }
 
+    @Test
+    public void incrementalManifestTest() throws Exception {
+        process(ConsistencyLevel.ONE,String.format(Locale.ROOT, "CREATE KEYSPACE ks WITH replication = {'class': 'NetworkTopologyStrategy', '%s': '1'}",DatabaseDescriptor.getLocalDataCenter()));
+        process(ConsistencyLevel.ONE,"CREATE TABLE ks.t1 ( name text, age int, primary key (name))");
+
+        XContentBuilder mapping = XContentFactory.jsonBuilder().startObject().startObject("t1").field("discover", ".*").endObject().endObject();
+        createIndex("ks", Settings.builder().put("index.snapshot_with_sstable",true).build(),"t1", mapping);
+        ensureGreen("ks");
+        Index index = resolveIndex("ks");
+
+        for(long i=0; i < 100; i++)
+           process(ConsistencyLevel.ONE,String.format(Locale.ROOT, "INSERT INTO ks.t1 (name, age) VALUES ('name%d', %d)",i,i));
+        StorageService.instance.takeSnapshot("snap1", "ks");
+        for(long i=100; i < 200; i++)
+           process(ConsistencyLevel.ONE,String.format(Locale.ROOT, "INSERT INTO ks.t1 (name, age) VALUES ('name%d', %d)",i,i));
+        StorageService.instance.takeSnapshot("snap2", "ks");
+
+        String dataLocation = DatabaseDescriptor.getAllDataFileLocations()[0];
+        Map<String, Object> manifest1 = readManifest(dataLocation, index, "snap1");
+        Map<String, Object> manifest2 = readManifest(dataLocation, index, "snap2");
+        assertNull(manifest1.get("previous_snapshot"));
+        assertThat(manifest2.get("previous_snapshot"), equalTo("snap1"));
+        assertNotNull(manifest2.get("commitlog_position"));
+
+        int incremental = 0;
+        for (Map<String, Object> file : (List<Map<String, Object>>) manifest1.get("files"))
+            assertTrue((Boolean) file.get("incremental"));
+        for (Map<String, Object> file : (List<Map<String, Object>>) manifest2.get("files")) {
+            assertTrue(Files.exists(PathUtils.get(dataLocation+"/elasticsearch.data/nodes/0/snapshots/"+ index.getUUID() + "/snap2/" + file.get("name"))));
+            if ((Boolean) file.get("incremental"))
+                incremental++;
+        }
+        // segments of the first snapshot are not new in the second one
+        assertThat(incremental < ((List<?>) manifest2.get("files")).size(), equalTo(true));
+    }
+
+    Map<String, Object> readManifest(String dataLocation, Index index, String snapshot) throws IOException {
+        Path manifest = PathUtils.get(dataLocation+"/elasticsearch.data/nodes/0/snapshots/"+ index.getUUID() + "/" + snapshot + "/" + ElasticSecondaryIndex.SNAPSHOT_MANIFEST);
+        try (InputStream in = Files.newInputStream(manifest)) {
+            return XContentHelper.convertToMap(XContentType.JSON.xContent(), in, false);
+        }
+    }
+
     @Test
     public void keepDataOnDelete() throws Exception {
         process(ConsistencyLevel.ONE,String.format(Locale.ROOT, "CREATE KEYSPACE ks WITH replication = {'class': 'NetworkTopologyStrategy', '%s': '1'}",DatabaseDescriptor.getLocalDataCenter()));
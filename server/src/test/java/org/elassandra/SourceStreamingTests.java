@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra;
+
+import org.apache.cassandra.db.ConsistencyLevel;
+import org.elassandra.cluster.QueryManager;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.util.BigArrays;
+import org.elasticsearch.index.IndexService;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.aggregations.metrics.tophits.TopHits;
+import org.elasticsearch.search.internal.SearchContext;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+import org.elasticsearch.test.TestSearchContext;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * The search hits _source is rendered from the CQL row, source filtering being applied while streaming.
+ * The unfiltered _source is reused by the fetch phases of a search having aggregations.
+ */
+//gradle :server:test -Dtests.seed=65E2CF27F286CC89 -Dtests.class=org.elassandra.SourceStreamingTests -Dtests.security.manager=false -Dtests.locale=en-PH -Dtests.timezone=America/Coral_Harbour
+public class SourceStreamingTests extends ESSingleNodeTestCase {
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testSourceStreaming() throws Exception {
+        process(ConsistencyLevel.ONE, "CREATE KEYSPACE IF NOT EXISTS test WITH replication={ 'class':'NetworkTopologyStrategy', 'DC1':'1' }");
+        process(ConsistencyLevel.ONE, "CREATE TABLE test.t1 (id text PRIMARY KEY, name text, count int, tags list<text>, one set<int>, attrs map<text, text>)");
+        assertAcked(client().admin().indices().prepareCreate("test").addMapping("t1", discoverMapping("t1")));
+        ensureGreen("test");
+
+        process(ConsistencyLevel.ONE, "INSERT INTO test.t1 (id, name, count, tags, one, attrs) VALUES ('1', 'foo', 12, ['a','b'], {3}, {'k1':'v1','k2':'v2'})");
+
+        SearchResponse resp = client().prepareSearch().setIndices("test").setQuery(QueryBuilders.matchAllQuery()).get();
+        assertThat(resp.getHits().getTotalHits(), equalTo(1L));
+        Map<String, Object> source = resp.getHits().getAt(0).getSourceAsMap();
+        assertThat(source.get("name"), equalTo("foo"));
+        assertThat(source.get("count"), equalTo(12));
+        assertThat((List<Object>) source.get("tags"), equalTo(Arrays.asList("a", "b")));
+        assertThat(source.get("one"), equalTo(3));
+        assertThat(((Map<String, Object>) source.get("attrs")).get("k2"), equalTo("v2"));
+
+        resp = client().prepareSearch().setIndices("test").setQuery(QueryBuilders.matchAllQuery())
+                .setFetchSource(new String[] { "name", "attrs.*" }, new String[] { "attrs.k1" }).get();
+        source = resp.getHits().getAt(0).getSourceAsMap();
+        assertThat(source.size(), equalTo(2));
+        assertThat(source.get("name"), equalTo("foo"));
+        assertThat(((Map<String, Object>) source.get("attrs")).size(), equalTo(1));
+        assertThat(((Map<String, Object>) source.get("attrs")).get("k2"), equalTo("v2"));
+
+        resp = client().prepareSearch().setIndices("test").setQuery(QueryBuilders.matchAllQuery())
+                .setFetchSource(false).get();
+        assertNull(resp.getHits().getAt(0).getSourceAsMap());
+    }
+
+    @Test
+    public void testSourceCache() throws Exception {
+        process(ConsistencyLevel.ONE, "CREATE KEYSPACE IF NOT EXISTS test WITH replication={ 'class':'NetworkTopologyStrategy', 'DC1':'1' }");
+        process(ConsistencyLevel.ONE, "CREATE TABLE test.t2 (id text PRIMARY KEY, name text, category text)");
+        assertAcked(client().admin().indices().prepareCreate("test").addMapping("t2", discoverMapping("t2")));
+        ensureGreen("test");
+
+        for (int i = 0; i < 10; i++)
+            process(ConsistencyLevel.ONE, String.format(Locale.ROOT, "INSERT INTO test.t2 (id, name, category) VALUES ('%d', 'n%d', 'c%d')", i, i, i % 2));
+
+        // top_hits and search hits share the _source fetched from cassandra.
+        QueryManager queryManager = clusterService().getQueryManager();
+        long sourceFetches = queryManager.getSourceFetches();
+        long cachedSourceHits = queryManager.getCachedSourceHits();
+        SearchResponse resp = client().prepareSearch().setIndices("test").setQuery(QueryBuilders.matchAllQuery()).setSize(10)
+                .setFetchSource(new String[] { "name" }, null)
+                .addAggregation(AggregationBuilders.terms("categories").field("category")
+                        .subAggregation(AggregationBuilders.topHits("top").size(5).fetchSource(new String[] { "category" }, null)))
+                .get();
+        assertThat(resp.getHits().getTotalHits(), equalTo(10L));
+        for (SearchHit hit : resp.getHits().getHits()) {
+            assertThat(hit.getSourceAsMap().size(), equalTo(1));
+            assertThat(hit.getSourceAsMap().get("name"), equalTo("n" + hit.getId()));
+        }
+        Terms categories = resp.getAggregations().get("categories");
+        for (Terms.Bucket bucket : categories.getBuckets()) {
+            TopHits top = bucket.getAggregations().get("top");
+            assertThat(top.getHits().getHits().length, equalTo(5));
+            for (SearchHit hit : top.getHits().getHits()) {
+                assertThat(hit.getSourceAsMap().size(), equalTo(1));
+                assertThat(hit.getSourceAsMap().get("category"), equalTo(bucket.getKeyAsString()));
+            }
+        }
+        // the 10 documents are read once by the top_hits of the 2 buckets, the search hits reuse them.
+        assertThat(queryManager.getSourceFetches() - sourceFetches, equalTo(10L));
+        assertThat(queryManager.getCachedSourceHits() - cachedSourceHits, equalTo(10L));
+
+        // cached sources are released with the search context.
+        assertBusy(() -> assertThat(client().admin().cluster().prepareNodesStats().setBreaker(true).get().getNodes().get(0)
+                .getBreaker().getStats(CircuitBreaker.REQUEST).getEstimated(), equalTo(0L)));
+    }
+
+    @Test
+    public void testSourceCacheWithoutBreaker() throws Exception {
+        process(ConsistencyLevel.ONE, "CREATE KEYSPACE IF NOT EXISTS test WITH replication={ 'class':'NetworkTopologyStrategy', 'DC1':'1' }");
+        process(ConsistencyLevel.ONE, "CREATE TABLE test.t3 (id text PRIMARY KEY, name text)");
+        assertAcked(client().admin().indices().prepareCreate("test").addMapping("t3", discoverMapping("t3")));
+        ensureGreen("test");
+
+        // a search context on a non-breaking BigArrays does not cache sources.
+        IndexService indexService = getInstanceFromNode(IndicesService.class).indexServiceSafe(resolveIndex("test"));
+        SearchContext searchContext = new TestSearchContext(getInstanceFromNode(ThreadPool.class), BigArrays.NON_RECYCLING_INSTANCE, indexService);
+        try {
+            searchContext.putCachedSource("t3#1", new BytesArray("{\"name\":\"foo\"}"));
+            assertNull(searchContext.getCachedSource("t3#1"));
+        } finally {
+            searchContext.close();
+        }
+
+        // searches still fetch the _source from cassandra.
+        process(ConsistencyLevel.ONE, "INSERT INTO test.t3 (id, name) VALUES ('1', 'foo')");
+        SearchResponse resp = client().prepareSearch().setIndices("test").setQuery(QueryBuilders.matchAllQuery()).get();
+        assertThat(resp.getHits().getTotalHits(), equalTo(1L));
+        assertThat(resp.getHits().getAt(0).getSourceAsMap().get("name"), equalTo("foo"));
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elassandra;
+
+import org.apache.cassandra.db.ConsistencyLevel;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.test.ESSingleNodeTestCase;
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.elasticsearch.test.hamcrest.ElasticsearchAssertions.assertAcked;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * Indices applied by a single cluster state get their mappings parsed and shards created concurrently.
+ */
+//gradle :server:test -Dtests.seed=65E2CF27F286CC89 -Dtests.class=org.elassandra.StartupConcurrencyTests -Dtests.security.manager=false -Dtests.locale=en-PH -Dtests.timezone=America/Coral_Harbour
+public class StartupConcurrencyTests extends ESSingleNodeTestCase {
+
+    @Test
+    public void testOpenManyIndices() throws Exception {
+        final int n = 8;
+        process(ConsistencyLevel.ONE, "CREATE KEYSPACE IF NOT EXISTS test WITH replication={ 'class':'NetworkTopologyStrategy', 'DC1':'1' }");
+        for (int i = 0; i < n; i++) {
+            process(ConsistencyLevel.ONE, String.format(Locale.ROOT, "CREATE TABLE test.t%d (id text PRIMARY KEY, name text)", i));
+            assertAcked(client().admin().indices().prepareCreate("test" + i)
+                    .setSettings(Settings.builder().put("index.keyspace", "test"))
+                    .addMapping("t" + i, discoverMapping("t" + i)));
+        }
+        ensureGreen();
+        for (int i = 0; i < n; i++)
+            for (int j = 0; j <= i; j++)
+                process(ConsistencyLevel.ONE, String.format(Locale.ROOT, "INSERT INTO test.t%d (id, name) VALUES ('%d', 'n%d')", i, j, j));
+
+        // all indices are re-opened by one cluster state update.
+        assertAcked(client().admin().indices().prepareClose("test*").get());
+        assertAcked(client().admin().indices().prepareOpen("test*").get());
+        ensureGreen();
+        for (int i = 0; i < n; i++) {
+            final long expected = i + 1;
+            final String index = "test" + i;
+            assertBusy(() -> assertThat(client().prepareSearch().setIndices(index).setQuery(QueryBuilders.matchAllQuery()).get().getHits().getTotalHits(), equalTo(expected)));
+        }
+    }
+}
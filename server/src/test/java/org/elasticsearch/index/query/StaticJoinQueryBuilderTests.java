@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2017 Strapdata (http://www.strapdata.com)
+ * Contains some code from Elasticsearch (http://www.elastic.co)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.elasticsearch.index.query;
+
+import org.apache.lucene.search.Query;
+import org.elasticsearch.common.ParsingException;
+import org.elasticsearch.search.internal.SearchContext;
+import org.elasticsearch.test.AbstractQueryTestCase;
+
+import java.io.IOException;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+
+public class StaticJoinQueryBuilderTests extends AbstractQueryTestCase<StaticJoinQueryBuilder> {
+
+    @Override
+    protected StaticJoinQueryBuilder doCreateTestQueryBuilder() {
+        return new StaticJoinQueryBuilder(new TermQueryBuilder(STRING_FIELD_NAME, randomAlphaOfLengthBetween(1, 10)));
+    }
+
+    @Override
+    protected void doAssertLuceneQuery(StaticJoinQueryBuilder queryBuilder, Query query, SearchContext context) throws IOException {
+        assertThat(query, instanceOf(StaticJoinQueryBuilder.StaticJoinQuery.class));
+        Query staticQuery = queryBuilder.query().toFilter(context.getQueryShardContext());
+        assertThat(((StaticJoinQueryBuilder.StaticJoinQuery) query).staticQuery, equalTo(staticQuery));
+    }
+
+    /**
+     * test that missing "query" element causes {@link ParsingException}
+     */
+    public void testQueryElement() throws IOException {
+        String queryString = "{ \"" + StaticJoinQueryBuilder.NAME + "\" : {} }";
+        ParsingException e = expectThrows(ParsingException.class, () -> parseQuery(queryString));
+        assertThat(e.getMessage(), containsString("requires a 'query' element"));
+    }
+
+    public void testIllegalArguments() {
+        expectThrows(IllegalArgumentException.class, () -> new StaticJoinQueryBuilder(null));
+    }
+
+    public void testFromJson() throws IOException {
+        String json =
+                "{\n" +
+                "  \"static_join\" : {\n" +
+                "    \"query\" : {\n" +
+                "      \"term\" : {\n" +
+                "        \"status\" : {\n" +
+                "          \"value\" : \"active\",\n" +
+                "          \"boost\" : 1.0\n" +
+                "        }\n" +
+                "      }\n" +
+                "    },\n" +
+                "    \"boost\" : 2.0,\n" +
+                "    \"_name\" : \"partition_status\"\n" +
+                "  }\n" +
+                "}";
+
+        StaticJoinQueryBuilder parsed = (StaticJoinQueryBuilder) parseQuery(json);
+        checkGeneratedJson(json, parsed);
+
+        assertEquals(json, 2.0, parsed.boost(), 0.0001);
+        assertEquals(json, "partition_status", parsed.queryName());
+        assertEquals(json, new TermQueryBuilder("status", "active"), parsed.query());
+    }
+
+    public void testRewriteToMatchNone() throws IOException {
+        StaticJoinQueryBuilder staticJoinQueryBuilder = new StaticJoinQueryBuilder(new MatchNoneQueryBuilder());
+        QueryBuilder rewrite = staticJoinQueryBuilder.rewrite(createShardContext());
+        assertEquals(rewrite, new MatchNoneQueryBuilder());
+    }
+}
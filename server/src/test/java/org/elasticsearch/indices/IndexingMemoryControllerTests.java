@@ -249,6 +249,55 @@ public class IndexingMemoryControllerTests extends ESSingleNodeTestCase {
         assertThat(controller.indexingBufferSize(), equalTo(new ByteSizeValue(6, ByteSizeUnit.MB)));
     }
 
+    public void testShareWithMemtables() {
+        createIndex("test");
+        IndicesService indicesService = getInstanceFromNode(IndicesService.class);
+        IndexService test = indicesService.indexService(resolveIndex("test"));
+        final long[] memtableBytesUsed = new long[1];
+        final int[] memtableFlushes = new int[1];
+
+        MockController controller = new MockController(Settings.builder()
+                                                       .put("indices.memory.index_buffer_size", "4mb")
+                                                       .put("indices.memory.min_index_buffer_size", "1mb")
+                                                       .put("indices.memory.share_with_memtables", true).build()) {
+            @Override
+            protected long getMemtableHeapLimit() {
+                return 4 * 1024 * 1024;
+            }
+
+            @Override
+            protected long getMemtableHeapBytesUsed() {
+                return memtableBytesUsed[0];
+            }
+
+            @Override
+            protected void flushLargestMemtable() {
+                memtableFlushes[0]++;
+            }
+        };
+
+        // empty memtables, the indexing buffer can use the whole 8mb budget
+        IndexShard shard0 = test.getShard(0);
+        for (int i = 0; i < 5; i++) {
+            controller.simulateIndexing(shard0);
+        }
+        controller.assertBuffer(shard0, 5);
+
+        // memtables use 6mb, only 2mb left for the indexing buffer
+        memtableBytesUsed[0] = 6 * 1024 * 1024;
+        controller.forceCheck();
+        controller.assertBuffer(shard0, 0);
+        controller.assertWriting(shard0, 5);
+        controller.doneWriting(shard0);
+        assertEquals(0, memtableFlushes[0]);
+
+        // full memtables, the indexing buffer is down to its 1mb floor and memtables are flushed
+        memtableBytesUsed[0] = 8 * 1024 * 1024;
+        controller.simulateIndexing(shard0);
+        controller.assertBuffer(shard0, 1);
+        assertEquals(1, memtableFlushes[0]);
+    }
+
     public void testNegativeMinIndexBufferSize() {
         Exception e = expectThrows(IllegalArgumentException.class,
                                    () -> new MockController(Settings.builder()
@@ -321,6 +321,7 @@ public class SearchModuleTests extends ModuleTestCase {
             "span_or",
             "span_term",
             "span_within",
+            "static_join",
             "term",
             "terms",
             "terms_set",
@@ -96,7 +96,7 @@ public class MockCassandraDiscovery extends CassandraDiscovery {
                 AllocationService allocationService) {
             Map<String, Supplier<Discovery>> discoveryTypes = new HashMap<>();
             discoveryTypes.put(MOCK_CASSANDRA,
-                    () -> new MockCassandraDiscovery(Settings.builder().build(), transportService, masterService.getClusterService(), clusterApplier, namedWriteableRegistry));
+                    () -> new MockCassandraDiscovery(settings.filter(CassandraDiscovery.ROUTING_UPDATE_DELAY_SETTING::match), transportService, masterService.getClusterService(), clusterApplier, namedWriteableRegistry));
             return discoveryTypes;
         }
     }